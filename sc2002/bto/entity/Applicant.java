@@ -91,6 +91,7 @@ public class Applicant extends User {
      */
     public void setIncomeRange(Double incomeRange) {
         this.incomeRange = incomeRange;
+        notifyChanged();
     }
 
     /**
@@ -117,10 +118,9 @@ public class Applicant extends User {
      * @return A list of projects that the applicant is eligible for
      */
     public List<Project> viewEligibleProjects(ProjectRepository projectRepo) {
-        List<Project> allProjects = projectRepo.getAll();
         List<Project> eligibleProjects = new ArrayList<>();
 
-        for (Project project : allProjects) {
+        for (Project project : projectRepo.viewAll()) {
             if (!project.isVisible()) continue;
 
             // check age & marital status
@@ -177,10 +177,9 @@ public class Applicant extends User {
      * @return A list of enquiries submitted by this applicant
      */
     public List<Enquiry> viewMyEnquiries(EnquiryRepository repo) {
-        List<Enquiry> all = repo.getAll();
         List<Enquiry> mine = new ArrayList<>();
 
-        for (Enquiry e : all) {
+        for (Enquiry e : repo.viewAll()) {
             if (e.getApplicant().getId().equals(this.getId())) {
                 mine.add(e);
             }
@@ -196,21 +195,19 @@ public class Applicant extends User {
      * @param enquiryRepo The enquiry repository
      */
     public void editEnquiry(String enquiryId, String newMessage, EnquiryRepository enquiryRepo) {
-        List<Enquiry> all = enquiryRepo.getAll();
+        Enquiry e = enquiryRepo.getById(enquiryId);
 
-        for (Enquiry e : all) {
-            if (e.getEnquiryId().equals(enquiryId) && e.getApplicant().getId().equals(this.getId())) {
-                if (e.getStatus() == EnquiryStatus.PENDING) {
-                    e.setMessage(newMessage);
-                    enquiryRepo.update(e);
-                    System.out.println("Enquiry updated successfully.");
-                } else {
-                    System.out.println("Cannot edit enquiry. It has already been replied to.");
-                }
-                return;
-            }
+        if (e == null || !e.getApplicant().getId().equals(this.getId())) {
+            System.out.println("Enquiry not found or not owned by applicant.");
+            return;
+        }
+        if (e.getStatus() == EnquiryStatus.PENDING) {
+            e.setMessage(newMessage);
+            enquiryRepo.update(e);
+            System.out.println("Enquiry updated successfully.");
+        } else {
+            System.out.println("Cannot edit enquiry. It has already been replied to.");
         }
-        System.out.println("Enquiry not found or not owned by applicant.");
     }
 
     /**
@@ -220,20 +217,18 @@ public class Applicant extends User {
      * @param enquiryRepo The enquiry repository
      */
     public void deleteEnquiry(String enquiryId, EnquiryRepository enquiryRepo) {
-        List<Enquiry> all = enquiryRepo.getAll();
+        Enquiry e = enquiryRepo.getById(enquiryId);
 
-        for (Enquiry e : all) {
-            if (e.getEnquiryId().equals(enquiryId) && e.getApplicant().getId().equals(this.getId())) {
-                if (e.getStatus() == EnquiryStatus.PENDING) {
-                    enquiryRepo.delete(enquiryId);
-                    System.out.println("Enquiry deleted successfully.");
-                } else {
-                    System.out.println("Cannot delete enquiry. It has already been replied to.");
-                }
-                return;
-            }
+        if (e == null || !e.getApplicant().getId().equals(this.getId())) {
+            System.out.println("Enquiry not found or not owned by applicant.");
+            return;
+        }
+        if (e.getStatus() == EnquiryStatus.PENDING) {
+            enquiryRepo.delete(enquiryId);
+            System.out.println("Enquiry deleted successfully.");
+        } else {
+            System.out.println("Cannot delete enquiry. It has already been replied to.");
         }
-        System.out.println("Enquiry not found or not owned by applicant.");
     }
 
     /**
@@ -269,12 +264,7 @@ public class Applicant extends User {
      * @return The applicant's current application, or null if none exists
      */
     public Application getMyApplication(ApplicationRepository appRepo) {
-        for (Application a : appRepo.getAll()) {
-            if (a.getApplicant().getId().equals(this.getId())) {
-                return a;
-            }
-        }
-        return null;
+        return appRepo.findFirstByApplicantId(this.getId());
     }
 
     /**
@@ -307,15 +297,7 @@ public class Applicant extends User {
      */
 
     public boolean requestWithdrawal(ApplicationRepository appRepo) {
-        List<Application> allApplications = appRepo.getAll();
-        Application myApplication = null;
-
-        for (Application a : allApplications) {
-            if (a.getApplicant().getId().equals(this.getId())) {
-                myApplication = a;
-                break;
-            }
-        }
+        Application myApplication = getMyApplication(appRepo);
 
         if (myApplication == null) {
             System.out.println("No active application found.");
@@ -333,14 +315,13 @@ public class Applicant extends User {
      * @param appRepo The application repository
      */
     public void viewMyApplicationStatus(ApplicationRepository appRepo) {
-        for (Application a : appRepo.getAll()) {
-            if (a.getApplicant().getId().equals(this.getId())) {
-                System.out.println("Project: " + a.getProject().getProjectName());
-                System.out.println("Status: " + a.getStatus());
-                return;
-            }
+        Application a = getMyApplication(appRepo);
+        if (a == null) {
+            System.out.println("No application found.");
+            return;
         }
-        System.out.println("No application found.");
+        System.out.println("Project: " + a.getProject().getProjectName());
+        System.out.println("Status: " + a.getStatus());
     }
     
 }
@@ -2,6 +2,8 @@ package sc2002.bto.entity;
 
 import sc2002.bto.enums.ApplicationStatus;
 import sc2002.bto.enums.FlatType;
+import sc2002.bto.interfaces.IChangeListener;
+import sc2002.bto.interfaces.IStatusChangeListener;
 
 /**
  * Represents a BTO housing application submitted by an applicant.
@@ -23,6 +25,10 @@ public class Application {
     private FlatType selectedFlatType;
     /** Whether a withdrawal has been requested for this application */
     private boolean withdrawalRequested = false;
+    /** Listener notified when the status changes, typically the owning repository */
+    private IStatusChangeListener<Application, ApplicationStatus> statusListener;
+    /** Listener notified when a saved field changes, typically the owning repository */
+    private IChangeListener<Application> changeListener;
 
     /**
      * Creates a new application with the specified details.
@@ -106,6 +112,7 @@ public class Application {
      */
     public void setSelectedFlatType(FlatType flatType) {
         this.selectedFlatType = flatType;
+        notifyChanged();
     }
 
     /**
@@ -115,6 +122,7 @@ public class Application {
      */
     public void requestWithdrawal() {
         this.withdrawalRequested = true;
+        notifyChanged();
     }
 
     /**
@@ -132,6 +140,7 @@ public class Application {
      */
     public void clearWithdrawalRequest() {
         this.withdrawalRequested = false;
+        notifyChanged();
     }
 
     /**
@@ -140,6 +149,40 @@ public class Application {
      * @param newStatus The new status to set for this application
      */
     public void updateStatus(ApplicationStatus newStatus) {
+        ApplicationStatus oldStatus = this.status;
         this.status = newStatus;
+        if (statusListener != null && oldStatus != newStatus) {
+            statusListener.onStatusChange(this, oldStatus, newStatus);
+        }
+        if (oldStatus != newStatus) {
+            notifyChanged();
+        }
+    }
+
+    /**
+     * Sets the listener to notify when this application's status changes.
+     * 
+     * @param statusListener The listener, or null to stop notifications
+     */
+    public void setStatusListener(IStatusChangeListener<Application, ApplicationStatus> statusListener) {
+        this.statusListener = statusListener;
+    }
+
+    /**
+     * Sets the listener to notify when a saved field of this application changes.
+     * 
+     * @param changeListener The listener, or null to stop notifications
+     */
+    public void setChangeListener(IChangeListener<Application> changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    /**
+     * Notifies the change listener, if any, that this application has changed.
+     */
+    private void notifyChanged() {
+        if (changeListener != null) {
+            changeListener.onChange(this);
+        }
     }
 }
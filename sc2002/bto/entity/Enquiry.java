@@ -1,6 +1,8 @@
 package sc2002.bto.entity;
 
 import sc2002.bto.enums.EnquiryStatus;
+import sc2002.bto.interfaces.IChangeListener;
+import sc2002.bto.interfaces.IStatusChangeListener;
 /**
  * Represents an enquiry submitted by an applicant regarding a BTO project.
  * Tracks the enquiry status, messages, and responses.
@@ -19,6 +21,10 @@ public class Enquiry {
     private String response;
     /** Current status of the enquiry (PENDING or REPLIED) */
     private EnquiryStatus status;
+    /** Listener notified when the status changes, typically the owning repository */
+    private IStatusChangeListener<Enquiry, EnquiryStatus> statusListener;
+    /** Listener notified when a saved field changes, typically the owning repository */
+    private IChangeListener<Enquiry> changeListener;
     
      /**
      * Creates a new enquiry with the specified details.
@@ -93,8 +99,10 @@ public class Enquiry {
      * @param message The new message content
      */
     public void setMessage(String message) {
-        if (status == EnquiryStatus.PENDING) 
+        if (status == EnquiryStatus.PENDING) {
             this.message = message;
+            notifyChanged();
+        }
     }
 
     /**
@@ -113,8 +121,40 @@ public class Enquiry {
      * @param responseMessage The response message to add
      */
     public void reply(String responseMessage) {
+        EnquiryStatus oldStatus = this.status;
         this.response = responseMessage;
         this.status = EnquiryStatus.REPLIED;
+        if (statusListener != null && oldStatus != status) {
+            statusListener.onStatusChange(this, oldStatus, status);
+        }
+        notifyChanged();
+    }
+
+    /**
+     * Sets the listener to notify when this enquiry's status changes.
+     * 
+     * @param statusListener The listener, or null to stop notifications
+     */
+    public void setStatusListener(IStatusChangeListener<Enquiry, EnquiryStatus> statusListener) {
+        this.statusListener = statusListener;
+    }
+
+    /**
+     * Sets the listener to notify when a saved field of this enquiry changes.
+     * 
+     * @param changeListener The listener, or null to stop notifications
+     */
+    public void setChangeListener(IChangeListener<Enquiry> changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    /**
+     * Notifies the change listener, if any, that this enquiry has changed.
+     */
+    private void notifyChanged() {
+        if (changeListener != null) {
+            changeListener.onChange(this);
+        }
     }
 
     /**
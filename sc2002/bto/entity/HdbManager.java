@@ -1,22 +1,28 @@
 package sc2002.bto.entity;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
 import java.util.stream.Collectors;
 import sc2002.bto.enums.ApplicationStatus;
+import sc2002.bto.enums.EnquiryStatus;
 import sc2002.bto.enums.FlatType;
 import sc2002.bto.enums.MaritalStatus;
 import sc2002.bto.enums.OfficerRegistrationStatus;
 import sc2002.bto.enums.ReportType;
 import sc2002.bto.interfaces.IEnquiryManagement;
 import sc2002.bto.interfaces.IProjectManagement;
+import sc2002.bto.interfaces.Query;
 import sc2002.bto.repository.ApplicationRepository;
 import sc2002.bto.repository.EnquiryRepository;
 import sc2002.bto.repository.ProjectRepository;
+import sc2002.bto.repository.UnitOfWork;
+import sc2002.bto.util.BookingService;
 
 /**
  * Represents an HDB Manager in the BTO Management System.
@@ -175,13 +181,15 @@ public class HdbManager extends Applicant implements IProjectManagement, IEnquir
             return;
         }
 
-        // Check if there are available slots
-        if (targetProject.getAvailableOfficerSlots() > 0) {
+        // Fill the slot reserved at registration, reserving one first if the registration holds none
+        boolean slotHeld = targetProject.reserveOfficerSlot(officer.getId());
+        if (slotHeld && targetProject.confirmOfficerSlot(officer.getId())) {
             officer.setRegistrationStatus(OfficerRegistrationStatus.APPROVED);
             officer.setHandlingProject(targetProject); // ✅ Now assigned officially
             officer.setPendingProject(null);           // ✅ Clear pending
-            targetProject.setAvailableOfficerSlots(targetProject.getAvailableOfficerSlots() - 1);
             System.out.println("Officer registration approved and assigned to project: " + targetProject.getProjectName());
+        } else if (slotHeld) {
+            System.out.println("Officer registration has already been approved.");
         } else {
             officer.setRegistrationStatus(OfficerRegistrationStatus.REJECTED);
             officer.setPendingProject(null); // ✅ Clear pending even if rejected
@@ -189,6 +197,22 @@ public class HdbManager extends Applicant implements IProjectManagement, IEnquir
         }
     }
 
+    /**
+     * Rejects an HDB Officer's pending registration and gives back the slot
+     * reserved for it.
+     * 
+     * @param officer The HDB Officer to reject
+     */
+    public void rejectOfficerRegistration(HdbOfficer officer) {
+        Project targetProject = officer.getPendingProject();
+        if (targetProject != null) {
+            targetProject.releaseOfficerSlot(officer.getId());
+        }
+        officer.setRegistrationStatus(OfficerRegistrationStatus.REJECTED);
+        officer.setPendingProject(null);
+        System.out.println("Officer registration rejected.");
+    }
+
     /**
      * Approves or rejects an application for a BTO project.
      * 
@@ -225,14 +249,10 @@ public class HdbManager extends Applicant implements IProjectManagement, IEnquir
      * @param projectRepo The project repository
      */
     public void reviewApplications(ApplicationRepository appRepo, ProjectRepository projectRepo) {
-        List<Application> all = appRepo.getAll();
-        
         // Filter applications for projects created by this manager
-        List<Application> managerApplications = all.stream()
-                .filter(a -> projectsCreated.stream()
-                        .anyMatch(p -> p.getProjectID().equals(a.getProject().getProjectID())))
-                .filter(a -> a.getStatus() == ApplicationStatus.PENDING)
-                .collect(Collectors.toList());
+        List<Application> managerApplications = appRepo.find(new Query<Application>()
+                .in(ApplicationRepository.PROJECT_ID, getProjectsCreatedIds())
+                .eq(ApplicationRepository.STATUS, ApplicationStatus.PENDING));
         
         // If no applications found, print "No applications"
         if (managerApplications.isEmpty()) {
@@ -244,6 +264,8 @@ public class HdbManager extends Applicant implements IProjectManagement, IEnquir
         @SuppressWarnings("resource")
         Scanner scanner = new Scanner(System.in);
         
+        // Reviewed applications are written back to the repository in one batch
+        List<Application> reviewed = new ArrayList<>();
         for (Application a : managerApplications) {
             // Skip already processed applications
             if (a.getStatus() != ApplicationStatus.PENDING) continue;
@@ -267,7 +289,7 @@ public class HdbManager extends Applicant implements IProjectManagement, IEnquir
                     continue;
                 }
                 
-                appRepo.update(a);
+                reviewed.add(a);
                 continue;
             }
             
@@ -309,10 +331,11 @@ public class HdbManager extends Applicant implements IProjectManagement, IEnquir
                 System.out.println("Application rejected.");
             }
             
-            // Update application in repository
-            appRepo.update(a);
+            reviewed.add(a);
         }
         
+        // Update applications in repository
+        appRepo.updateAll(reviewed);
         System.out.println("\nApplication review completed.");
     } 
     
@@ -329,10 +352,8 @@ public class HdbManager extends Applicant implements IProjectManagement, IEnquir
         report.setReportType(reportType);
         
         // Get all applications for projects managed by this manager
-        List<Application> applications = appRepo.getAll()
-                .stream()
-                .filter(app -> projectsCreated.contains(app.getProject()))
-                .collect(Collectors.toList());
+        List<Application> applications = appRepo.find(new Query<Application>()
+                .in(ApplicationRepository.PROJECT_ID, getProjectsCreatedIds()));
         
         // Apply filters based on report type
         List<Object> filteredData = new ArrayList<>();
@@ -496,21 +517,34 @@ public class HdbManager extends Applicant implements IProjectManagement, IEnquir
             Project project = application.getProject();
             FlatType flatType = application.getSelectedFlatType();
         
-            // Only add back a flat if it was actually booked
-            if (application.getStatus() == ApplicationStatus.BOOKED) {
-                if (flatType == FlatType.TWO_ROOM) {
-                    project.setTwoRoomUnitsAvailable(project.getTwoRoomUnitsAvailable() + 1);
-                } else if (flatType == FlatType.THREE_ROOM) {
-                    project.setThreeRoomUnitsAvailable(project.getThreeRoomUnitsAvailable() + 1);
+            // Under the project's lock, so a concurrent booking sees all of it or none
+            BookingService.runInProject(project, () -> {
+                // Restock, withdraw and clear the request as one unit of work, so a failure halfway undoes all
+                try (UnitOfWork work = UnitOfWork.begin()) {
+                    // Only add back a flat if it was actually booked
+                    ApplicationStatus previousStatus = application.getStatus();
+                    if (previousStatus == ApplicationStatus.BOOKED) {
+                        project.releaseUnit(flatType);
+                        UnitOfWork.onRollback(() -> project.reserveUnit(flatType));
+                    }
+                
+                    UnitOfWork.onRollback(() -> application.updateStatus(previousStatus));
+                    application.updateStatus(ApplicationStatus.UNSUCCESSFUL);
+                    
+                    if (application.isWithdrawalRequested()) {
+                        UnitOfWork.onRollback(application::requestWithdrawal);
+                    }
+                    application.clearWithdrawalRequest(); // clears the flag
+                    
+                    if (!work.commit()) {
+                        System.out.println("Warning: The withdrawal could not be saved yet and will be saved with the next save.");
+                    }
                 }
-            }
-        
-            application.updateStatus(ApplicationStatus.UNSUCCESSFUL);
+            });
         } else {
             System.out.println("Withdrawal request rejected for application: " + application.getApplicationId());
+            application.clearWithdrawalRequest(); // clears the flag
         }
-
-        application.clearWithdrawalRequest(); // clears the flag
     }
     
     /**
@@ -555,7 +589,7 @@ public class HdbManager extends Applicant implements IProjectManagement, IEnquir
      * @param enquiryRepo The repository containing all enquiries.
      */
     public void printAllEnquiries(EnquiryRepository enquiryRepo) {
-        List<Enquiry> enquiries = getAllEnquiries(enquiryRepo);
+        Collection<Enquiry> enquiries = enquiryRepo.viewAll();
     
         if (enquiries.isEmpty()) {
             System.out.println("There are no enquiries in the system.");
@@ -577,11 +611,38 @@ public class HdbManager extends Applicant implements IProjectManagement, IEnquir
      * @return A list of enquiries for projects managed by this manager.
      */
     public List<Enquiry> getMyProjectsEnquiries(EnquiryRepository enquiryRepo) {
-        return enquiryRepo.getAll().stream()
-                .filter(e -> e.getProject() != null && 
-                          projectsCreated.stream().anyMatch(p -> 
-                              p.getProjectID().equals(e.getProject().getProjectID())))
-                .collect(Collectors.toList());
+        List<Enquiry> enquiries = new ArrayList<>();
+        for (Project p : distinctProjectsCreated()) {
+            enquiries.addAll(enquiryRepo.findByProject(p));
+        }
+        return enquiries;
+    }
+
+    /**
+     * Gets pending enquiries for projects managed by this manager.
+     * @param enquiryRepo The repository containing all enquiries.
+     * @return A list of pending enquiries for projects managed by this manager.
+     */
+    public List<Enquiry> getMyProjectsPendingEnquiries(EnquiryRepository enquiryRepo) {
+        List<Enquiry> enquiries = new ArrayList<>();
+        for (Project p : distinctProjectsCreated()) {
+            enquiries.addAll(enquiryRepo.findByProjectAndStatus(p, EnquiryStatus.PENDING));
+        }
+        return enquiries;
+    }
+
+    /**
+     * Gets the projects created by this manager, each project ID once.
+     * The created list does not stop a project from being added more than
+     * once, so it can hold duplicates.
+     * @return The projects in the order they were first added.
+     */
+    private Collection<Project> distinctProjectsCreated() {
+        Map<String, Project> distinct = new LinkedHashMap<>();
+        for (Project p : projectsCreated) {
+            distinct.putIfAbsent(p.getProjectID(), p);
+        }
+        return distinct.values();
     }
 
     /**
@@ -643,6 +704,16 @@ public class HdbManager extends Applicant implements IProjectManagement, IEnquir
         return projectsCreated;
     }
 
+    /**
+     * Gets the IDs of the projects created by this manager.
+     * @return A list of project IDs.
+     */
+    public List<String> getProjectsCreatedIds() {
+        return projectsCreated.stream()
+                .map(Project::getProjectID)
+                .collect(Collectors.toList());
+    }
+
     /**
      * Sets the list of projects created by this manager.
      * @param projectsCreated The new list of projects.
@@ -1,11 +1,10 @@
 package sc2002.bto.entity;
 
-import java.io.*;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 import sc2002.bto.enums.ApplicationStatus;
 import sc2002.bto.enums.EnquiryStatus;
 import sc2002.bto.enums.FlatType;
@@ -15,6 +14,9 @@ import sc2002.bto.interfaces.IApplicationProcessing;
 import sc2002.bto.interfaces.IEnquiryManagement;
 import sc2002.bto.repository.ApplicationRepository;
 import sc2002.bto.repository.EnquiryRepository;
+import sc2002.bto.repository.UnitOfWork;
+import sc2002.bto.util.BookingService;
+import sc2002.bto.util.FileHandler;
 
 /**
  * Represents an HDB Officer in the BTO Management System.
@@ -85,13 +87,15 @@ public class HdbOfficer extends User implements IEnquiryManagement, IApplication
             return false;
         }
 
-        if (project.getAvailableOfficerSlots() <= 0) {
+        // Hold a slot until a manager decides, so approvals cannot run out of slots
+        if (!project.reserveOfficerSlot(getId())) {
             System.out.println("No available slots in project: " + project.getProjectName());
             return false;
         }
 
         this.pendingProject = project;
         this.registrationStatus = OfficerRegistrationStatus.PENDING;
+        notifyChanged();
         return true;
     }
 
@@ -164,33 +168,53 @@ public class HdbOfficer extends User implements IEnquiryManagement, IApplication
     
     /**
      * Books a flat for an applicant.
+     * The booking is one unit of work: if it fails halfway, everything it
+     * changed is undone. Called inside a larger unit of work, for example
+     * to book a batch of flats, it is saved when that work commits.
      * 
      * @param applicant The applicant booking the flat
      * @param flatType The type of flat to book
      * @return true if booking was successful, false otherwise
      */
     public boolean bookFlat(Applicant applicant, FlatType flatType) {
-        if (applicant == null || flatType == null) {
+        Project project = handlingProject;
+        if (applicant == null || flatType == null || project == null) {
             return false;
         }
         
+        // Check and book under the project's lock, so no other booking transition interleaves
+        // and a failed booking is undone before another one can see it
+        return BookingService.inProject(project, () -> {
+            try (UnitOfWork work = UnitOfWork.begin()) {
+                if (!bookInProject(applicant, flatType, project)) {
+                    return false;
+                }
+                
+                // Make sure the booking is stored before it is confirmed
+                if (!work.commit()) {
+                    System.out.println("Warning: The booking could not be saved yet and will be saved with the next save.");
+                }
+                return true;
+            }
+        });
+    }
+    
+    /**
+     * Books a flat in a project, while holding the project's booking lock.
+     * 
+     * @param applicant The applicant booking the flat
+     * @param flatType The type of flat to book
+     * @param project The project the officer handles
+     * @return true if booking was successful, false otherwise
+     */
+    private boolean bookInProject(Applicant applicant, FlatType flatType, Project project) {
         // Check if units are still available based on flat type
-        int availableUnits = 0;
-        
-        if (flatType == FlatType.TWO_ROOM) {
-            availableUnits = handlingProject.getTwoRoomUnitsAvailable();
-        } else if (flatType == FlatType.THREE_ROOM) {
-            availableUnits = handlingProject.getThreeRoomUnitsAvailable();
-        } else {
-            return false;
-        }
-        
-        if (availableUnits <= 0) {
+        if (project.getUnitsAvailable(flatType) <= 0) {
             return false;
         }
         
         // Find applicant's application for the project
-        Application application = findApplicationByApplicant(applicant, handlingProject);
+        Application application = findApplicationByApplicant(applicant, project);
         
         if (application == null) {
             return false;
@@ -206,98 +230,105 @@ public class HdbOfficer extends User implements IEnquiryManagement, IApplication
             return false;
         }
         
-        // Update number of units available
-        if (flatType == FlatType.TWO_ROOM) {
-            handlingProject.setTwoRoomUnitsAvailable(availableUnits - 1);
-        } else if (flatType == FlatType.THREE_ROOM) {
-            handlingProject.setThreeRoomUnitsAvailable(availableUnits - 1);
+        // Take a unit; the inventory is shared with callers that do not take the lock
+        if (!project.reserveUnit(flatType)) {
+            return false;
         }
+        UnitOfWork.onRollback(() -> project.releaseUnit(flatType));
         
         // Update applicant's profile
+        FlatType previousFlat = applicant.getBookedFlat();
+        Project previousProject = applicant.getBookedProject();
+        UnitOfWork.onRollback(() -> {
+            applicant.setBookedFlat(previousFlat);
+            applicant.setBookedProject(previousProject);
+        });
         applicant.setBookedFlat(flatType);
-        applicant.setBookedProject(handlingProject);
+        applicant.setBookedProject(project);
         
         // Update application status to BOOKED
+        UnitOfWork.onRollback(() -> application.updateStatus(ApplicationStatus.SUCCESSFUL));
         application.updateStatus(ApplicationStatus.BOOKED);
         
         return true;
     }
     
     /**
-     * Saves a receipt to the ReceiptList.csv file.
-     * Creates the file with a header if it doesn't exist and appends the new receipt.
+     * Finds the latest receipt issued for an application. Receipts are
+     * matched on the application ID, so a booking made after a withdrawal
+     * never gets the receipt of the withdrawn one.
      * 
-     * @param receipt The Receipt object to be saved to the file
+     * @param application The application
+     * @return The receipt, or null if none has been issued or the ledger cannot be read
      */
-    private void saveReceiptToFile(Receipt receipt) {
+    private Receipt findIssuedReceipt(Application application) {
         try {
-            File receiptFile = new File("data/ReceiptList.csv");
-            
-            // Check if file exists, if not create it with header
-            boolean fileExists = receiptFile.exists() && receiptFile.length() > 0;
-            try (BufferedWriter writer = new BufferedWriter(new FileWriter(receiptFile, true))) {
-                // Write header if file is new
-                if (!fileExists) {
-                    writer.write("ReceiptID,Name,NRIC,Age,MaritalStatus,ProjectID,Neighborhood,Price,FlatType,BookingDate\n");
+            List<Receipt> receipts = FileHandler.getReceiptLedger().getByNric(application.getApplicant().getId());
+            for (int i = receipts.size() - 1; i >= 0; i--) {
+                if (application.getApplicationId().equals(receipts.get(i).getApplicationID())) {
+                    return receipts.get(i);
                 }
-                
-                // Escape CSV values that might contain commas
-                String escapedName = escapeCSV(receipt.getName());
-                String escapedNRIC = escapeCSV(receipt.getNRIC());
-                String escapedNeighborhood = escapeCSV(receipt.getNeighborhood());
-                
-                // Append the new receipt
-                writer.write(
-                    receipt.getReceiptID() + "," +
-                    escapedName + "," +
-                    escapedNRIC + "," +
-                    receipt.getAge() + "," +
-                    escapeCSV(receipt.getMaritalStatus()) + "," +
-                    escapeCSV(receipt.getProjectID()) + "," +
-                    escapedNeighborhood + "," +
-                    receipt.getPricePerFlat() + "," +
-                    receipt.getFlatType() + "," +
-                    escapeCSV(receipt.getBookingDate()) + "\n"
-                );
             }
         } catch (IOException e) {
-            System.err.println("Error saving receipt to file: " + e.getMessage());
+            System.err.println("Error reading receipts: " + e.getMessage());
         }
+        return null;
     }
-
+    
     /**
-     * Escapes special characters in CSV fields to prevent parsing issues.
-     * Wraps the value in quotes if it contains commas, quotes, or newlines.
+     * Saves a receipt to the ReceiptList.csv file through the receipt ledger,
+     * which also makes it available for reprints.
      * 
-     * @param value The string to be escaped
-     * @return The CSV-safe escaped string
+     * @param receipt The Receipt object to be saved to the file
+     * @return true if the receipt was saved, false otherwise
      */
-    private String escapeCSV(String value) {
-        if (value == null) return "";
-        
-        // Check if value needs escaping
-        if (value.contains(",") || value.contains("\"") || value.contains("\n")) {
-            // Replace existing quotes with double quotes
-            value = value.replace("\"", "\"\"");
-            // Wrap in quotes
-            return "\"" + value + "\"";
+    private boolean saveReceiptToFile(Receipt receipt) {
+        try {
+            FileHandler.getReceiptLedger().record(receipt);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error saving receipt to file: " + e.getMessage());
+            return false;
         }
-        
-        return value;
     }
 
      /**
      * Generates a receipt for a successful or booked application.
      * Creates a receipt with applicant and project details, 
      * prints the receipt, saves it to a file, and updates the application status.
+     * If the receipt cannot be saved, the status change is undone.
      * 
      * @param application The application for which to generate a receipt
      * @return The generated Receipt object, or null if receipt generation fails
      */
     public Receipt generateReceipt(Application application) {
+        if (application == null) {
+            System.out.println("Cannot generate receipt: Application must be SUCCESSFUL or BOOKED");
+            return null;
+        }
+        
+        // Check and issue under the project's lock, so each booking gets one receipt
+        return BookingService.inProject(application.getProject(), () -> {
+            try (UnitOfWork work = UnitOfWork.begin()) {
+                Receipt receipt = issueReceipt(application);
+                if (receipt != null && !work.commit()) {
+                    System.out.println("Warning: The booking could not be saved yet and will be saved with the next save.");
+                }
+                return receipt;
+            }
+        });
+    }
+    
+    /**
+     * Issues or reprints the receipt of an application, while holding the
+     * project's booking lock.
+     * 
+     * @param application The application for which to generate a receipt
+     * @return The receipt, or null if the application is not SUCCESSFUL or BOOKED
+     */
+    private Receipt issueReceipt(Application application) {
         // Validate application status
-        if (application == null || 
-            !(application.getStatus() == ApplicationStatus.SUCCESSFUL || 
+        if (!(application.getStatus() == ApplicationStatus.SUCCESSFUL || 
               application.getStatus() == ApplicationStatus.BOOKED)) {
             System.out.println("Cannot generate receipt: Application must be SUCCESSFUL or BOOKED");
             return null;
@@ -307,6 +338,15 @@ public class HdbOfficer extends User implements IEnquiryManagement, IApplication
         Project project = application.getProject();
         FlatType flatType = application.getSelectedFlatType();
         
+        // Reprint the receipt already issued for a booked flat instead of issuing another
+        if (application.getStatus() == ApplicationStatus.BOOKED) {
+            Receipt issued = findIssuedReceipt(application);
+            if (issued != null) {
+                issued.printReceiptDetails();
+                return issued;
+            }
+        }
+        
         // Use project's opening date as booking date
         String bookingDate = project.getApplicationOpenDate();
         
@@ -321,16 +361,22 @@ public class HdbOfficer extends User implements IEnquiryManagement, IApplication
         receipt.setPricePerFlat(project.getPricePerFlat());
         receipt.setFlatType(flatType);
         receipt.setBookingDate(bookingDate);
-        
-        // Print receipt details
-        receipt.printReceiptDetails();
-        
-        // Save receipt to file
-        saveReceiptToFile(receipt);
+        receipt.setApplicationID(application.getApplicationId());
         
         // Update application status to BOOKED
+        ApplicationStatus previousStatus = application.getStatus();
+        UnitOfWork.onRollback(() -> application.updateStatus(previousStatus));
         application.updateStatus(ApplicationStatus.BOOKED);
         
+        // Save receipt to file last, since a saved receipt cannot be taken back
+        if (!saveReceiptToFile(receipt)) {
+            System.out.println("Cannot generate receipt: The receipt could not be saved");
+            return null;
+        }
+        
+        // Print receipt details
+        receipt.printReceiptDetails();
+        
         return receipt;
     }
     
@@ -507,11 +553,7 @@ public class HdbOfficer extends User implements IEnquiryManagement, IApplication
             return new ArrayList<>();
         }
         
-        List<Enquiry> allEnquiries = enquiryRepository.findByProject(handlingProject);
-        
-        return allEnquiries.stream()
-                .filter(e -> e.getStatus() == EnquiryStatus.PENDING)
-                .collect(Collectors.toList());
+        return enquiryRepository.findByProjectAndStatus(handlingProject, EnquiryStatus.PENDING);
     }
     
     /**
@@ -633,6 +675,7 @@ public class HdbOfficer extends User implements IEnquiryManagement, IApplication
      */
     public void setHandlingProject(Project handlingProject) {
         this.handlingProject = handlingProject;
+        notifyChanged();
     }
     
     /**
@@ -665,6 +708,7 @@ public class HdbOfficer extends User implements IEnquiryManagement, IApplication
      */
     public void setRegistrationStatus(OfficerRegistrationStatus registrationStatus) {
         this.registrationStatus = registrationStatus;
+        notifyChanged();
     }
     
     /**
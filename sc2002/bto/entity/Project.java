@@ -2,12 +2,33 @@ package sc2002.bto.entity;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import sc2002.bto.enums.FlatType;
+import sc2002.bto.interfaces.IChangeListener;
 
 /**
  * Represents a Build-To-Order (BTO) housing project.
  * This class contains all information about a BTO project including its location,
  * available units, application dates, and visibility status.
+ * <p>
+ * The number of available units of each flat type is kept in an atomic
+ * counter, so that officers booking flats at the same time can never sell
+ * more units than there are: {@link #reserveUnit(FlatType)} only takes a
+ * unit while at least one is left.
+ * <p>
+ * Officer slots are allocated the same way, in two steps. An officer who
+ * registers {@link #reserveOfficerSlot(String) reserves} a free slot, and
+ * the reservation is {@link #confirmOfficerSlot(String) confirmed} when a
+ * manager approves the registration or
+ * {@link #releaseOfficerSlot(String) released} when it is rejected. Each
+ * step is atomic per officer, so a registration approved by two managers
+ * at once fills a single slot. The free and reserved slot counts share one
+ * atomic value, so the number of unfilled slots read at any moment counts
+ * every slot exactly once. Reservations are only held in memory; a
+ * reserved slot is saved as still free, so one that is never confirmed is
+ * not lost on restart.
  * 
  */
 public class Project {
@@ -31,14 +52,22 @@ public class Project {
         private String applicationCloseDate;
         /** Visibility status of the project to applicants */
         private boolean isVisible;
-        /** Number of HDB officer slots available for this project */
-        private int availableOfficerSlots;
+        /**
+         * Number of HDB officer slots neither filled nor reserved, in the high
+         * 32 bits, and number of slots reserved and not yet confirmed or
+         * released, in the low 32 bits
+         */
+        private final AtomicLong officerSlots;
+        /** Slots allocated since loading, keyed by officer NRIC: true once confirmed, false while reserved */
+        private final Map<String, Boolean> allocatedOfficerSlots = new ConcurrentHashMap<>();
         /** Number of 2-room units currently available */
-        private int twoRoomUnitsAvailable;
+        private final AtomicInteger twoRoomUnitsAvailable;
         /** Number of 3-room units currently available */
-        private int threeRoomUnitsAvailable;
+        private final AtomicInteger threeRoomUnitsAvailable;
         /** NRIC of the manager in charge of this project */
         private String managerInCharge;
+        /** Listener notified when a saved field changes, typically the owning repository */
+        private IChangeListener<Project> changeListener;
     
     
     // Constructor
@@ -73,9 +102,9 @@ public class Project {
         this.applicationOpenDate = applicationOpenDate;
         this.applicationCloseDate = applicationCloseDate;
         this.isVisible = isVisible;
-        this.availableOfficerSlots = availableOfficerSlots;
-        this.twoRoomUnitsAvailable = twoRoomUnitsAvailable;
-        this.threeRoomUnitsAvailable = threeRoomUnitsAvailable;
+        this.officerSlots = new AtomicLong(officerSlots(availableOfficerSlots, 0));
+        this.twoRoomUnitsAvailable = new AtomicInteger(twoRoomUnitsAvailable);
+        this.threeRoomUnitsAvailable = new AtomicInteger(threeRoomUnitsAvailable);
     }
     
     /**
@@ -92,6 +121,7 @@ public class Project {
      */
     public void setProjectID(String projectID) {
         this.projectID = projectID;
+        notifyChanged();
     }
     
     /**
@@ -108,6 +138,7 @@ public class Project {
      */
     public void setProjectName(String projectName) {
         this.projectName = projectName;
+        notifyChanged();
     }
     
     /**
@@ -124,6 +155,7 @@ public class Project {
      */
     public void setNeighborhood(String neighborhood) {
         this.neighborhood = neighborhood;
+        notifyChanged();
     }
     
     /**
@@ -140,6 +172,7 @@ public class Project {
      */
     public void setFlatType(FlatType[] flatType) {
         this.flatType = flatType;
+        notifyChanged();
     }
     
     /**
@@ -156,6 +189,7 @@ public class Project {
      */
     public void setFloorCount(double floorCount) {
         this.floorCount = floorCount;
+        notifyChanged();
     }
     
     /**
@@ -172,6 +206,7 @@ public class Project {
      */
     public void setPricePerFlat(double pricePerFlat) {
         this.pricePerFlat = pricePerFlat;
+        notifyChanged();
     }
     
     /**
@@ -188,6 +223,7 @@ public class Project {
      */
     public void setThresholdPrice(double thresholdPrice) {
         this.thresholdPrice = thresholdPrice;
+        notifyChanged();
     }
     
     /**
@@ -204,6 +240,7 @@ public class Project {
      */
     public void setApplicationOpenDate(String applicationOpenDate) {
         this.applicationOpenDate = applicationOpenDate;
+        notifyChanged();
     }
     
     /**
@@ -220,6 +257,7 @@ public class Project {
      */
     public void setApplicationCloseDate(String applicationCloseDate) {
         this.applicationCloseDate = applicationCloseDate;
+        notifyChanged();
     }
     
     /**
@@ -236,22 +274,127 @@ public class Project {
      */
     public void setVisible(boolean visible) {
         isVisible = visible;
+        notifyChanged();
     }
 
     /**
-     * Gets the number of available slots for HDB officers.
+     * Gets the number of available slots for HDB officers, not counting
+     * slots reserved by registrations awaiting approval.
      * @return The number of available officer slots.
      */
     public int getAvailableOfficerSlots() {
-        return availableOfficerSlots;
+        return availableSlots(officerSlots.get());
     }
 
     /**
-     * Sets the number of available slots for HDB officers.
+     * Sets the number of available slots for HDB officers, not counting
+     * slots already reserved.
      * @param availableOfficerSlots The new number of available officer slots.
      */
     public void setAvailableOfficerSlots(int availableOfficerSlots) {
-        this.availableOfficerSlots = availableOfficerSlots;
+        officerSlots.updateAndGet(slots -> officerSlots(availableOfficerSlots, reservedSlots(slots)));
+        notifyChanged();
+    }
+
+    /**
+     * Gets the number of officer slots not yet filled by an approved officer,
+     * including reserved ones. This is the number that is saved.
+     * @return The number of unfilled officer slots.
+     */
+    public int getUnfilledOfficerSlots() {
+        long slots = officerSlots.get();
+        return availableSlots(slots) + reservedSlots(slots);
+    }
+
+    /**
+     * Reserves a free officer slot for an officer's registration. Taking the
+     * slot is a single atomic step, so concurrent registrations never
+     * reserve more slots than there are. An officer who already holds a
+     * reserved or confirmed slot keeps it and takes no other.
+     * @param officerId The NRIC of the registering officer.
+     * @return true if the officer holds a slot, false if no slot was free.
+     */
+    public boolean reserveOfficerSlot(String officerId) {
+        if (allocatedOfficerSlots.containsKey(officerId)) {
+            return true;
+        }
+        while (true) {
+            long slots = officerSlots.get();
+            int available = availableSlots(slots);
+            if (available <= 0) {
+                return false;
+            }
+            if (officerSlots.compareAndSet(slots, officerSlots(available - 1, reservedSlots(slots) + 1))) {
+                break;
+            }
+        }
+        if (allocatedOfficerSlots.putIfAbsent(officerId, Boolean.FALSE) != null) {
+            // A concurrent call allocated a slot to the same officer; give this one back
+            moveOfficerSlot(1, -1);
+        }
+        return true;
+    }
+
+    /**
+     * Turns an officer's reserved slot into a filled one. Only one caller can
+     * confirm a reservation, so approving the same registration twice fills
+     * a single slot.
+     * @param officerId The NRIC of the officer.
+     * @return true if this call confirmed the reservation, false if the
+     *         officer held no reservation or it was already confirmed.
+     */
+    public boolean confirmOfficerSlot(String officerId) {
+        if (!allocatedOfficerSlots.replace(officerId, Boolean.FALSE, Boolean.TRUE)) {
+            return false;
+        }
+        moveOfficerSlot(0, -1);
+        notifyChanged();
+        return true;
+    }
+
+    /**
+     * Gives an officer's reserved slot back, for example when the
+     * registration is rejected. A confirmed slot is not released.
+     * @param officerId The NRIC of the officer.
+     * @return true if a reservation was released, false if the officer held none.
+     */
+    public boolean releaseOfficerSlot(String officerId) {
+        if (!allocatedOfficerSlots.remove(officerId, Boolean.FALSE)) {
+            return false;
+        }
+        moveOfficerSlot(1, -1);
+        return true;
+    }
+
+    /**
+     * Changes the free and reserved officer slot counts in one atomic step.
+     * @param availableChange The change to the number of free slots.
+     * @param reservedChange The change to the number of reserved slots.
+     */
+    private void moveOfficerSlot(int availableChange, int reservedChange) {
+        officerSlots.updateAndGet(slots -> officerSlots(availableSlots(slots) + availableChange,
+                reservedSlots(slots) + reservedChange));
+    }
+
+    /**
+     * Packs the free and reserved officer slot counts into one value.
+     */
+    private static long officerSlots(int available, int reserved) {
+        return ((long) available << 32) | (reserved & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Gets the number of free officer slots from a packed value.
+     */
+    private static int availableSlots(long slots) {
+        return (int) (slots >> 32);
+    }
+
+    /**
+     * Gets the number of reserved officer slots from a packed value.
+     */
+    private static int reservedSlots(long slots) {
+        return (int) slots;
     }
 
     /**
@@ -259,7 +402,7 @@ public class Project {
      * @return The number of available 2-room units.
      */
     public int getTwoRoomUnitsAvailable() {
-        return twoRoomUnitsAvailable;
+        return twoRoomUnitsAvailable.get();
     }
 
     /**
@@ -267,7 +410,8 @@ public class Project {
      * @param twoRoomUnitsAvailable The new number of available 2-room units.
      */
     public void setTwoRoomUnitsAvailable(int twoRoomUnitsAvailable) {
-        this.twoRoomUnitsAvailable = twoRoomUnitsAvailable;
+        this.twoRoomUnitsAvailable.set(twoRoomUnitsAvailable);
+        notifyChanged();
     }
 
     /**
@@ -275,7 +419,7 @@ public class Project {
      * @return The number of available 3-room units.
      */
     public int getThreeRoomUnitsAvailable() {
-        return threeRoomUnitsAvailable;
+        return threeRoomUnitsAvailable.get();
     }
 
     /**
@@ -283,7 +427,8 @@ public class Project {
      * @param threeRoomUnitsAvailable The new number of available 3-room units.
      */
     public void setThreeRoomUnitsAvailable(int threeRoomUnitsAvailable) {
-        this.threeRoomUnitsAvailable = threeRoomUnitsAvailable;
+        this.threeRoomUnitsAvailable.set(threeRoomUnitsAvailable);
+        notifyChanged();
     }
 
     /**
@@ -300,6 +445,24 @@ public class Project {
      */
     public void setManagerInCharge(String managerInCharge) {
         this.managerInCharge = managerInCharge;
+        notifyChanged();
+    }
+
+    /**
+     * Sets the listener to notify when a saved field of this project changes.
+     * @param changeListener The listener, or null to stop notifications.
+     */
+    public void setChangeListener(IChangeListener<Project> changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    /**
+     * Notifies the change listener, if any, that this project has changed.
+     */
+    private void notifyChanged() {
+        if (changeListener != null) {
+            changeListener.onChange(this);
+        }
     }
     
     /**
@@ -309,12 +472,62 @@ public class Project {
      * @return The number of available units for the specified flat type
      */
     public int getUnitsAvailable(FlatType type) {
+        AtomicInteger units = unitsOf(type);
+        return units == null ? 0 : units.get();
+    }
+
+    /**
+     * Takes one unit of a flat type if any is left. The check and the
+     * decrement are a single atomic step, so concurrent bookings never take
+     * the last unit twice.
+     * 
+     * @param type The flat type to book
+     * @return true if a unit was taken, false if none was left
+     */
+    public boolean reserveUnit(FlatType type) {
+        AtomicInteger units = unitsOf(type);
+        if (units == null) {
+            return false;
+        }
+        while (true) {
+            int available = units.get();
+            if (available <= 0) {
+                return false;
+            }
+            if (units.compareAndSet(available, available - 1)) {
+                notifyChanged();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Puts back one unit of a flat type, for example after a booked
+     * application is withdrawn.
+     * 
+     * @param type The flat type to restock
+     */
+    public void releaseUnit(FlatType type) {
+        AtomicInteger units = unitsOf(type);
+        if (units != null) {
+            units.incrementAndGet();
+            notifyChanged();
+        }
+    }
+
+    /**
+     * Gets the counter of available units for a flat type.
+     * 
+     * @param type The flat type
+     * @return The counter, or null for an unknown flat type
+     */
+    private AtomicInteger unitsOf(FlatType type) {
         if (type == FlatType.TWO_ROOM) {
             return twoRoomUnitsAvailable;
         } else if (type == FlatType.THREE_ROOM) {
             return threeRoomUnitsAvailable;
         }
-        return 0;
+        return null;
     }
     
     /**
@@ -324,8 +537,8 @@ public class Project {
      */
     public Map<FlatType, Integer> getAvailableUnits() {
         Map<FlatType, Integer> availableUnits = new HashMap<>();
-        availableUnits.put(FlatType.TWO_ROOM, twoRoomUnitsAvailable);
-        availableUnits.put(FlatType.THREE_ROOM, threeRoomUnitsAvailable);
+        availableUnits.put(FlatType.TWO_ROOM, twoRoomUnitsAvailable.get());
+        availableUnits.put(FlatType.THREE_ROOM, threeRoomUnitsAvailable.get());
         return availableUnits;
     }
 }
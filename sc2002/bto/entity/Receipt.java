@@ -31,6 +31,8 @@ public class Receipt {
     private FlatType flatType;
     /** Date of booking */
     private String bookingDate;
+    /** ID of the application the receipt was issued for, or null if not recorded */
+    private String applicationID;
 
     /**
      * Creates a new receipt with a generated ID.
@@ -72,11 +74,21 @@ public class Receipt {
      * 
      * @return A new unique receipt ID
      */
-    private synchronized String generateNextReceiptID() {
+    private static synchronized String generateNextReceiptID() {
         receiptCounter++;
         return String.format("RCPT-%05d", receiptCounter);
     }
 
+    /**
+     * Continues receipt numbering after the highest receipt number already
+     * issued, so that receipts issued after a restart get new IDs.
+     * 
+     * @param lastNumber The highest receipt number already issued
+     */
+    public static synchronized void resumeNumberingAfter(int lastNumber) {
+        receiptCounter = Math.max(receiptCounter, lastNumber);
+    }
+
     /**
      * Gets the receipt's unique identifier.
      * 
@@ -185,6 +197,24 @@ public class Receipt {
         this.projectID = projID;
     }
 
+    /**
+     * Gets the ID of the application this receipt was issued for.
+     * 
+     * @return The application ID, or null for receipts issued before it was recorded
+     */
+    public String getApplicationID() {
+        return applicationID;
+    }
+
+    /**
+     * Sets the ID of the application this receipt was issued for.
+     * 
+     * @param applicationID The application ID
+     */
+    public void setApplicationID(String applicationID) {
+        this.applicationID = applicationID;
+    }
+
     /**
      * Gets the neighborhood where the project is located.
      * 
@@ -1,6 +1,7 @@
 package sc2002.bto.entity;
 
 import sc2002.bto.enums.MaritalStatus;
+import sc2002.bto.interfaces.IChangeListener;
 
 /**
  * Represents a user in the BTO Management System.
@@ -20,6 +21,8 @@ public class User {
     private int age;
     /** The user's marital status */
     private MaritalStatus maritalStatus;
+    /** Listener notified when a saved field changes, typically the owning repository */
+    private IChangeListener<User> changeListener;
 
     /**
      * Creates a new user with the specified details.
@@ -54,6 +57,7 @@ public class User {
      */
     public void setId(String id) {
         this.id = id;
+        notifyChanged();
     }
 
     /**
@@ -72,6 +76,7 @@ public class User {
      */
     public void setName(String name) {
         this.name = name;
+        notifyChanged();
     }
 
     /**
@@ -90,6 +95,7 @@ public class User {
      */
     public void setPassword(String password) {
         this.password = password;
+        notifyChanged();
     }
 
     /**
@@ -108,6 +114,7 @@ public class User {
      */
     public void setAge(int age) {
         this.age = age;
+        notifyChanged();
     }
 
     /**
@@ -126,6 +133,7 @@ public class User {
      */
     public void setMaritalStatus(MaritalStatus maritalStatus) {
         this.maritalStatus = maritalStatus;
+        notifyChanged();
     }
 
     /**
@@ -147,6 +155,26 @@ public class User {
      */
     public void changePassword(String newPassword) {
         this.password = newPassword;
+        notifyChanged();
+    }
+
+    /**
+     * Sets the listener to notify when a saved field of this user changes.
+     * 
+     * @param changeListener The listener, or null to stop notifications
+     */
+    public void setChangeListener(IChangeListener<User> changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    /**
+     * Notifies the change listener, if any, that this user has changed.
+     * Subclasses call this from setters of fields that are saved.
+     */
+    protected void notifyChanged() {
+        if (changeListener != null) {
+            changeListener.onChange(this);
+        }
     }
 
     /**
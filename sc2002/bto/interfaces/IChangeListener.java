@@ -0,0 +1,17 @@
+package sc2002.bto.interfaces;
+
+/**
+ * Listener notified when a persisted field of an entity is changed directly
+ * on the entity. Repositories use it to record which entities have to be
+ * written at the next save.
+ * 
+ * @param <T> The entity type
+ */
+public interface IChangeListener<T> {
+    /**
+     * Called after an entity has been changed.
+     * 
+     * @param item The entity that changed
+     */
+    void onChange(T item);
+}
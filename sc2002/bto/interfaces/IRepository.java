@@ -1,6 +1,9 @@
 package sc2002.bto.interfaces;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
 /**
  * Generic repository interface that defines standard operations
  * for data access across different entity types.
@@ -21,22 +24,104 @@ public interface IRepository<T> {
      * @return A list containing all entities
      */
     List<T> getAll();
+    /**
+     * Gets a read-only view of all entities without copying them.
+     * The view reflects later changes to the repository, so callers that
+     * add or delete entities while iterating should use {@link #getAll()}.
+     * 
+     * @return An unmodifiable view of all entities
+     */
+    Collection<T> viewAll();
+    /**
+     * Streams over all entities without copying them.
+     * 
+     * @return A stream of all entities
+     */
+    default Stream<T> stream() {
+        return viewAll().stream();
+    }
+    /**
+     * Retrieves one page of entities in ID order.
+     * 
+     * @param cursor The cursor returned with the previous page, or null for the first page
+     * @param pageSize The maximum number of entities to return
+     * @return The page of entities following the cursor
+     */
+    default Page<T> getPage(String cursor, int pageSize) {
+        return getPage(cursor, pageSize, item -> true);
+    }
+    /**
+     * Retrieves one page of the entities that match a filter, in ID order.
+     * Only the entities up to the end of the page are examined.
+     * 
+     * @param cursor The cursor returned with the previous page, or null for the first page
+     * @param pageSize The maximum number of entities to return
+     * @param filter The condition entities must meet to be included
+     * @return The page of matching entities following the cursor
+     */
+    Page<T> getPage(String cursor, int pageSize, Predicate<? super T> filter);
+    /**
+     * Finds the entities that match a query, reading them through the best
+     * index available for its conditions.
+     * 
+     * @param query The query to run
+     * @return A list of matching entities
+     */
+    List<T> find(Query<T> query);
+    /**
+     * Retrieves one page of the entities that match a query, in ID order,
+     * reading them through the best index available for its conditions.
+     * 
+     * @param query The query to run
+     * @param cursor The cursor returned with the previous page, or null for the first page
+     * @param pageSize The maximum number of entities to return
+     * @return The page of matching entities following the cursor
+     */
+    Page<T> findPage(Query<T> query, String cursor, int pageSize);
+    /**
+     * Describes how a query would be run: which index is read, or whether
+     * every entity is scanned, and how many entities would be examined.
+     * 
+     * @param query The query to explain
+     * @return A description of the access path
+     */
+    String explain(Query<T> query);
     /**
      * Adds a new entity to the repository.
      * 
      * @param item The entity to add
      */
     void add(T item);
+    /**
+     * Adds a batch of entities to the repository, checking for duplicates
+     * and updating indexes once for the whole batch.
+     * 
+     * @param items The entities to add
+     */
+    void addAll(Collection<? extends T> items);
     /**
      * Updates an existing entity in the repository.
      * 
      * @param item The entity with updated information
      */
     void update(T item);
+    /**
+     * Updates a batch of existing entities in the repository, updating
+     * indexes once for the whole batch. Entities that are not stored are ignored.
+     * 
+     * @param items The entities with updated information
+     */
+    void updateAll(Collection<? extends T> items);
     /**
      * Deletes an entity with the specified ID.
      * 
      * @param id The ID of the entity to delete
      */
     void delete(String id);
+    /**
+     * Deletes the entities with the specified IDs.
+     * 
+     * @param ids The IDs of the entities to delete
+     */
+    void deleteAll(Collection<String> ids);
 }
@@ -0,0 +1,27 @@
+package sc2002.bto.interfaces;
+
+/**
+ * Listener notified of every write to a repository, after it has been
+ * applied. Writes to the same ID are reported in the order they happen,
+ * which lets a listener keep a log that can be replayed to rebuild the
+ * repository.
+ * 
+ * @param <T> The entity type
+ */
+public interface IRepositoryListener<T> {
+    /**
+     * Called after an entity has been added, replaced or changed.
+     * 
+     * @param id The ID of the entity
+     * @param item The entity as now stored
+     */
+    void onPut(String id, T item);
+
+    /**
+     * Called after an entity has been deleted.
+     * 
+     * @param id The ID of the entity
+     * @param item The deleted entity
+     */
+    void onDelete(String id, T item);
+}
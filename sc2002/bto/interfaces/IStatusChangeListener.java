@@ -0,0 +1,20 @@
+package sc2002.bto.interfaces;
+
+/**
+ * Listener notified when an entity moves from one status to another.
+ * Repositories use it to keep status-partitioned indexes in step with
+ * changes made directly on the entity.
+ * 
+ * @param <T> The entity type
+ * @param <S> The status type
+ */
+public interface IStatusChangeListener<T, S> {
+    /**
+     * Called after the status of an entity has changed.
+     * 
+     * @param item The entity whose status changed
+     * @param oldStatus The status before the change
+     * @param newStatus The status after the change
+     */
+    void onStatusChange(T item, S oldStatus, S newStatus);
+}
@@ -0,0 +1,75 @@
+package sc2002.bto.interfaces;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of entities returned by a keyset-paginated repository query.
+ * Entities are ordered by ID, and the cursor of a page is the ID of its
+ * last entity, so fetching the next page resumes right after it even if
+ * entities were added or deleted in the meantime.
+ *
+ * @param <T> The entity type in the page
+ */
+public class Page<T> {
+    /** Entities on this page */
+    private final List<T> items;
+    /** Cursor to pass to fetch the next page, or null if this is the last page */
+    private final String nextCursor;
+
+    /**
+     * Constructs a new page.
+     *
+     * @param items The entities on this page
+     * @param nextCursor The cursor for the next page, or null if there is none
+     */
+    public Page(List<T> items, String nextCursor) {
+        this.items = Collections.unmodifiableList(items);
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * Gets the entities on this page.
+     *
+     * @return An unmodifiable list of the entities, in ID order
+     */
+    public List<T> getItems() {
+        return items;
+    }
+
+    /**
+     * Gets the cursor to pass to fetch the next page.
+     *
+     * @return The cursor, or null if this is the last page
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * Checks whether more entities follow this page.
+     *
+     * @return true if there is a next page
+     */
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+
+    /**
+     * Checks whether this page has no entities.
+     *
+     * @return true if the page is empty
+     */
+    public boolean isEmpty() {
+        return items.isEmpty();
+    }
+
+    /**
+     * Gets the number of entities on this page.
+     *
+     * @return The number of entities
+     */
+    public int size() {
+        return items.size();
+    }
+}
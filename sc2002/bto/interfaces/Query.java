@@ -0,0 +1,261 @@
+package sc2002.bto.interfaces;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * A query against a repository, made of equality, set membership and range
+ * conditions on named fields plus any number of free-form predicates.
+ * <p>
+ * Repositories inspect the field conditions to choose an index, then apply
+ * the whole query as a filter to the candidates the index returns. Free-form
+ * predicates are never used for index selection.
+ *
+ * @param <T> The entity type being queried
+ */
+public class Query<T> implements Predicate<T> {
+
+    /**
+     * A named, queryable field of an entity. Repositories publish the fields
+     * they support as constants so that they can recognize the ones they
+     * have indexes for.
+     *
+     * @param <T> The entity type
+     * @param <V> The field value type
+     */
+    public static class Field<T, V> {
+        /** Name of the field, used in explain output */
+        private final String name;
+        /** Reads the field value from an entity */
+        private final Function<? super T, ? extends V> getter;
+
+        /**
+         * Constructs a new field.
+         *
+         * @param name The name of the field
+         * @param getter Reads the field value from an entity
+         */
+        public Field(String name, Function<? super T, ? extends V> getter) {
+            this.name = name;
+            this.getter = getter;
+        }
+
+        /**
+         * Gets the name of the field.
+         *
+         * @return The field name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Reads the value of this field from an entity.
+         *
+         * @param item The entity
+         * @return The field value
+         */
+        public V valueOf(T item) {
+            return getter.apply(item);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * An inclusive range condition on a field. A null bound is open.
+     */
+    private static class Range {
+        /** Lowest accepted value, or null for no lower bound */
+        private final Comparable<Object> low;
+        /** Highest accepted value, or null for no upper bound */
+        private final Comparable<Object> high;
+
+        @SuppressWarnings("unchecked")
+        private Range(Comparable<?> low, Comparable<?> high) {
+            this.low = (Comparable<Object>) low;
+            this.high = (Comparable<Object>) high;
+        }
+
+        private boolean contains(Object value) {
+            if (value == null) {
+                return false;
+            }
+            return (low == null || low.compareTo(value) <= 0)
+                    && (high == null || high.compareTo(value) >= 0);
+        }
+    }
+
+    /** Accepted values for each field with an equality or membership condition */
+    private final Map<Field<T, ?>, Set<Object>> equalities = new LinkedHashMap<>();
+    /** Range conditions for each field */
+    private final Map<Field<T, ?>, Range> ranges = new LinkedHashMap<>();
+    /** Conditions that cannot be answered from an index */
+    private final List<Predicate<? super T>> predicates = new ArrayList<>();
+
+    /**
+     * Adds a condition that a field equals a value.
+     *
+     * @param <V> The field value type
+     * @param field The field
+     * @param value The required value
+     * @return This query
+     */
+    public <V> Query<T> eq(Field<T, V> field, V value) {
+        return in(field, Collections.singleton(value));
+    }
+
+    /**
+     * Adds a condition that a field equals one of several values.
+     * Repeated conditions on the same field must all hold.
+     *
+     * @param <V> The field value type
+     * @param field The field
+     * @param values The accepted values
+     * @return This query
+     */
+    public <V> Query<T> in(Field<T, V> field, Collection<? extends V> values) {
+        Set<Object> accepted = equalities.get(field);
+        if (accepted == null) {
+            equalities.put(field, new LinkedHashSet<>(values));
+        } else {
+            accepted.retainAll(values);
+        }
+        return this;
+    }
+
+    /**
+     * Adds a condition that a field lies within an inclusive range.
+     *
+     * @param <V> The field value type
+     * @param field The field
+     * @param low The lowest accepted value, or null for no lower bound
+     * @param high The highest accepted value, or null for no upper bound
+     * @return This query
+     */
+    public <V extends Comparable<? super V>> Query<T> between(Field<T, V> field, V low, V high) {
+        if (ranges.containsKey(field)) {
+            throw new IllegalArgumentException("Range already set for field " + field);
+        }
+        ranges.put(field, new Range(low, high));
+        return this;
+    }
+
+    /**
+     * Adds a free-form condition.
+     *
+     * @param predicate The condition entities must meet
+     * @return This query
+     */
+    public Query<T> where(Predicate<? super T> predicate) {
+        predicates.add(predicate);
+        return this;
+    }
+
+    /**
+     * Gets the values accepted by the equality or membership condition on a field.
+     *
+     * @param field The field
+     * @return The accepted values, or null if the field has no such condition
+     */
+    public Set<Object> valuesFor(Field<T, ?> field) {
+        Set<Object> accepted = equalities.get(field);
+        return accepted == null ? null : Collections.unmodifiableSet(accepted);
+    }
+
+    /**
+     * Checks whether the query has a range condition on a field.
+     *
+     * @param field The field
+     * @return true if the field has a range condition
+     */
+    public boolean hasRange(Field<T, ?> field) {
+        return ranges.containsKey(field);
+    }
+
+    /**
+     * Gets the lower bound of the range condition on a field.
+     *
+     * @param field The field
+     * @return The lower bound, or null if there is none
+     */
+    public Object lowerBound(Field<T, ?> field) {
+        Range range = ranges.get(field);
+        return range == null ? null : range.low;
+    }
+
+    /**
+     * Gets the upper bound of the range condition on a field.
+     *
+     * @param field The field
+     * @return The upper bound, or null if there is none
+     */
+    public Object upperBound(Field<T, ?> field) {
+        Range range = ranges.get(field);
+        return range == null ? null : range.high;
+    }
+
+    /**
+     * Checks whether an entity meets every condition of the query.
+     *
+     * @param item The entity to check
+     * @return true if the entity matches
+     */
+    @Override
+    public boolean test(T item) {
+        for (Map.Entry<Field<T, ?>, Set<Object>> entry : equalities.entrySet()) {
+            if (!entry.getValue().contains(entry.getKey().valueOf(item))) {
+                return false;
+            }
+        }
+        for (Map.Entry<Field<T, ?>, Range> entry : ranges.entrySet()) {
+            if (!entry.getValue().contains(entry.getKey().valueOf(item))) {
+                return false;
+            }
+        }
+        for (Predicate<? super T> predicate : predicates) {
+            if (!predicate.test(item)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Describes the query conditions, for explain output.
+     *
+     * @return The conditions joined with AND
+     */
+    @Override
+    public String toString() {
+        List<String> parts = new ArrayList<>();
+        for (Map.Entry<Field<T, ?>, Set<Object>> entry : equalities.entrySet()) {
+            Set<Object> values = entry.getValue();
+            if (values.size() == 1) {
+                parts.add(entry.getKey() + " = " + values.iterator().next());
+            } else {
+                parts.add(entry.getKey() + " IN " + values);
+            }
+        }
+        for (Map.Entry<Field<T, ?>, Range> entry : ranges.entrySet()) {
+            Range range = entry.getValue();
+            parts.add(entry.getKey() + " BETWEEN " + (range.low == null ? "-inf" : range.low)
+                    + " AND " + (range.high == null ? "+inf" : range.high));
+        }
+        if (!predicates.isEmpty()) {
+            parts.add(predicates.size() + " filter(s)");
+        }
+        return parts.isEmpty() ? "all" : String.join(" AND ", parts);
+    }
+}
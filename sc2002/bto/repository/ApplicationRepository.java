@@ -1,76 +1,259 @@
 package sc2002.bto.repository;
 
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import sc2002.bto.entity.Applicant;
 import sc2002.bto.entity.Application;
-import sc2002.bto.interfaces.IRepository;
+import sc2002.bto.enums.ApplicationStatus;
+import sc2002.bto.interfaces.IStatusChangeListener;
+import sc2002.bto.interfaces.Query;
 
 /**
  * Constructs a new Application Repository instance.
  * Initializes an empty collection to store items.
  */
-public class ApplicationRepository implements IRepository<Application> {
-    /** In-memory storage of application records */
-    private List<Application> applications = new ArrayList<>();
+public class ApplicationRepository extends InMemoryRepository<Application> {
+    /** Query field for the application ID */
+    public static final Query.Field<Application, String> ID =
+            new Query.Field<>("applicationId", Application::getApplicationId);
+    /** Query field for the applicant's NRIC */
+    public static final Query.Field<Application, String> APPLICANT_ID =
+            new Query.Field<>("applicantId", a -> a.getApplicant() == null ? null : a.getApplicant().getId());
+    /** Query field for the project ID */
+    public static final Query.Field<Application, String> PROJECT_ID =
+            new Query.Field<>("projectId", a -> a.getProject() == null ? null : a.getProject().getProjectID());
+    /** Query field for the application status */
+    public static final Query.Field<Application, ApplicationStatus> STATUS =
+            new Query.Field<>("status", Application::getStatus);
+    /** Query field for whether a withdrawal has been requested */
+    public static final Query.Field<Application, Boolean> WITHDRAWAL_REQUESTED =
+            new Query.Field<>("withdrawalRequested", Application::isWithdrawalRequested);
+    /** Query field for the application date */
+    public static final Query.Field<Application, String> APPLICATION_DATE =
+            new Query.Field<>("applicationDate", Application::getApplicationDate);
+    
+    /** Applications grouped by applicant ID */
+    private final Map<String, ApplicantApplications> byApplicant = newIndexMap();
+    /** Sequence number of each stored application, in the order they were first stored */
+    private final Map<String, Long> submissionOrder = newIndexMap();
+    /** Source of submission sequence numbers */
+    private final AtomicLong nextSubmission = new AtomicLong();
+    /** Applications partitioned by project ID and then by status */
+    private final Map<String, ProjectApplications> byProject = newIndexMap();
+    /** Moves applications between status buckets when their status changes */
+    private final IStatusChangeListener<Application, ApplicationStatus> statusListener = this::moveToStatus;
+    
+    /**
+     * Applications of a single applicant.
+     */
+    private class ApplicantApplications {
+        /** The applications keyed by application ID, for query plans */
+        private final Map<String, Application> byId = newIndexMap();
+        /** The applications keyed by submission sequence number */
+        private final NavigableMap<Long, Application> inOrder = newSortedIndexMap();
+    }
+    
+    /**
+     * Applications for a single project, each bucket sorted by application ID.
+     */
+    private class ProjectApplications {
+        /** All applications for the project */
+        private final NavigableMap<String, Application> all = newSortedIndexMap();
+        /** Applications for the project grouped by status */
+        private final Map<ApplicationStatus, NavigableMap<String, Application>> byStatus =
+                new EnumMap<>(ApplicationStatus.class);
+
+        /**
+         * Creates an empty set of buckets, one per application status.
+         */
+        private ProjectApplications() {
+            for (ApplicationStatus status : ApplicationStatus.values()) {
+                byStatus.put(status, newSortedIndexMap());
+            }
+        }
+    }
+    
+    /**
+     * Creates an empty application repository for single-threaded use.
+     */
+    public ApplicationRepository() {
+        super();
+    }
     
     /**
-     * Retrieves an application by its ID.
+     * Creates an empty application repository.
      * 
-     * @param id The ID of the application to retrieve
-     * @return The application with the specified ID, or null if not found
+     * @param concurrent true to make the repository safe for concurrent use
      */
-    public Application getById(String id) {
-        return applications.stream()
-                .filter(app -> app.getApplicationId().equals(id))
-                .findFirst()
-                .orElse(null);
+    public ApplicationRepository(boolean concurrent) {
+        super(concurrent);
     }
     
     /**
-     * Retrieves all applications stored in the repository.
+     * Gets the ID of an application.
      * 
-     * @return A list containing all applications
+     * @param item The application
+     * @return The application ID
      */
     @Override
-    public List<Application> getAll() {
-        return new ArrayList<>(applications);
+    protected String idOf(Application item) {
+        return item.getApplicationId();
     }
     
     /**
-     * Adds a new application to the repository.
+     * Gets the query field for the application ID.
      * 
-     * @param item The application to add
+     * @return The ID field
      */
     @Override
-    public void add(Application item) {
-        applications.add(item);
+    protected Query.Field<Application, String> idField() {
+        return ID;
     }
     
     /**
-     * Updates an existing application in the repository.
+     * Adds an application to the applicant, project and status indexes and
+     * starts listening for status and other changes.
      * 
-     * @param item The application with updated information
+     * @param item The stored application
      */
     @Override
-    public void update(Application item) {
-        for (int i = 0; i < applications.size(); i++) {
-            if (applications.get(i).getApplicationId().equals(item.getApplicationId())) {
-                applications.set(i, item);
-                return;
+    protected void index(Application item) {
+        item.setStatusListener(statusListener);
+        item.setChangeListener(changeListener);
+        if (item.getApplicant() != null) {
+            long sequence = submissionOrder.computeIfAbsent(item.getApplicationId(),
+                    k -> nextSubmission.incrementAndGet());
+            ApplicantApplications applications = byApplicant.computeIfAbsent(item.getApplicant().getId(),
+                    k -> new ApplicantApplications());
+            applications.byId.put(item.getApplicationId(), item);
+            applications.inOrder.put(sequence, item);
+        }
+        if (item.getProject() != null) {
+            ProjectApplications applications = byProject.computeIfAbsent(item.getProject().getProjectID(),
+                    k -> new ProjectApplications());
+            applications.all.put(item.getApplicationId(), item);
+            applications.byStatus.get(item.getStatus()).put(item.getApplicationId(), item);
+        }
+    }
+    
+    /**
+     * Removes an application from the applicant, project and status indexes
+     * and stops listening for status and other changes.
+     * 
+     * @param item The removed application
+     */
+    @Override
+    protected void unindex(Application item) {
+        item.setStatusListener(null);
+        item.setChangeListener(null);
+        if (item.getApplicant() != null) {
+            String applicantId = item.getApplicant().getId();
+            ApplicantApplications applications = byApplicant.get(applicantId);
+            Long sequence = submissionOrder.get(item.getApplicationId());
+            if (applications != null) {
+                applications.byId.remove(item.getApplicationId());
+                if (sequence != null) {
+                    applications.inOrder.remove(sequence);
+                }
+                pruneIfEmpty(byApplicant, applicantId, applications.byId);
+            }
+        }
+        if (getById(item.getApplicationId()) == null) {
+            // Removed rather than replaced, so a later application with this ID counts as new
+            submissionOrder.remove(item.getApplicationId());
+        }
+        if (item.getProject() != null) {
+            String projectId = item.getProject().getProjectID();
+            ProjectApplications applications = byProject.get(projectId);
+            if (applications != null) {
+                applications.all.remove(item.getApplicationId());
+                for (Map<String, Application> bucket : applications.byStatus.values()) {
+                    bucket.remove(item.getApplicationId());
+                }
+                pruneIfEmpty(byProject, projectId, applications.all);
             }
         }
     }
     
     /**
-     * Deletes an application with the specified ID.
+     * Moves a stored application into the bucket for its new status.
      * 
-     * @param id The ID of the application to delete
+     * @param item The application whose status changed
+     * @param oldStatus The previous status
+     * @param newStatus The new status
+     */
+    private void moveToStatus(Application item, ApplicationStatus oldStatus, ApplicationStatus newStatus) {
+        if (item.getProject() == null) {
+            return;
+        }
+        locked(item.getApplicationId(), () -> {
+            if (getById(item.getApplicationId()) != item) {
+                return;
+            }
+            ProjectApplications applications = byProject.get(item.getProject().getProjectID());
+            if (applications == null) {
+                return;
+            }
+            applications.byStatus.get(oldStatus).remove(item.getApplicationId());
+            applications.byStatus.get(newStatus).put(item.getApplicationId(), item);
+        });
+    }
+    
+    /**
+     * Chooses how to run a query, preferring the project and status index,
+     * then the project or applicant index, over a scan.
+     * 
+     * @param query The query to plan
+     * @return The chosen plan
      */
     @Override
-    public void delete(String id) {
-        applications.removeIf(app -> app.getApplicationId().equals(id));
+    protected QueryPlan<Application> plan(Query<Application> query) {
+        QueryPlan<Application> best = super.plan(query);
+        Set<Object> applicantIds = query.valuesFor(APPLICANT_ID);
+        if (applicantIds != null) {
+            List<Map<String, Application>> buckets = new ArrayList<>();
+            for (Object applicantId : applicantIds) {
+                ApplicantApplications applications = byApplicant.get(applicantId);
+                if (applications != null) {
+                    buckets.add(applications.byId);
+                }
+            }
+            best = QueryPlan.cheaper(best,
+                    QueryPlan.index("byApplicant", APPLICANT_ID + " IN " + applicantIds, buckets));
+        }
+        Set<Object> projectIds = query.valuesFor(PROJECT_ID);
+        if (projectIds == null) {
+            return best;
+        }
+        Set<Object> statuses = query.valuesFor(STATUS);
+        List<Map<String, Application>> buckets = new ArrayList<>();
+        for (Object projectId : projectIds) {
+            ProjectApplications applications = byProject.get(projectId);
+            if (applications == null) {
+                continue;
+            }
+            if (statuses == null) {
+                buckets.add(applications.all);
+                continue;
+            }
+            for (Object status : statuses) {
+                Map<String, Application> bucket = applications.byStatus.get(status);
+                if (bucket != null) {
+                    buckets.add(bucket);
+                }
+            }
+        }
+        if (statuses == null) {
+            return QueryPlan.cheaper(best,
+                    QueryPlan.index("byProject", PROJECT_ID + " IN " + projectIds, buckets));
+        }
+        return QueryPlan.cheaper(best, QueryPlan.index("byProjectStatus",
+                PROJECT_ID + " IN " + projectIds + ", " + STATUS + " IN " + statuses, buckets));
     }
     
     /**
@@ -80,10 +263,35 @@ public class ApplicationRepository implements IRepository<Application> {
      * @return A list of applications from the specified applicant
      */
     public List<Application> findByApplicant(Applicant applicant) {
-        return applications.stream()
-                .filter(app -> app.getApplicant() != null && 
-                         app.getApplicant().getId().equals(applicant.getId()))
-                .collect(Collectors.toList());
+        return findByApplicantId(applicant.getId());
+    }
+    
+    /**
+     * Finds all applications submitted by the applicant with the given ID.
+     * 
+     * @param applicantId The NRIC of the applicant
+     * @return A list of applications from the specified applicant, in submission order
+     */
+    public List<Application> findByApplicantId(String applicantId) {
+        ApplicantApplications applications = byApplicant.get(applicantId);
+        if (applications == null) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(applications.inOrder.values());
+    }
+    
+    /**
+     * Finds the earliest application submitted by the applicant with the given ID.
+     * 
+     * @param applicantId The NRIC of the applicant
+     * @return The applicant's first application, or null if none exists
+     */
+    public Application findFirstByApplicantId(String applicantId) {
+        ApplicantApplications applications = byApplicant.get(applicantId);
+        if (applications == null) {
+            return null;
+        }
+        Map.Entry<Long, Application> first = applications.inOrder.firstEntry();
+        return first == null ? null : first.getValue();
     }
 }
-
@@ -0,0 +1,141 @@
+package sc2002.bto.repository;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * The entities added, changed and deleted in a repository since its changes
+ * were last taken, each keyed on its ID.
+ * <p>
+ * An entity appears in at most one of the added and updated groups: changing
+ * an entity that was added since the last save keeps it in the added group.
+ * An entity that was deleted and then added again with the same ID appears
+ * as both deleted and added, so that savers drop the old row and write the
+ * new one where additions go.
+ *
+ * @param <T> The entity type
+ */
+public class ChangeSet<T> {
+    /** Entities added since the changes were last taken, in order of addition */
+    private final Map<String, T> added = new LinkedHashMap<>();
+    /** Previously saved entities that have changed */
+    private final Map<String, T> updated = new LinkedHashMap<>();
+    /** Entities that have been deleted, as they were when deleted */
+    private final Map<String, T> deleted = new LinkedHashMap<>();
+
+    /**
+     * Records that an entity was added.
+     *
+     * @param id The entity's ID
+     * @param item The added entity
+     */
+    void recordAdd(String id, T item) {
+        updated.remove(id);
+        added.put(id, item);
+    }
+
+    /**
+     * Records that an entity was changed or replaced.
+     *
+     * @param id The entity's ID
+     * @param item The entity as now stored
+     */
+    void recordUpdate(String id, T item) {
+        if (added.containsKey(id)) {
+            added.put(id, item);
+        } else {
+            updated.put(id, item);
+        }
+    }
+
+    /**
+     * Records that an entity was deleted.
+     *
+     * @param id The entity's ID
+     * @param item The deleted entity
+     */
+    void recordDelete(String id, T item) {
+        added.remove(id);
+        updated.remove(id);
+        deleted.put(id, item);
+    }
+
+    /**
+     * Replays another set of changes on top of this one.
+     *
+     * @param later The changes that happened after the ones in this set
+     */
+    void merge(ChangeSet<T> later) {
+        for (Map.Entry<String, T> entry : later.deleted.entrySet()) {
+            recordDelete(entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, T> entry : later.added.entrySet()) {
+            recordAdd(entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, T> entry : later.updated.entrySet()) {
+            recordUpdate(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Checks whether nothing has changed.
+     *
+     * @return true if no entity was added, changed or deleted
+     */
+    public boolean isEmpty() {
+        return added.isEmpty() && updated.isEmpty() && deleted.isEmpty();
+    }
+
+    /**
+     * Checks whether any added, changed or deleted entity meets a condition.
+     * Savers that write a repository to several files use this to find
+     * the files that have to be written.
+     *
+     * @param filter The condition to check
+     * @return true if at least one changed entity meets the condition
+     */
+    public boolean touches(Predicate<? super T> filter) {
+        return added.values().stream().anyMatch(filter)
+                || updated.values().stream().anyMatch(filter)
+                || deleted.values().stream().anyMatch(filter);
+    }
+
+    /**
+     * Gets the entities added since the changes were last taken.
+     *
+     * @return The added entities keyed on ID, in order of addition
+     */
+    public Map<String, T> getAdded() {
+        return Collections.unmodifiableMap(added);
+    }
+
+    /**
+     * Gets the previously saved entities that have changed.
+     *
+     * @return The changed entities keyed on ID
+     */
+    public Map<String, T> getUpdated() {
+        return Collections.unmodifiableMap(updated);
+    }
+
+    /**
+     * Gets the entities that have been deleted.
+     *
+     * @return The deleted entities keyed on ID
+     */
+    public Map<String, T> getDeleted() {
+        return Collections.unmodifiableMap(deleted);
+    }
+
+    /**
+     * Describes the number of changes in each group, for diagnostics.
+     *
+     * @return A short summary of the changes
+     */
+    @Override
+    public String toString() {
+        return added.size() + " added, " + updated.size() + " updated, " + deleted.size() + " deleted";
+    }
+}
@@ -1,88 +1,307 @@
 package sc2002.bto.repository;
 
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import sc2002.bto.entity.Enquiry;
 import sc2002.bto.entity.Project;
-import sc2002.bto.interfaces.IRepository;
+import sc2002.bto.enums.EnquiryStatus;
+import sc2002.bto.interfaces.IStatusChangeListener;
+import sc2002.bto.interfaces.Query;
 /**
  * Constructs a new Enquiry Repository instance.
  * Initializes an empty collection to store items.
  */
-public class EnquiryRepository implements IRepository<Enquiry> {
-    /** In-memory storage of enquiry records */
-    private List<Enquiry> enquiries = new ArrayList<>();
-    
+public class EnquiryRepository extends InMemoryRepository<Enquiry> {
+    /** Query field for the enquiry ID */
+    public static final Query.Field<Enquiry, String> ID =
+            new Query.Field<>("enquiryId", Enquiry::getEnquiryId);
+    /** Query field for the project ID */
+    public static final Query.Field<Enquiry, String> PROJECT_ID =
+            new Query.Field<>("projectId", e -> e.getProject() == null ? null : e.getProject().getProjectID());
+    /** Query field for the applicant's NRIC */
+    public static final Query.Field<Enquiry, String> APPLICANT_ID =
+            new Query.Field<>("applicantId", e -> e.getApplicant() == null ? null : e.getApplicant().getId());
+    /** Query field for the enquiry status */
+    public static final Query.Field<Enquiry, EnquiryStatus> STATUS =
+            new Query.Field<>("status", Enquiry::getStatus);
+
+    /** Enquiries partitioned by project ID and then by status */
+    private final Map<String, ProjectEnquiries> byProject = newIndexMap();
+    /** Sequence number of each stored enquiry, in the order they were first stored */
+    private final Map<String, Long> submissionOrder = newIndexMap();
+    /** Source of submission sequence numbers */
+    private final AtomicLong nextSubmission = new AtomicLong();
+    /** Moves enquiries between status buckets when they are replied to */
+    private final IStatusChangeListener<Enquiry, EnquiryStatus> statusListener = this::moveToStatus;
+
     /**
-     * Retrieves an enquiry by its ID.
-     * 
-     * @param id The ID of the enquiry to retrieve
-     * @return The enquiry with the specified ID, or null if not found
+     * Enquiries for a single project, kept both in submission order and
+     * partitioned by status.
      */
-    public Enquiry getById(String id) {
-        return enquiries.stream()
-                .filter(e -> e.getEnquiryId().equals(id))
-                .findFirst()
-                .orElse(null);
+    private class ProjectEnquiries {
+        /** All enquiries for the project keyed by enquiry ID, for query plans */
+        private final Map<String, Enquiry> all = newIndexMap();
+        /** All enquiries for the project keyed by submission sequence number */
+        private final NavigableMap<Long, Enquiry> inOrder = newSortedIndexMap();
+        /** Enquiries for the project grouped by status and keyed by enquiry ID, for query plans */
+        private final Map<EnquiryStatus, Map<String, Enquiry>> byStatus = new EnumMap<>(EnquiryStatus.class);
+        /** Enquiries for the project grouped by status and keyed by submission sequence number */
+        private final Map<EnquiryStatus, NavigableMap<Long, Enquiry>> byStatusInOrder =
+                new EnumMap<>(EnquiryStatus.class);
+
+        /**
+         * Creates an empty set of buckets, one per enquiry status.
+         */
+        private ProjectEnquiries() {
+            for (EnquiryStatus status : EnquiryStatus.values()) {
+                byStatus.put(status, newIndexMap());
+                byStatusInOrder.put(status, newSortedIndexMap());
+            }
+        }
     }
-    
+
     /**
-     * Retrieves all enquiries stored in the repository.
-     * 
-     * @return A list containing all enquiries
+     * Creates an empty enquiry repository for single-threaded use.
+     */
+    public EnquiryRepository() {
+        super();
+    }
+
+    /**
+     * Creates an empty enquiry repository.
+     *
+     * @param concurrent true to make the repository safe for concurrent use
+     */
+    public EnquiryRepository(boolean concurrent) {
+        super(concurrent);
+    }
+
+    /**
+     * Gets the ID of an enquiry.
+     *
+     * @param item The enquiry
+     * @return The enquiry ID
      */
     @Override
-    public List<Enquiry> getAll() {
-        return new ArrayList<>(enquiries);
+    protected String idOf(Enquiry item) {
+        return item.getEnquiryId();
     }
-    
+
     /**
-     * Adds a new enquiry to the repository.
-     * 
-     * @param item The enquiry to add
+     * Gets the query field for the enquiry ID.
+     *
+     * @return The ID field
      */
     @Override
-    public void add(Enquiry item) {
-        enquiries.add(item);
+    protected Query.Field<Enquiry, String> idField() {
+        return ID;
     }
-    
-     /**
-     * Updates an existing enquiry in the repository.
-     * 
-     * @param item The enquiry with updated information
+
+    /**
+     * Adds an enquiry to its project and status bucket and starts listening
+     * for status and other changes.
+     *
+     * @param item The stored enquiry
      */
     @Override
-    public void update(Enquiry item) {
-        for (int i = 0; i < enquiries.size(); i++) {
-            if (enquiries.get(i).getEnquiryId().equals(item.getEnquiryId())) {
-                enquiries.set(i, item);
+    protected void index(Enquiry item) {
+        item.setStatusListener(statusListener);
+        item.setChangeListener(changeListener);
+        if (item.getProject() == null) {
+            return;
+        }
+        long sequence = submissionOrder.computeIfAbsent(item.getEnquiryId(),
+                k -> nextSubmission.incrementAndGet());
+        ProjectEnquiries enquiries = byProject.computeIfAbsent(item.getProject().getProjectID(),
+                k -> new ProjectEnquiries());
+        enquiries.all.put(item.getEnquiryId(), item);
+        enquiries.inOrder.put(sequence, item);
+        enquiries.byStatus.get(item.getStatus()).put(item.getEnquiryId(), item);
+        enquiries.byStatusInOrder.get(item.getStatus()).put(sequence, item);
+    }
+
+    /**
+     * Removes an enquiry from its project and status bucket and stops
+     * listening for status and other changes.
+     *
+     * @param item The removed enquiry
+     */
+    @Override
+    protected void unindex(Enquiry item) {
+        item.setStatusListener(null);
+        item.setChangeListener(null);
+        String id = item.getEnquiryId();
+        Long sequence = submissionOrder.get(id);
+        if (sequence != null && getById(id) == null) {
+            // Removed rather than replaced, so a later enquiry with this ID counts as new,
+            // but one brought back by a rollback keeps its place
+            submissionOrder.remove(id);
+            UnitOfWork.onRollback(() -> resubmit(id, sequence));
+        }
+        if (item.getProject() == null) {
+            return;
+        }
+        String projectId = item.getProject().getProjectID();
+        ProjectEnquiries enquiries = byProject.get(projectId);
+        if (enquiries == null) {
+            return;
+        }
+        enquiries.all.remove(id);
+        for (Map<String, Enquiry> bucket : enquiries.byStatus.values()) {
+            bucket.remove(id);
+        }
+        if (sequence != null) {
+            enquiries.inOrder.remove(sequence);
+            for (Map<Long, Enquiry> bucket : enquiries.byStatusInOrder.values()) {
+                bucket.remove(sequence);
+            }
+        }
+        pruneIfEmpty(byProject, projectId, enquiries.all);
+    }
+
+    /**
+     * Gives an enquiry back the submission sequence number it had before a
+     * rolled-back delete. The rollback may put the enquiry back before or
+     * after this runs, so an enquiry already re-indexed under a new number
+     * is moved to the old one.
+     *
+     * @param id The enquiry ID
+     * @param sequence The sequence number it had
+     */
+    private void resubmit(String id, long sequence) {
+        locked(id, () -> {
+            Long current = submissionOrder.put(id, sequence);
+            Enquiry item = getById(id);
+            if (current == null || current == sequence || item == null || item.getProject() == null) {
                 return;
             }
+            ProjectEnquiries enquiries = byProject.get(item.getProject().getProjectID());
+            if (enquiries == null) {
+                return;
+            }
+            enquiries.inOrder.remove(current);
+            enquiries.inOrder.put(sequence, item);
+            for (NavigableMap<Long, Enquiry> bucket : enquiries.byStatusInOrder.values()) {
+                if (bucket.remove(current) != null) {
+                    bucket.put(sequence, item);
+                }
+            }
+        });
+    }
+
+    /**
+     * Moves a stored enquiry into the bucket for its new status.
+     *
+     * @param item The enquiry whose status changed
+     * @param oldStatus The previous status
+     * @param newStatus The new status
+     */
+    private void moveToStatus(Enquiry item, EnquiryStatus oldStatus, EnquiryStatus newStatus) {
+        if (item.getProject() == null) {
+            return;
         }
+        locked(item.getEnquiryId(), () -> {
+            if (getById(item.getEnquiryId()) != item) {
+                return;
+            }
+            ProjectEnquiries enquiries = byProject.get(item.getProject().getProjectID());
+            if (enquiries == null) {
+                return;
+            }
+            enquiries.byStatus.get(oldStatus).remove(item.getEnquiryId());
+            enquiries.byStatus.get(newStatus).put(item.getEnquiryId(), item);
+            Long sequence = submissionOrder.get(item.getEnquiryId());
+            if (sequence != null) {
+                enquiries.byStatusInOrder.get(oldStatus).remove(sequence);
+                enquiries.byStatusInOrder.get(newStatus).put(sequence, item);
+            }
+        });
     }
-    
+
     /**
-     * Deletes an enquiry with the specified ID.
-     * 
-     * @param id The ID of the enquiry to delete
+     * Chooses how to run a query, preferring the project and status index,
+     * then the project index, over a scan.
+     *
+     * @param query The query to plan
+     * @return The chosen plan
      */
     @Override
-    public void delete(String id) {
-        enquiries.removeIf(e -> e.getEnquiryId().equals(id));
+    protected QueryPlan<Enquiry> plan(Query<Enquiry> query) {
+        QueryPlan<Enquiry> best = super.plan(query);
+        Set<Object> projectIds = query.valuesFor(PROJECT_ID);
+        if (projectIds == null) {
+            return best;
+        }
+        Set<Object> statuses = query.valuesFor(STATUS);
+        List<Map<String, Enquiry>> buckets = new ArrayList<>();
+        for (Object projectId : projectIds) {
+            ProjectEnquiries enquiries = byProject.get(projectId);
+            if (enquiries == null) {
+                continue;
+            }
+            if (statuses == null) {
+                buckets.add(enquiries.all);
+                continue;
+            }
+            for (Object status : statuses) {
+                Map<String, Enquiry> bucket = enquiries.byStatus.get(status);
+                if (bucket != null) {
+                    buckets.add(bucket);
+                }
+            }
+        }
+        if (statuses == null) {
+            return QueryPlan.cheaper(best,
+                    QueryPlan.index("byProject", PROJECT_ID + " IN " + projectIds, buckets));
+        }
+        return QueryPlan.cheaper(best, QueryPlan.index("byProjectStatus",
+                PROJECT_ID + " IN " + projectIds + ", " + STATUS + " IN " + statuses, buckets));
     }
-    
+
     /**
-     * Finds all enquiries related to a specific project.
-     * 
+     * Finds all enquiries related to a specific project, in submission order.
+     *
      * @param project The project to find enquiries for
      * @return A list of enquiries for the specified project
      */
     public List<Enquiry> findByProject(Project project) {
-        return enquiries.stream()
-                .filter(e -> e.getProject() != null && 
-                         e.getProject().getProjectID().equals(project.getProjectID()))
-                .collect(Collectors.toList());
+        ProjectEnquiries enquiries = byProject.get(project.getProjectID());
+        if (enquiries == null) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(enquiries.inOrder.values());
+    }
+
+    /**
+     * Finds the enquiries for a project that have a specific status, in
+     * submission order.
+     *
+     * @param project The project to find enquiries for
+     * @param status The status to match
+     * @return A list of matching enquiries
+     */
+    public List<Enquiry> findByProjectAndStatus(Project project, EnquiryStatus status) {
+        ProjectEnquiries enquiries = byProject.get(project.getProjectID());
+        if (enquiries == null) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(enquiries.byStatusInOrder.get(status).values());
     }
-}
 
+    /**
+     * Counts the enquiries for a project that have a specific status.
+     *
+     * @param project The project to count enquiries for
+     * @param status The status to match
+     * @return The number of matching enquiries
+     */
+    public int countByProjectAndStatus(Project project, EnquiryStatus status) {
+        ProjectEnquiries enquiries = byProject.get(project.getProjectID());
+        return enquiries == null ? 0 : enquiries.byStatus.get(status).size();
+    }
+}
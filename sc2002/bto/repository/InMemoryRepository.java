@@ -0,0 +1,952 @@
+package sc2002.bto.repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
+import sc2002.bto.interfaces.IChangeListener;
+import sc2002.bto.interfaces.IRepository;
+import sc2002.bto.interfaces.IRepositoryListener;
+import sc2002.bto.interfaces.Page;
+import sc2002.bto.interfaces.Query;
+
+/**
+ * Base class for the in-memory repositories.
+ * Entities are kept in an insertion-ordered hash index keyed on their ID,
+ * so lookups, updates and deletes by ID run in constant time while
+ * {@link #getAll()} still returns entities in the order they were added.
+ * <p>
+ * A repository can also be created in concurrent mode for use by several
+ * sessions at once. Entities are then kept in a concurrent skip list ordered
+ * by ID: reads never lock, and every write is serialized with other writes
+ * to the same ID through a striped lock, so add, update and delete are atomic
+ * per key together with the secondary index maintenance they trigger.
+ * <p>
+ * The batch operations {@link #addAll}, {@link #updateAll} and
+ * {@link #deleteAll} store or remove the whole batch first and then bring the
+ * secondary indexes up to date in a single pass. In concurrent mode they fall
+ * back to the single-entity operations, so each entity is still written
+ * atomically but the batch as a whole is not.
+ * <p>
+ * Pages are always returned in ID order, using a sorted index on ID that
+ * is kept alongside the insertion-ordered one (or the skip list itself in
+ * concurrent mode), so fetching a page costs one page of work.
+ * <p>
+ * {@link Query queries} are planned by {@link #plan(Query)}, which looks at
+ * the primary key here and at secondary indexes in subclasses, and falls back
+ * to a full scan. Setting the system property {@code bto.explain} prints the
+ * chosen plan each time a query runs.
+ * <p>
+ * Every add, update and delete is also recorded in a {@link ChangeSet}, as
+ * are changes made directly on stored entities that report them through
+ * {@link #changeListener}. Savers {@link #takeChanges() take} the changes to
+ * write only what has changed since the last save. The same writes are
+ * reported as they happen to any registered {@link IRepositoryListener}.
+ * Writes made inside a {@link UnitOfWork} are recorded and reported only
+ * when the work commits.
+ *
+ * @param <T> The entity type this repository manages
+ */
+public abstract class InMemoryRepository<T> implements IRepository<T> {
+    /** Number of lock stripes used to serialize writes in concurrent mode */
+    private static final int LOCK_STRIPES = 64;
+    /** Whether to print the plan of every query that runs */
+    private static final boolean EXPLAIN = Boolean.getBoolean("bto.explain");
+
+    /** Whether this repository is safe for use by several threads */
+    private final boolean concurrent;
+    /** Index of entities keyed on their ID */
+    private final Map<String, T> items;
+    /** Entities sorted by ID, used for keyset pagination */
+    private final NavigableMap<String, T> sorted;
+    /** Read-only live view of the stored entities */
+    private final Collection<T> view;
+    /** Write locks striped by ID hash, or null when not in concurrent mode */
+    private final Object[] locks;
+    /** Guards {@link #changes} */
+    private final Object changeLock = new Object();
+    /** Entities added, changed and deleted since the changes were last taken */
+    private ChangeSet<T> changes = new ChangeSet<>();
+    /** Records changes reported by stored entities; subclasses attach it in {@link #index} */
+    protected final IChangeListener<T> changeListener = this::markChanged;
+    /** Listeners notified of every write */
+    private final List<IRepositoryListener<T>> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Creates an empty repository for single-threaded use.
+     */
+    protected InMemoryRepository() {
+        this(false);
+    }
+
+    /**
+     * Creates an empty repository.
+     *
+     * @param concurrent true to make the repository safe for concurrent use
+     */
+    protected InMemoryRepository(boolean concurrent) {
+        this.concurrent = concurrent;
+        this.items = newIndexMap();
+        this.view = Collections.unmodifiableCollection(items.values());
+        this.sorted = concurrent ? (NavigableMap<String, T>) items : new TreeMap<>();
+        if (concurrent) {
+            locks = new Object[LOCK_STRIPES];
+            for (int i = 0; i < LOCK_STRIPES; i++) {
+                locks[i] = new Object();
+            }
+        } else {
+            locks = null;
+        }
+    }
+
+    /**
+     * Extracts the ID used as the primary key of an entity.
+     *
+     * @param item The entity
+     * @return The entity's ID
+     */
+    protected abstract String idOf(T item);
+
+    /**
+     * Checks whether this repository was created in concurrent mode.
+     *
+     * @return true if the repository is safe for concurrent use
+     */
+    public boolean isConcurrent() {
+        return concurrent;
+    }
+
+    /**
+     * Retrieves an entity by its ID.
+     *
+     * @param id The ID of the entity to retrieve
+     * @return The entity with the specified ID, or null if not found
+     */
+    @Override
+    public T getById(String id) {
+        if (id == null) {
+            return null;
+        }
+        return items.get(id);
+    }
+
+    /**
+     * Retrieves all entities in insertion order, or in ID order in
+     * concurrent mode.
+     *
+     * @return A list containing all entities
+     */
+    @Override
+    public List<T> getAll() {
+        return new ArrayList<>(items.values());
+    }
+
+    /**
+     * Gets a read-only live view of all entities in insertion order, or in
+     * ID order in concurrent mode.
+     *
+     * @return An unmodifiable view of all entities
+     */
+    @Override
+    public Collection<T> viewAll() {
+        return view;
+    }
+
+    /**
+     * Retrieves one page of the entities that match a filter, in ID order.
+     *
+     * @param cursor The cursor returned with the previous page, or null for the first page
+     * @param pageSize The maximum number of entities to return
+     * @param filter The condition entities must meet to be included
+     * @return The page of matching entities following the cursor
+     */
+    @Override
+    public Page<T> getPage(String cursor, int pageSize, Predicate<? super T> filter) {
+        return page(sorted, cursor, pageSize, filter);
+    }
+
+    /**
+     * Finds the entities that match a query, reading them through the plan
+     * chosen by {@link #plan(Query)}.
+     *
+     * @param query The query to run
+     * @return A list of matching entities
+     */
+    @Override
+    public List<T> find(Query<T> query) {
+        QueryPlan<T> plan = planAndExplain(query);
+        List<T> results = new ArrayList<>();
+        for (Map<String, T> source : plan.getSources()) {
+            for (T item : source.values()) {
+                if (query.test(item)) {
+                    results.add(item);
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Retrieves one page of the entities that match a query, in ID order.
+     * Sorted index buckets are read from the cursor onwards and only until
+     * the page is full; other buckets are read in full.
+     *
+     * @param query The query to run
+     * @param cursor The cursor returned with the previous page, or null for the first page
+     * @param pageSize The maximum number of entities to return
+     * @return The page of matching entities following the cursor
+     */
+    @Override
+    public Page<T> findPage(Query<T> query, String cursor, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive");
+        }
+        QueryPlan<T> plan = planAndExplain(query);
+        // Keep the first pageSize + 1 matches across all buckets, in ID order
+        TreeMap<String, T> merged = new TreeMap<>();
+        for (Map<String, T> source : plan.getSources()) {
+            boolean sortedSource = source instanceof NavigableMap;
+            Map<String, T> remaining = source;
+            if (sortedSource && cursor != null) {
+                remaining = ((NavigableMap<String, T>) source).tailMap(cursor, false);
+            }
+            for (Map.Entry<String, T> entry : remaining.entrySet()) {
+                String id = entry.getKey();
+                if (cursor != null && !sortedSource && id.compareTo(cursor) <= 0) {
+                    continue;
+                }
+                if (merged.size() > pageSize && id.compareTo(merged.lastKey()) > 0) {
+                    if (sortedSource) {
+                        break; // The rest of this bucket sorts after a full page
+                    }
+                    continue;
+                }
+                if (query.test(entry.getValue())) {
+                    merged.put(id, entry.getValue());
+                    if (merged.size() > pageSize + 1) {
+                        merged.pollLastEntry();
+                    }
+                }
+            }
+        }
+        String nextCursor = null;
+        if (merged.size() > pageSize) {
+            merged.pollLastEntry();
+            nextCursor = merged.lastKey();
+        }
+        return new Page<>(new ArrayList<>(merged.values()), nextCursor);
+    }
+
+    /**
+     * Describes the plan that would be chosen for a query.
+     *
+     * @param query The query to explain
+     * @return A description of the access path
+     */
+    @Override
+    public String explain(Query<T> query) {
+        return describe(query, plan(query));
+    }
+
+    /**
+     * Chooses how to run a query. The base implementation uses
+     * {@link #primaryPlan(Query)}. Subclasses offer their secondary indexes
+     * and keep the cheaper plan.
+     *
+     * @param query The query to plan
+     * @return The chosen plan
+     */
+    protected QueryPlan<T> plan(Query<T> query) {
+        return primaryPlan(query);
+    }
+
+    /**
+     * Plans a query using the primary key alone: reads by primary key when
+     * the query constrains the ID field, and scans otherwise.
+     *
+     * @param query The query to plan
+     * @return The chosen plan
+     */
+    protected final QueryPlan<T> primaryPlan(Query<T> query) {
+        QueryPlan<T> best = QueryPlan.scan(getClass().getSimpleName(), sorted);
+        Query.Field<T, String> idField = idField();
+        if (idField == null) {
+            return best;
+        }
+        Set<Object> ids = query.valuesFor(idField);
+        if (ids != null) {
+            Map<String, T> found = new TreeMap<>();
+            for (Object id : ids) {
+                T item = id instanceof String ? items.get(id) : null;
+                if (item != null) {
+                    found.put((String) id, item);
+                }
+            }
+            return QueryPlan.index("PRIMARY", idField + " = " + ids, Collections.singletonList(found));
+        }
+        if (query.hasRange(idField)) {
+            String low = (String) query.lowerBound(idField);
+            String high = (String) query.upperBound(idField);
+            NavigableMap<String, T> range = sorted;
+            if (low != null) {
+                range = range.tailMap(low, true);
+            }
+            if (high != null) {
+                range = range.headMap(high, true);
+            }
+            best = QueryPlan.index("PRIMARY", idField + " BETWEEN " + low + " AND " + high,
+                    Collections.singletonList(range));
+        }
+        return best;
+    }
+
+    /**
+     * Plans a query and prints the plan if explain output is enabled.
+     *
+     * @param query The query to plan
+     * @return The chosen plan
+     */
+    private QueryPlan<T> planAndExplain(Query<T> query) {
+        QueryPlan<T> plan = plan(query);
+        if (EXPLAIN) {
+            System.out.println("EXPLAIN " + describe(query, plan));
+        }
+        return plan;
+    }
+
+    /**
+     * Formats a query together with its plan for explain output.
+     *
+     * @param query The query
+     * @param plan The plan chosen for it
+     * @return The explain line
+     */
+    private String describe(Query<T> query, QueryPlan<T> plan) {
+        return "[" + getClass().getSimpleName() + "] WHERE " + query + ": " + plan;
+    }
+
+    /**
+     * Gets the query field for the ID of an entity, so that queries on it
+     * can use the primary key.
+     *
+     * @return The ID field, or null if the repository does not publish one
+     */
+    protected Query.Field<T, String> idField() {
+        return null;
+    }
+
+    /**
+     * Builds an index plan from the buckets of a secondary index that match
+     * the accepted values of a query field.
+     *
+     * @param <K> The index key type
+     * @param name Name of the index
+     * @param field The indexed field
+     * @param values The values accepted by the query for that field
+     * @param index The secondary index
+     * @return A plan reading the matching buckets
+     */
+    protected <K> QueryPlan<T> indexPlan(String name, Query.Field<T, ?> field, Set<Object> values,
+            Map<K, ? extends Map<String, T>> index) {
+        List<Map<String, T>> buckets = new ArrayList<>();
+        for (Object value : values) {
+            Map<String, T> bucket = index.get(value);
+            if (bucket != null) {
+                buckets.add(bucket);
+            }
+        }
+        return QueryPlan.index(name, field + " IN " + values, buckets);
+    }
+
+    /**
+     * Adds an entity to the repository.
+     * An entity with the same ID is replaced in place, unless
+     * {@link #replacesOnAdd()} says otherwise.
+     *
+     * @param item The entity to add
+     */
+    @Override
+    public void add(T item) {
+        if (!replacesOnAdd()) {
+            addIfAbsent(item);
+            return;
+        }
+        String id = idOf(item);
+        locked(id, () -> {
+            T previous = items.put(id, item);
+            putSorted(id, item);
+            if (previous != null) {
+                unindex(previous);
+            }
+            index(item);
+            if (previous != null) {
+                recordUpdate(id, item, previous);
+            } else {
+                recordAdd(id, item);
+            }
+        });
+    }
+
+    /**
+     * Adds a batch of entities, with the same duplicate handling as
+     * {@link #add(Object)}. Within the batch, a later entity with the same ID
+     * replaces an earlier one only if the repository replaces on add.
+     *
+     * @param batch The entities to add
+     */
+    @Override
+    public void addAll(Collection<? extends T> batch) {
+        if (concurrent) {
+            for (T item : batch) {
+                add(item);
+            }
+            return;
+        }
+        boolean replace = replacesOnAdd();
+        Map<String, T> added = new LinkedHashMap<>();
+        for (T item : batch) {
+            String id = idOf(item);
+            T previous = items.get(id);
+            if (previous != null && !replace) {
+                continue;
+            }
+            items.put(id, item);
+            if (previous != null && !added.containsKey(id)) {
+                unindex(previous);
+            }
+            added.put(id, item);
+            if (previous != null) {
+                recordUpdate(id, item, previous);
+            } else {
+                recordAdd(id, item);
+            }
+        }
+        sorted.putAll(added);
+        for (T item : added.values()) {
+            index(item);
+        }
+    }
+
+    /**
+     * Checks whether {@link #add(Object)} replaces an entity that has the
+     * same ID. Repositories that must keep the first entity stored for an ID
+     * override this to return false.
+     *
+     * @return true if adding replaces an existing entity
+     */
+    protected boolean replacesOnAdd() {
+        return true;
+    }
+
+    /**
+     * Adds an entity only if no entity with the same ID is stored yet.
+     *
+     * @param item The entity to add
+     * @return true if the entity was added, false if the ID was already taken
+     */
+    protected boolean addIfAbsent(T item) {
+        String id = idOf(item);
+        boolean[] added = new boolean[1];
+        locked(id, () -> {
+            if (items.get(id) == null) {
+                items.put(id, item);
+                putSorted(id, item);
+                index(item);
+                recordAdd(id, item);
+                added[0] = true;
+            }
+        });
+        return added[0];
+    }
+
+    /**
+     * Replaces the stored entity that has the same ID as the given one.
+     * Does nothing if no such entity exists.
+     *
+     * @param item The entity with updated information
+     */
+    @Override
+    public void update(T item) {
+        String id = idOf(item);
+        locked(id, () -> {
+            T previous = items.get(id);
+            if (previous == null) {
+                return;
+            }
+            items.put(id, item);
+            putSorted(id, item);
+            unindex(previous);
+            index(item);
+            recordUpdate(id, item, previous);
+        });
+    }
+
+    /**
+     * Replaces a batch of stored entities that have the same IDs as the
+     * given ones. Entities that are not stored are ignored.
+     *
+     * @param batch The entities with updated information
+     */
+    @Override
+    public void updateAll(Collection<? extends T> batch) {
+        if (concurrent) {
+            for (T item : batch) {
+                update(item);
+            }
+            return;
+        }
+        Map<String, T> updated = new LinkedHashMap<>();
+        Map<String, T> previous = new HashMap<>();
+        for (T item : batch) {
+            String id = idOf(item);
+            T stored = items.get(id);
+            if (stored != null) {
+                updated.put(id, item);
+                previous.putIfAbsent(id, stored);
+            }
+        }
+        items.putAll(updated);
+        sorted.putAll(updated);
+        for (T stored : previous.values()) {
+            unindex(stored);
+        }
+        for (T item : updated.values()) {
+            index(item);
+        }
+        for (Map.Entry<String, T> entry : updated.entrySet()) {
+            recordUpdate(entry.getKey(), entry.getValue(), previous.get(entry.getKey()));
+        }
+    }
+
+    /**
+     * Deletes the entity with the specified ID.
+     *
+     * @param id The ID of the entity to delete
+     */
+    @Override
+    public void delete(String id) {
+        if (id == null) {
+            return;
+        }
+        locked(id, () -> {
+            T removed = items.remove(id);
+            if (!concurrent) {
+                sorted.remove(id);
+            }
+            if (removed != null) {
+                unindex(removed);
+                recordDelete(id, removed);
+            }
+        });
+    }
+
+    /**
+     * Deletes the entities with the specified IDs.
+     *
+     * @param ids The IDs of the entities to delete
+     */
+    @Override
+    public void deleteAll(Collection<String> ids) {
+        if (concurrent) {
+            for (String id : ids) {
+                delete(id);
+            }
+            return;
+        }
+        for (String id : ids) {
+            if (id == null) {
+                continue;
+            }
+            T removed = items.remove(id);
+            sorted.remove(id);
+            if (removed != null) {
+                unindex(removed);
+                recordDelete(id, removed);
+            }
+        }
+    }
+
+    /**
+     * Stores an entity that was read back from storage, without recording
+     * it as a change or reporting it to listeners. An entity already stored
+     * under the same ID is kept.
+     *
+     * @param item The entity read from storage
+     * @return The entity now stored under its ID
+     */
+    protected T putLoaded(T item) {
+        String id = idOf(item);
+        @SuppressWarnings("unchecked")
+        T[] stored = (T[]) new Object[1];
+        locked(id, () -> {
+            stored[0] = items.get(id);
+            if (stored[0] == null) {
+                items.put(id, item);
+                putSorted(id, item);
+                index(item);
+                stored[0] = item;
+            }
+        });
+        return stored[0];
+    }
+
+    /**
+     * Drops an entity from memory without recording a delete, so that it
+     * can be read back from storage later. Nothing happens if another
+     * entity has since been stored under the same ID.
+     *
+     * @param id The ID of the entity
+     * @param item The entity to drop
+     * @return true if the entity was dropped
+     */
+    protected boolean evictLoaded(String id, T item) {
+        boolean[] evicted = new boolean[1];
+        locked(id, () -> {
+            if (items.get(id) == item) {
+                items.remove(id);
+                if (!concurrent) {
+                    sorted.remove(id);
+                }
+                unindex(item);
+                evicted[0] = true;
+            }
+        });
+        return evicted[0];
+    }
+
+    /**
+     * Gets the number of entities stored in the repository.
+     *
+     * @return The number of entities
+     */
+    public int size() {
+        return items.size();
+    }
+
+    /**
+     * Checks whether anything has changed since the changes were last taken.
+     *
+     * @return true if an entity was added, changed or deleted
+     */
+    public boolean hasChanges() {
+        synchronized (changeLock) {
+            return !changes.isEmpty();
+        }
+    }
+
+    /**
+     * Takes the changes recorded since the last call and starts recording
+     * afresh. A saver that fails to write the changes should hand them back
+     * through {@link #restoreChanges(ChangeSet)}.
+     *
+     * @return The changes since the last call
+     */
+    public ChangeSet<T> takeChanges() {
+        synchronized (changeLock) {
+            ChangeSet<T> taken = changes;
+            changes = new ChangeSet<>();
+            return taken;
+        }
+    }
+
+    /**
+     * Puts back changes that were taken but could not be saved, keeping any
+     * changes recorded since then on top of them.
+     *
+     * @param unsaved The changes to put back
+     */
+    public void restoreChanges(ChangeSet<T> unsaved) {
+        synchronized (changeLock) {
+            unsaved.merge(changes);
+            changes = unsaved;
+        }
+    }
+
+    /**
+     * Registers a listener to be notified of every later write.
+     *
+     * @param listener The listener to add
+     */
+    public void addListener(IRepositoryListener<T> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Stops notifying a listener of writes.
+     *
+     * @param listener The listener to remove
+     */
+    public void removeListener(IRepositoryListener<T> listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Records that a stored entity was changed directly. Changes reported by
+     * entities that are no longer stored are ignored. The change is recorded
+     * under the lock for the entity's ID, so listeners see the changes to an
+     * entity in the order they were made.
+     *
+     * @param item The entity that changed
+     */
+    protected void markChanged(T item) {
+        String id = idOf(item);
+        if (id == null) {
+            return;
+        }
+        locked(id, () -> {
+            if (items.get(id) == item) {
+                recordUpdate(id, item, item);
+            }
+        });
+    }
+
+    /**
+     * Records the writes of a committed {@link UnitOfWork} and reports them
+     * to the listeners, deletes first.
+     *
+     * @param committed The writes made to this repository by the work
+     */
+    void publish(ChangeSet<T> committed) {
+        synchronized (changeLock) {
+            changes.merge(committed);
+        }
+        for (Map.Entry<String, T> entry : committed.getDeleted().entrySet()) {
+            for (IRepositoryListener<T> listener : listeners) {
+                listener.onDelete(entry.getKey(), entry.getValue());
+            }
+        }
+        for (Map<String, T> puts : Arrays.asList(committed.getAdded(), committed.getUpdated())) {
+            for (Map.Entry<String, T> entry : puts.entrySet()) {
+                for (IRepositoryListener<T> listener : listeners) {
+                    listener.onPut(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * Puts back what was stored under an ID before a {@link UnitOfWork} that
+     * is being rolled back wrote to it. The restored entity is recorded and
+     * reported as changed, since another thread may have persisted the
+     * work's changes to a shared entity before the rollback.
+     *
+     * @param id The ID
+     * @param previous The entity stored before, or null if there was none
+     */
+    void restore(String id, T previous) {
+        locked(id, () -> {
+            T current = items.get(id);
+            if (current == previous) {
+                return;
+            }
+            if (previous == null) {
+                items.remove(id);
+                if (!concurrent) {
+                    sorted.remove(id);
+                }
+                unindex(current);
+                recordDelete(id, current);
+                return;
+            }
+            // Replaced the way update() replaces, so indexes see the ID stay stored
+            items.put(id, previous);
+            putSorted(id, previous);
+            if (current != null) {
+                unindex(current);
+            }
+            index(previous);
+            if (current == null) {
+                recordAdd(id, previous);
+            } else {
+                recordUpdate(id, previous, current);
+            }
+        });
+    }
+
+    private void recordAdd(String id, T item) {
+        UnitOfWork.remember(this, id, null);
+        ChangeSet<T> pending = UnitOfWork.pendingChanges(this);
+        if (pending != null) {
+            pending.recordAdd(id, item);
+            return;
+        }
+        synchronized (changeLock) {
+            changes.recordAdd(id, item);
+        }
+        for (IRepositoryListener<T> listener : listeners) {
+            listener.onPut(id, item);
+        }
+    }
+
+    private void recordUpdate(String id, T item, T previous) {
+        if (previous != item) {
+            UnitOfWork.remember(this, id, previous);
+        }
+        ChangeSet<T> pending = UnitOfWork.pendingChanges(this);
+        if (pending != null) {
+            pending.recordUpdate(id, item);
+            return;
+        }
+        synchronized (changeLock) {
+            changes.recordUpdate(id, item);
+        }
+        for (IRepositoryListener<T> listener : listeners) {
+            listener.onPut(id, item);
+        }
+    }
+
+    private void recordDelete(String id, T item) {
+        UnitOfWork.remember(this, id, item);
+        ChangeSet<T> pending = UnitOfWork.pendingChanges(this);
+        if (pending != null) {
+            pending.recordDelete(id, item);
+            return;
+        }
+        synchronized (changeLock) {
+            changes.recordDelete(id, item);
+        }
+        for (IRepositoryListener<T> listener : listeners) {
+            listener.onDelete(id, item);
+        }
+    }
+
+    /**
+     * Keeps the sorted ID index in step with the primary index. In concurrent
+     * mode the primary index is already sorted.
+     *
+     * @param id The ID of the entity
+     * @param item The stored entity
+     */
+    private void putSorted(String id, T item) {
+        if (!concurrent) {
+            sorted.put(id, item);
+        }
+    }
+
+    /**
+     * Collects one page of matching entities from an index sorted by ID,
+     * stopping as soon as the page is full.
+     *
+     * @param <V> The entity type
+     * @param index The index to page through
+     * @param cursor The ID to resume after, or null to start from the beginning
+     * @param pageSize The maximum number of entities to return
+     * @param filter The condition entities must meet to be included
+     * @return The page of matching entities
+     */
+    protected static <V> Page<V> page(NavigableMap<String, V> index, String cursor, int pageSize,
+            Predicate<? super V> filter) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive");
+        }
+        NavigableMap<String, V> remaining = cursor == null ? index : index.tailMap(cursor, false);
+        List<V> items = new ArrayList<>(pageSize);
+        String lastId = null;
+        for (Map.Entry<String, V> entry : remaining.entrySet()) {
+            if (!filter.test(entry.getValue())) {
+                continue;
+            }
+            if (items.size() == pageSize) {
+                return new Page<>(items, lastId);
+            }
+            items.add(entry.getValue());
+            lastId = entry.getKey();
+        }
+        return new Page<>(items, null);
+    }
+
+    /**
+     * Runs a write action for one ID. In concurrent mode the action holds
+     * the lock stripe for that ID, so it is atomic with respect to other
+     * writes to the same entity.
+     *
+     * @param id The ID of the entity being written
+     * @param action The write to perform
+     */
+    protected void locked(String id, Runnable action) {
+        if (locks == null) {
+            action.run();
+            return;
+        }
+        synchronized (locks[(id.hashCode() & 0x7fffffff) % LOCK_STRIPES]) {
+            action.run();
+        }
+    }
+
+    /**
+     * Creates a map suitable for a secondary index of this repository:
+     * insertion-ordered normally, or a concurrent map ordered by key in
+     * concurrent mode.
+     *
+     * @param <K> The key type, which must be comparable in concurrent mode
+     * @param <V> The value type
+     * @return A new empty map
+     */
+    protected <K, V> Map<K, V> newIndexMap() {
+        if (concurrent) {
+            return new ConcurrentSkipListMap<>();
+        }
+        return new LinkedHashMap<>();
+    }
+
+    /**
+     * Creates a sorted map, suitable for a secondary index bucket that has
+     * to be paged through or read in order.
+     *
+     * @param <K> The key type
+     * @param <V> The value type
+     * @return A new empty sorted map
+     */
+    protected <K, V> NavigableMap<K, V> newSortedIndexMap() {
+        if (concurrent) {
+            return new ConcurrentSkipListMap<>();
+        }
+        return new TreeMap<>();
+    }
+
+    /**
+     * Removes an empty bucket from a secondary index. Buckets are left in
+     * place in concurrent mode, where another writer may be adding to them.
+     *
+     * @param <K> The key type of the index
+     * @param index The secondary index
+     * @param key The key of the bucket
+     * @param bucket The bucket to remove if empty
+     */
+    protected <K> void pruneIfEmpty(Map<K, ?> index, K key, Map<?, ?> bucket) {
+        if (!concurrent && bucket.isEmpty()) {
+            index.remove(key);
+        }
+    }
+
+    /**
+     * Called after an entity has been stored so that subclasses can
+     * maintain their secondary indexes.
+     *
+     * @param item The stored entity
+     */
+    protected void index(T item) {
+        // No secondary indexes by default
+    }
+
+    /**
+     * Called after an entity has been removed or replaced so that subclasses
+     * can drop it from their secondary indexes. When it has been replaced,
+     * the new entity is already stored under its ID.
+     *
+     * @param item The removed entity
+     */
+    protected void unindex(T item) {
+        // No secondary indexes by default
+    }
+}
@@ -0,0 +1,413 @@
+package sc2002.bto.repository;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+import sc2002.bto.entity.User;
+import sc2002.bto.util.CsvOffsetIndex;
+import sc2002.bto.util.CsvRecord;
+
+/**
+ * User repository that keeps only an index of the user files in memory and
+ * reads each user from disk the first time it is asked for by ID.
+ * <p>
+ * {@link #open} scans the user files once for the NRIC and byte offset of
+ * every row. {@link #getById(String)} then reads and parses the row of a
+ * user that is not in memory yet. Users read this way are held in a cache
+ * of bounded size, and the least recently used one is dropped from memory
+ * when the cache is full.
+ * <p>
+ * A user stays in memory for good once it has been added or changed, or
+ * once other data refers to it through {@link #retain(User)}, so that a
+ * user with unsaved changes or with references held elsewhere is never read
+ * a second time as a different object. Only users that are in memory appear
+ * in {@link #viewAll()}, {@link #getApplicants()} and the other views,
+ * pages and queries; the counts and {@link #size()} include every indexed
+ * user.
+ */
+public class LazyUserRepository extends UserRepository {
+    /** Largest number of users read on demand that are kept in memory */
+    private final int maxCached;
+    /** Users read on demand that may be dropped again, least recently used first */
+    private final Map<String, User> cache;
+    /** Whether a user is being dropped from the cache */
+    private boolean evicting;
+    /** IDs deleted since the files were indexed, whose rows must not be read again */
+    private final Set<String> deleted = new HashSet<>();
+    /** Index of the applicant, manager and officer files, or null until {@link #open} is called */
+    private CsvOffsetIndex index;
+    /** Builds a user from a row of one of the user files */
+    private BiFunction<File, CsvRecord, User> parser;
+
+    /**
+     * Creates an empty repository that is not backed by any files yet.
+     *
+     * @param concurrent true to make the repository safe for concurrent use
+     * @param maxCached The largest number of users read on demand to keep in memory
+     * @throws IllegalArgumentException If the cache size is not positive
+     */
+    public LazyUserRepository(boolean concurrent, int maxCached) {
+        super(concurrent);
+        if (maxCached <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive");
+        }
+        this.maxCached = maxCached;
+        this.cache = new LinkedHashMap<String, User>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, User> eldest) {
+                if (size() <= LazyUserRepository.this.maxCached) {
+                    return false;
+                }
+                evicting = true;
+                try {
+                    evictLoaded(eldest.getKey(), eldest.getValue());
+                } finally {
+                    evicting = false;
+                }
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Indexes the user files, after which users are read from them on
+     * demand. An NRIC found in more than one file belongs to the last of
+     * them, in the order applicants, managers, officers.
+     *
+     * @param applicantFile The applicant file
+     * @param managerFile The manager file
+     * @param officerFile The officer file
+     * @param parser Builds a user from a row of the given file, returning
+     *               null for a row that does not hold a valid user
+     * @throws IOException If a file cannot be read
+     */
+    public synchronized void open(File applicantFile, File managerFile, File officerFile,
+            BiFunction<File, CsvRecord, User> parser) throws IOException {
+        this.index = new CsvOffsetIndex(applicantFile, managerFile, officerFile);
+        this.parser = parser;
+    }
+
+    /**
+     * Gets the IDs of the users in one of the indexed files.
+     *
+     * @param file The user file
+     * @return The NRICs of the users in the file, in file order
+     * @throws IOException If the file cannot be scanned
+     */
+    public synchronized Set<String> getIndexedIds(File file) throws IOException {
+        Set<String> ids = index.getIds(file);
+        ids.removeAll(deleted);
+        return ids;
+    }
+
+    /**
+     * Retrieves a user by NRIC, reading it from the user files if it is not
+     * in memory.
+     *
+     * @param id The NRIC of the user
+     * @return The user, or null if there is no such user
+     */
+    @Override
+    public User getById(String id) {
+        User user = super.getById(id);
+        if (user != null) {
+            touch(id);
+            return user;
+        }
+        return id == null ? null : load(id);
+    }
+
+    /**
+     * Keeps a user in memory for good. Called when other data starts
+     * referring to the user object. A user that was dropped from the cache
+     * while still held elsewhere, for example by a logged-in session, is put
+     * back unless the user has since been read again or deleted.
+     *
+     * @param user The user
+     */
+    public synchronized void retain(User user) {
+        String id = user.getId();
+        cache.remove(id);
+        if (super.getById(id) == null && !deleted.contains(id)) {
+            putLoaded(user);
+        }
+    }
+
+    /**
+     * Gets the number of users read on demand that may still be dropped
+     * from memory.
+     *
+     * @return The size of the cache
+     */
+    public synchronized int getCachedCount() {
+        return cache.size();
+    }
+
+    /**
+     * Adds a user, which stays in memory for good.
+     *
+     * @param item The user to add
+     */
+    @Override
+    public void add(User item) {
+        forgetLoaded(item.getId());
+        super.add(item);
+    }
+
+    /**
+     * Adds a batch of users, which stay in memory for good.
+     *
+     * @param batch The users to add
+     */
+    @Override
+    public void addAll(Collection<? extends User> batch) {
+        for (User item : batch) {
+            forgetLoaded(item.getId());
+        }
+        super.addAll(batch);
+    }
+
+    /**
+     * Replaces a user, reading the stored one first if it is not in memory.
+     * The new user stays in memory for good.
+     *
+     * @param item The user with updated information
+     */
+    @Override
+    public void update(User item) {
+        getById(item.getId());
+        synchronized (this) {
+            cache.remove(item.getId());
+        }
+        super.update(item);
+    }
+
+    /**
+     * Replaces a batch of users, as {@link #update(User)} does for each.
+     *
+     * @param batch The users with updated information
+     */
+    @Override
+    public void updateAll(Collection<? extends User> batch) {
+        for (User item : batch) {
+            getById(item.getId());
+            synchronized (this) {
+                cache.remove(item.getId());
+            }
+        }
+        super.updateAll(batch);
+    }
+
+    /**
+     * Deletes a user, reading it first so the delete is recorded and its
+     * row is dropped on the next save.
+     *
+     * @param id The NRIC of the user to delete
+     */
+    @Override
+    public void delete(String id) {
+        if (id == null) {
+            return;
+        }
+        getById(id);
+        synchronized (this) {
+            cache.remove(id);
+            deleted.add(id);
+        }
+        super.delete(id);
+    }
+
+    /**
+     * Deletes the users with the specified NRICs.
+     *
+     * @param ids The NRICs of the users to delete
+     */
+    @Override
+    public void deleteAll(Collection<String> ids) {
+        for (String id : ids) {
+            delete(id);
+        }
+    }
+
+    /**
+     * Removes a user from the partition for their role. A user dropped from
+     * the cache keeps reporting changes, so that a change made through a
+     * reference held elsewhere puts it back in memory.
+     *
+     * @param item The removed user
+     */
+    @Override
+    protected void unindex(User item) {
+        super.unindex(item);
+        if (evicting) {
+            item.setChangeListener(changeListener);
+        }
+    }
+
+    /**
+     * Puts back a user a rolled back unit of work had replaced or deleted,
+     * which stays in memory for good.
+     *
+     * @param id The NRIC of the user
+     * @param previous The user stored before, or null if there was none
+     */
+    @Override
+    void restore(String id, User previous) {
+        if (previous != null) {
+            forgetLoaded(id);
+        }
+        super.restore(id, previous);
+    }
+
+    /**
+     * Keeps a user that has changed in memory for good, then records the
+     * change.
+     *
+     * @param item The user that changed
+     */
+    @Override
+    protected void markChanged(User item) {
+        retain(item);
+        super.markChanged(item);
+    }
+
+    /**
+     * Gets the number of users, including those not read yet.
+     *
+     * @return The number of users
+     */
+    @Override
+    public int size() {
+        return countIndexed(null, super.size(), getAll());
+    }
+
+    /**
+     * Gets the number of applicants, including those not read yet.
+     *
+     * @return The number of applicants
+     */
+    @Override
+    public int getApplicantCount() {
+        return countIndexed(0, super.getApplicantCount(), getApplicants());
+    }
+
+    /**
+     * Gets the number of HDB managers, including those not read yet.
+     *
+     * @return The number of managers
+     */
+    @Override
+    public int getManagerCount() {
+        return countIndexed(1, super.getManagerCount(), getManagers());
+    }
+
+    /**
+     * Gets the number of HDB officers, including those not read yet.
+     *
+     * @return The number of officers
+     */
+    @Override
+    public int getOfficerCount() {
+        return countIndexed(2, super.getOfficerCount(), getOfficers());
+    }
+
+    /**
+     * Reads a user from the files and caches it.
+     */
+    private synchronized User load(String id) {
+        User user = super.getById(id);
+        if (user != null || index == null || deleted.contains(id)) {
+            return user;
+        }
+        try {
+            File file = index.locate(id);
+            CsvRecord row = file == null ? null : index.read(file, id);
+            user = row == null ? null : parser.apply(file, row);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Error reading user " + id + ": " + e.getMessage());
+            return null;
+        }
+        if (user == null || !id.equals(user.getId())) {
+            return null;
+        }
+        User stored = putLoaded(user);
+        if (stored == user) {
+            cache.put(id, user);
+        }
+        return stored;
+    }
+
+    /**
+     * Marks a cached user as recently used.
+     */
+    private synchronized void touch(String id) {
+        cache.get(id);
+    }
+
+    /**
+     * Stops treating an ID as read on demand or deleted, because a user is
+     * being stored under it.
+     */
+    private synchronized void forgetLoaded(String id) {
+        cache.remove(id);
+        deleted.remove(id);
+    }
+
+    /**
+     * Counts the users of one file, or of all files, including those not
+     * read yet.
+     *
+     * @param fileNumber Position of the file among the applicant, manager
+     *                   and officer files, or null for all files
+     * @param inMemory The number of matching users in memory
+     * @param users The matching users in memory
+     * @return The number of matching users
+     */
+    private synchronized int countIndexed(Integer fileNumber, int inMemory, Collection<? extends User> users) {
+        if (index == null) {
+            return inMemory;
+        }
+        try {
+            // Start from the rows each file wins, then adjust for deleted users and users only in memory
+            int count = 0;
+            for (int i = 0; i < index.getFiles().size(); i++) {
+                if (fileNumber == null || fileNumber == i) {
+                    count += index.countOwned(index.getFiles().get(i));
+                }
+            }
+            for (String id : deleted) {
+                if (isIndexedIn(fileNumber, id)) {
+                    count--;
+                }
+            }
+            for (User user : users) {
+                if (!isIndexedIn(fileNumber, user.getId())) {
+                    count++;
+                }
+            }
+            return count;
+        } catch (IOException e) {
+            System.err.println("Error counting users: " + e.getMessage());
+            return inMemory;
+        }
+    }
+
+    /**
+     * Checks whether the row an ID is read from is in one file, or in any
+     * file.
+     *
+     * @param fileNumber Position of the file among the applicant, manager
+     *                   and officer files, or null for all files
+     * @param id The NRIC
+     * @return true if the ID is read from the file
+     */
+    private boolean isIndexedIn(Integer fileNumber, String id) throws IOException {
+        File file = index.locate(id);
+        return file != null && (fileNumber == null || file.equals(index.getFiles().get(fileNumber)));
+    }
+}
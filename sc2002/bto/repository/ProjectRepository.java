@@ -1,76 +1,90 @@
 package sc2002.bto.repository;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 import sc2002.bto.entity.Project;
-import sc2002.bto.interfaces.IRepository;
+import sc2002.bto.interfaces.Query;
 
 /**
  * Constructs a new Project Repository instance.
  * Initializes an empty collection to store items.
  */
-public class ProjectRepository implements IRepository<Project> {
-    /** In-memory storage of project records */
-    private List<Project> projects = new ArrayList<>();
+public class ProjectRepository extends InMemoryRepository<Project> {
+    /** Query field for the project ID */
+    public static final Query.Field<Project, String> ID = new Query.Field<>("projectID", Project::getProjectID);
+    /** Query field for the neighborhood */
+    public static final Query.Field<Project, String> NEIGHBORHOOD =
+            new Query.Field<>("neighborhood", Project::getNeighborhood);
+    /** Query field for the name of the manager in charge */
+    public static final Query.Field<Project, String> MANAGER_IN_CHARGE =
+            new Query.Field<>("managerInCharge", Project::getManagerInCharge);
     
     /**
-     * Retrieves a project by its ID.
+     * Creates an empty project repository for single-threaded use.
+     */
+    public ProjectRepository() {
+        super();
+    }
+    
+    /**
+     * Creates an empty project repository.
+     * 
+     * @param concurrent true to make the repository safe for concurrent use
+     */
+    public ProjectRepository(boolean concurrent) {
+        super(concurrent);
+    }
+    
+    /**
+     * Gets the ID of a project.
      * 
-     * @param id The ID of the project to retrieve
-     * @return The project with the specified ID, or null if not found
+     * @param item The project
+     * @return The project ID
      */
-    public Project getById(String id) {
-        return projects.stream()
-                .filter(p -> p.getProjectID().equals(id))
-                .findFirst()
-                .orElse(null);
+    @Override
+    protected String idOf(Project item) {
+        return item.getProjectID();
     }
     
     /**
-     * Retrieves all projects stored in the repository.
+     * Gets the query field for the project ID.
      * 
-     * @return A list containing all projects
+     * @return The ID field
      */
-    public List<Project> getAll() {
-        return new ArrayList<>(projects);
+    @Override
+    protected Query.Field<Project, String> idField() {
+        return ID;
     }
     
     /**
-     * Adds a new project to the repository if a project with the same ID doesn't already exist.
+     * Keeps the first project stored for an ID, so adding a project whose ID
+     * already exists has no effect.
      * 
-     * @param project The project to add
+     * @return false, as projects are never replaced on add
      */
     @Override
-    public void add(Project project) {
-        if (projects.stream().noneMatch(p -> p.getProjectID().equals(project.getProjectID()))) {
-            projects.add(project);
-        }
-    }    
+    protected boolean replacesOnAdd() {
+        return false;
+    }
     
     /**
-     * Updates an existing project in the repository.
+     * Starts listening for changes made directly on a stored project.
      * 
-     * @param item The project with updated information
+     * @param item The stored project
      */
     @Override
-    public void update(Project item) {
-        for (int i = 0; i < projects.size(); i++) {
-            if (projects.get(i).getProjectID().equals(item.getProjectID())) {
-                projects.set(i, item);
-                return;
-            }
-        }
+    protected void index(Project item) {
+        item.setChangeListener(changeListener);
     }
     
     /**
-     * Deletes a project with the specified ID.
+     * Stops listening for changes made on a removed project.
      * 
-     * @param id The ID of the project to delete
+     * @param item The removed project
      */
     @Override
-    public void delete(String id) {
-        projects.removeIf(p -> p.getProjectID().equals(id));
+    protected void unindex(Project item) {
+        item.setChangeListener(null);
     }
     
     /**
@@ -80,7 +94,7 @@ public class ProjectRepository implements IRepository<Project> {
      * @return A list of projects in the specified neighborhood
      */
     public List<Project> findByNeighborhood(String neighborhood) {
-        return projects.stream()
+        return stream()
                 .filter(p -> p.getNeighborhood().equalsIgnoreCase(neighborhood))
                 .collect(Collectors.toList());
     }
@@ -0,0 +1,171 @@
+package sc2002.bto.repository;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * The access path a repository chose for a
+ * {@link sc2002.bto.interfaces.Query}: either a scan of every entity or a
+ * lookup in one of its indexes. The plan holds the index buckets to read,
+ * each keyed by entity ID; the query is then applied as a filter to every
+ * entity in them.
+ *
+ * @param <T> The entity type
+ */
+public class QueryPlan<T> {
+    /** Human-readable description of the access path */
+    private final String description;
+    /** Buckets to read, each keyed by entity ID */
+    private final List<Map<String, T>> sources;
+    /** Whether this plan reads the whole repository */
+    private final boolean scan;
+
+    /**
+     * Constructs a new plan.
+     *
+     * @param description Description of the access path
+     * @param sources The buckets to read, each keyed by entity ID
+     * @param scan Whether the plan reads the whole repository
+     */
+    private QueryPlan(String description, List<Map<String, T>> sources, boolean scan) {
+        this.description = description;
+        this.sources = sources;
+        this.scan = scan;
+    }
+
+    /**
+     * Creates a plan that reads every entity.
+     *
+     * @param <T> The entity type
+     * @param table Name of the repository being scanned
+     * @param all All entities keyed by ID
+     * @return The scan plan
+     */
+    public static <T> QueryPlan<T> scan(String table, Map<String, T> all) {
+        return new QueryPlan<>("FULL SCAN " + table, Collections.singletonList(all), true);
+    }
+
+    /**
+     * Creates a plan that reads buckets of an index.
+     *
+     * @param <T> The entity type
+     * @param index Name of the index
+     * @param keys Description of the index keys being read
+     * @param buckets The index buckets matching those keys
+     * @return The index plan
+     */
+    public static <T> QueryPlan<T> index(String index, String keys, List<Map<String, T>> buckets) {
+        return new QueryPlan<>("INDEX " + index + " (" + keys + ")", buckets, false);
+    }
+
+    /**
+     * Picks whichever of two plans reads fewer entities, preferring the first
+     * on a tie. Either plan may be null.
+     * <p>
+     * Bucket sizes are not counted up front, since a concurrent skip list
+     * counts its entries one by one. Instead the entities of both plans are
+     * stepped through side by side until one plan runs out, so choosing
+     * costs no more than reading the cheaper plan.
+     *
+     * @param <T> The entity type
+     * @param a The first plan
+     * @param b The second plan
+     * @return The cheaper plan
+     */
+    public static <T> QueryPlan<T> cheaper(QueryPlan<T> a, QueryPlan<T> b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        Iterator<T> rowsOfA = a.rows();
+        Iterator<T> rowsOfB = b.rows();
+        while (rowsOfA.hasNext()) {
+            if (!rowsOfB.hasNext()) {
+                return b;
+            }
+            rowsOfA.next();
+            rowsOfB.next();
+        }
+        return a;
+    }
+
+    /**
+     * Gets the buckets this plan reads.
+     *
+     * @return The buckets, each keyed by entity ID
+     */
+    public List<Map<String, T>> getSources() {
+        return sources;
+    }
+
+    /**
+     * Gets the number of entities this plan will examine. This counts every
+     * candidate, so it is meant for describing a plan rather than for
+     * choosing one.
+     *
+     * @return The number of candidate entities
+     */
+    public int getEstimatedRows() {
+        int rows = 0;
+        for (Map<String, T> source : sources) {
+            rows += source.size();
+        }
+        return rows;
+    }
+
+    /**
+     * Steps through the candidate entities of every bucket in turn.
+     *
+     * @return An iterator over the candidates
+     */
+    private Iterator<T> rows() {
+        return new Iterator<T>() {
+            private int next;
+            private Iterator<T> current = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext() && next < sources.size()) {
+                    current = sources.get(next++).values().iterator();
+                }
+                return current.hasNext();
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+        };
+    }
+
+    /**
+     * Checks whether this plan reads the whole repository.
+     *
+     * @return true for a full scan
+     */
+    public boolean isScan() {
+        return scan;
+    }
+
+    /**
+     * Gets the description of the access path.
+     *
+     * @return The description
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    @Override
+    public String toString() {
+        return description + " -> " + getEstimatedRows() + " candidate row(s)";
+    }
+}
@@ -0,0 +1,92 @@
+package sc2002.bto.repository;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import sc2002.bto.entity.Application;
+import sc2002.bto.interfaces.Query;
+import sc2002.bto.util.SqlStore;
+
+/**
+ * Application repository whose queries on the applicant, project and status
+ * are answered by the indexed columns of the embedded database.
+ * <p>
+ * Entities are still held in memory, since applications refer to their
+ * applicant and project objects directly; the database only chooses which
+ * of them a query reads. A query made inside a {@link UnitOfWork}, whose
+ * writes reach the database only when it commits, or one the database
+ * cannot answer, is planned against the in-memory indexes instead.
+ */
+public class SqlApplicationRepository extends ApplicationRepository {
+    /** The database, or null until {@link #attach} is called */
+    private volatile SqlStore store;
+
+    /**
+     * Creates an empty repository that is not backed by a database yet.
+     *
+     * @param concurrent true to make the repository safe for concurrent use
+     */
+    public SqlApplicationRepository(boolean concurrent) {
+        super(concurrent);
+    }
+
+    /**
+     * Starts answering queries from a database that receives every write
+     * to this repository.
+     *
+     * @param store The database
+     */
+    public void attach(SqlStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Chooses how to run a query. A query on the applicant, project or
+     * status reads the applications the database finds for it, unless
+     * reading by primary key, or scanning, reads fewer.
+     *
+     * @param query The query to plan
+     * @return The chosen plan
+     */
+    @Override
+    protected QueryPlan<Application> plan(Query<Application> query) {
+        SqlStore database = store;
+        Set<Object> applicantIds = query.valuesFor(APPLICANT_ID);
+        Set<Object> projectIds = query.valuesFor(PROJECT_ID);
+        Set<Object> statuses = query.valuesFor(STATUS);
+        if (database == null || UnitOfWork.isActive()
+                || (applicantIds == null && projectIds == null && statuses == null)) {
+            return super.plan(query);
+        }
+        List<String> ids;
+        try {
+            ids = database.findApplicationIds(applicantIds, projectIds, statuses);
+        } catch (SQLException e) {
+            System.err.println("Error querying database, using in-memory indexes: " + e.getMessage());
+            return super.plan(query);
+        }
+        NavigableMap<String, Application> found = new TreeMap<>();
+        for (String id : ids) {
+            Application item = getById(id);
+            if (item != null) {
+                found.put(id, item);
+            }
+        }
+        List<String> keys = new ArrayList<>();
+        if (applicantIds != null) {
+            keys.add(APPLICANT_ID + " IN " + applicantIds);
+        }
+        if (projectIds != null) {
+            keys.add(PROJECT_ID + " IN " + projectIds);
+        }
+        if (statuses != null) {
+            keys.add(STATUS + " IN " + statuses);
+        }
+        return QueryPlan.cheaper(QueryPlan.index("SQL", String.join(", ", keys), Collections.singletonList(found)),
+                primaryPlan(query));
+    }
+}
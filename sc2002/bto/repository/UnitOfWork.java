@@ -0,0 +1,283 @@
+package sc2002.bto.repository;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A group of writes to one or more repositories that is made permanent or
+ * undone as a whole.
+ * <p>
+ * A unit of work belongs to the thread that begins it. While it is open,
+ * writes to any {@link InMemoryRepository} on that thread change the stored
+ * entities straight away, so the rest of the work sees them, but they are
+ * neither recorded for saving nor reported to listeners. {@link #commit()}
+ * records and reports them all together, each entity once, and persists them
+ * as one batch. In log mode the batch is written as one frame of the log, so
+ * after a crash either all of it is replayed or none of it is. Committing
+ * many bookings at once this way pays for one write to the disk instead of
+ * one per booking.
+ * <p>
+ * A unit of work that is closed without being committed is rolled back:
+ * entities added, replaced or deleted through a repository are put back as
+ * they were, and the actions registered through {@link #onRollback(Runnable)}
+ * undo the changes made to the entities themselves, which the repositories
+ * cannot undo. Everything is undone in the reverse order it was done. The
+ * restored entities are recorded and reported as changed, as writes outside
+ * a unit of work are, because entities are shared: a save on another thread
+ * may already have persisted the changes being undone.
+ * <p>
+ * Beginning a unit of work while another is open on the same thread nests
+ * it inside the other. Committing the inner one hands its writes to the
+ * outer one, which persists them when it commits; rolling it back undoes
+ * only the inner writes, so one failed booking does not undo the rest of a
+ * batch.
+ * <p>
+ * A unit of work does not hide its writes from other threads. Transitions
+ * that must not interleave with each other still hold the lock of their
+ * project while they run, and begin and finish their unit of work inside
+ * it, so a rollback never undoes a change another transition has since
+ * built on.
+ * <pre>
+ * try (UnitOfWork work = UnitOfWork.begin()) {
+ *     // Write to the repositories and entities
+ *     work.commit();
+ * }
+ * </pre>
+ */
+public final class UnitOfWork implements AutoCloseable {
+    /**
+     * Persists the writes of a committed unit of work.
+     */
+    public interface Committer {
+        /**
+         * Records the writes and reports them to the repository listeners,
+         * then persists them as one batch.
+         *
+         * @param publish Records and reports the writes
+         * @return true if the writes are persisted, false if they could not
+         *         be persisted yet
+         */
+        boolean commit(Runnable publish);
+    }
+
+    /** The innermost open unit of work of each thread */
+    private static final ThreadLocal<UnitOfWork> CURRENT = new ThreadLocal<>();
+    /** Persists committed writes; by default they are only recorded and reported */
+    private static volatile Committer committer = publish -> {
+        publish.run();
+        return true;
+    };
+
+    /** The unit of work this one is nested in, or null */
+    private final UnitOfWork parent;
+    /** Writes waiting for the commit, per repository, in order of first write */
+    private final Map<InMemoryRepository<?>, ChangeSet<?>> pending = new LinkedHashMap<>();
+    /** IDs whose entity has been remembered as it was before this work, per repository */
+    private final Map<InMemoryRepository<?>, Set<String>> remembered = new HashMap<>();
+    /** Actions that undo this work, in the order they were registered */
+    private final List<Runnable> undo = new ArrayList<>();
+    /** Whether the work is being rolled back */
+    private boolean rollingBack;
+    /** Whether the work has been committed or rolled back */
+    private boolean finished;
+
+    private UnitOfWork(UnitOfWork parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * Begins a unit of work on the current thread, nested in the one already
+     * open on the thread, if any.
+     *
+     * @return The new unit of work
+     */
+    public static UnitOfWork begin() {
+        UnitOfWork work = new UnitOfWork(CURRENT.get());
+        CURRENT.set(work);
+        return work;
+    }
+
+    /**
+     * Checks whether a unit of work is open on the current thread.
+     *
+     * @return true if writes on this thread are part of a unit of work
+     */
+    public static boolean isActive() {
+        return CURRENT.get() != null;
+    }
+
+    /**
+     * Registers an action that undoes a change made directly to an entity,
+     * for example to its status or inventory, if the open unit of work is
+     * rolled back. Does nothing if no unit of work is open on the thread.
+     *
+     * @param action The action restoring the entity as it was
+     */
+    public static void onRollback(Runnable action) {
+        UnitOfWork work = CURRENT.get();
+        if (work != null && !work.rollingBack) {
+            work.undo.add(action);
+        }
+    }
+
+    /**
+     * Sets how the writes of outermost units of work are persisted.
+     *
+     * @param committer The committer
+     */
+    public static void setCommitter(Committer committer) {
+        UnitOfWork.committer = committer;
+    }
+
+    /**
+     * Commits the work. A nested unit of work hands its writes to the one
+     * it is nested in; an outermost one records, reports and persists them.
+     * The writes are kept in memory even if they cannot be persisted yet.
+     *
+     * @return true if the writes are persisted, or handed on by a nested
+     *         unit of work; false if they could not be persisted yet
+     * @throws IllegalStateException If the work has finished, or a unit of
+     *         work nested in it is still open
+     */
+    public boolean commit() {
+        checkInnermost();
+        finished = true;
+        if (parent != null) {
+            for (Map.Entry<InMemoryRepository<?>, ChangeSet<?>> entry : pending.entrySet()) {
+                handOn(entry.getKey(), entry.getValue());
+            }
+            parent.undo.addAll(undo);
+            CURRENT.set(parent);
+            return true;
+        }
+        CURRENT.remove();
+        return pending.isEmpty() || committer.commit(this::publish);
+    }
+
+    /**
+     * Rolls the work back, undoing its writes in reverse order. The undoing
+     * writes are recorded and reported at once, or handed to the unit of
+     * work this one is nested in. Does nothing if the work has already
+     * finished.
+     *
+     * @throws IllegalStateException If a unit of work nested in this one is still open
+     */
+    public void rollback() {
+        if (finished) {
+            return;
+        }
+        checkInnermost();
+        rollingBack = true;
+        try {
+            for (int i = undo.size() - 1; i >= 0; i--) {
+                try {
+                    undo.get(i).run();
+                } catch (RuntimeException e) {
+                    System.err.println("Error undoing change: " + e.getMessage());
+                }
+            }
+        } finally {
+            finished = true;
+            if (parent != null) {
+                CURRENT.set(parent);
+            } else {
+                CURRENT.remove();
+            }
+        }
+    }
+
+    /**
+     * Rolls the work back unless it has been committed.
+     */
+    @Override
+    public void close() {
+        rollback();
+    }
+
+    /**
+     * Gets the set collecting the writes to a repository made on the current
+     * thread, if they belong to a unit of work. Writes made while a unit of
+     * work is being rolled back belong to the unit of work it is nested in,
+     * if any.
+     *
+     * @param <T> The entity type
+     * @param repository The repository being written
+     * @return The set to record the write in, or null if the write should
+     *         be recorded and reported at once
+     */
+    static <T> ChangeSet<T> pendingChanges(InMemoryRepository<T> repository) {
+        UnitOfWork work = CURRENT.get();
+        if (work == null) {
+            return null;
+        }
+        if (work.rollingBack) {
+            work = work.parent;
+            if (work == null) {
+                return null;
+            }
+        }
+        @SuppressWarnings("unchecked")
+        ChangeSet<T> changes = (ChangeSet<T>) work.pending.computeIfAbsent(repository, r -> new ChangeSet<>());
+        return changes;
+    }
+
+    /**
+     * Remembers what a repository stored under an ID before the open unit of
+     * work first wrote to it, so a rollback can put it back. Does nothing if
+     * no unit of work is open on the thread.
+     *
+     * @param <T> The entity type
+     * @param repository The repository being written
+     * @param id The ID being written
+     * @param previous The entity stored under the ID, or null if there was none
+     */
+    static <T> void remember(InMemoryRepository<T> repository, String id, T previous) {
+        UnitOfWork work = CURRENT.get();
+        if (work == null || work.rollingBack) {
+            return;
+        }
+        if (work.remembered.computeIfAbsent(repository, r -> new HashSet<>()).add(id)) {
+            work.undo.add(() -> repository.restore(id, previous));
+        }
+    }
+
+    /**
+     * Checks that this work is open and innermost on the current thread.
+     */
+    private void checkInnermost() {
+        if (finished) {
+            throw new IllegalStateException("Unit of work has already finished");
+        }
+        if (CURRENT.get() != this) {
+            throw new IllegalStateException("Unit of work is not the innermost one open on this thread");
+        }
+    }
+
+    /**
+     * Adds the writes to one repository to those of the parent.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> void handOn(InMemoryRepository<T> repository, ChangeSet<?> changes) {
+        ((ChangeSet<T>) parent.pending.computeIfAbsent(repository, r -> new ChangeSet<>()))
+                .merge((ChangeSet<T>) changes);
+    }
+
+    /**
+     * Records the writes in each repository and reports them to its listeners.
+     */
+    private void publish() {
+        for (Map.Entry<InMemoryRepository<?>, ChangeSet<?>> entry : pending.entrySet()) {
+            publish(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> void publish(InMemoryRepository<T> repository, ChangeSet<?> changes) {
+        repository.publish((ChangeSet<T>) changes);
+    }
+}
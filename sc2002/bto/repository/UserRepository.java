@@ -1,84 +1,164 @@
 package sc2002.bto.repository;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import sc2002.bto.entity.Applicant;
+import sc2002.bto.entity.HdbManager;
+import sc2002.bto.entity.HdbOfficer;
 import sc2002.bto.entity.User;
-import sc2002.bto.interfaces.IRepository;
+import sc2002.bto.interfaces.Query;
 /**
  * Constructs a new User Repository instance.
  * Initializes an empty collection to store items.
  */
-public class UserRepository implements IRepository<User> {
-    /** In-memory storage of user records */
-    private List<User> users = new ArrayList<>();
-    
+public class UserRepository extends InMemoryRepository<User> {
+    /** Query field for the user's NRIC */
+    public static final Query.Field<User, String> ID = new Query.Field<>("nric", User::getId);
+    /** Query field for the user's name */
+    public static final Query.Field<User, String> NAME = new Query.Field<>("name", User::getName);
+
+    /** Applicants that are not managers, keyed by NRIC */
+    private final Map<String, Applicant> applicants = newIndexMap();
+    /** HDB officers keyed by NRIC */
+    private final Map<String, HdbOfficer> officers = newIndexMap();
+    /** HDB managers keyed by NRIC */
+    private final Map<String, HdbManager> managers = newIndexMap();
+
     /**
-     * Retrieves a user by their ID (NRIC).
-     * 
-     * @param id The ID of the user to retrieve
-     * @return The user with the specified ID, or null if not found
+     * Creates an empty user repository for single-threaded use.
      */
-    @Override
-    public User getById(String id) {
-        return users.stream()
-                .filter(u -> u.getId().equals(id))
-                .findFirst()
-                .orElse(null);
+    public UserRepository() {
+        super();
     }
-    
+
+    /**
+     * Creates an empty user repository.
+     *
+     * @param concurrent true to make the repository safe for concurrent use
+     */
+    public UserRepository(boolean concurrent) {
+        super(concurrent);
+    }
+
     /**
-     * Retrieves all users stored in the repository.
-     * 
-     * @return A list containing all users
+     * Gets the ID (NRIC) of a user.
+     *
+     * @param item The user
+     * @return The user's NRIC
      */
     @Override
-    public List<User> getAll() {
-        return new ArrayList<>(users);
+    protected String idOf(User item) {
+        return item.getId();
     }
-    
+
     /**
-     * Adds a new user to the repository.
-     * 
-     * @param item The user to add
+     * Gets the query field for the user's NRIC.
+     *
+     * @return The ID field
      */
     @Override
-    public void add(User item) {
-        users.add(item);
+    protected Query.Field<User, String> idField() {
+        return ID;
     }
-    
+
     /**
-     * Updates an existing user in the repository.
-     * 
-     * @param item The user with updated information
+     * Adds a user to the partition for their role and starts listening
+     * for changes.
+     *
+     * @param item The stored user
      */
     @Override
-    public void update(User item) {
-        for (int i = 0; i < users.size(); i++) {
-            if (users.get(i).getId().equals(item.getId())) {
-                users.set(i, item);
-                return;
-            }
+    protected void index(User item) {
+        item.setChangeListener(changeListener);
+        if (item instanceof HdbManager) {
+            managers.put(item.getId(), (HdbManager) item);
+        } else if (item instanceof HdbOfficer) {
+            officers.put(item.getId(), (HdbOfficer) item);
+        } else if (item instanceof Applicant) {
+            applicants.put(item.getId(), (Applicant) item);
         }
     }
-    
+
     /**
-     * Deletes a user with the specified ID.
-     * 
-     * @param id The ID of the user to delete
+     * Removes a user from the partition for their role and stops listening
+     * for changes.
+     *
+     * @param item The removed user
      */
     @Override
-    public void delete(String id) {
-        users.removeIf(u -> u.getId().equals(id));
+    protected void unindex(User item) {
+        item.setChangeListener(null);
+        managers.remove(item.getId());
+        officers.remove(item.getId());
+        applicants.remove(item.getId());
+    }
+
+    /**
+     * Gets a read-only view of all applicants, excluding managers.
+     * The view reflects later changes to the repository.
+     *
+     * @return The applicants in insertion order
+     */
+    public Collection<Applicant> getApplicants() {
+        return Collections.unmodifiableCollection(applicants.values());
+    }
+
+    /**
+     * Gets a read-only view of all HDB officers.
+     * The view reflects later changes to the repository.
+     *
+     * @return The officers in insertion order
+     */
+    public Collection<HdbOfficer> getOfficers() {
+        return Collections.unmodifiableCollection(officers.values());
+    }
+
+    /**
+     * Gets a read-only view of all HDB managers.
+     * The view reflects later changes to the repository.
+     *
+     * @return The managers in insertion order
+     */
+    public Collection<HdbManager> getManagers() {
+        return Collections.unmodifiableCollection(managers.values());
+    }
+
+    /**
+     * Gets the number of applicants, excluding managers.
+     *
+     * @return The number of applicants
+     */
+    public int getApplicantCount() {
+        return applicants.size();
     }
-    
+
+    /**
+     * Gets the number of HDB officers.
+     *
+     * @return The number of officers
+     */
+    public int getOfficerCount() {
+        return officers.size();
+    }
+
+    /**
+     * Gets the number of HDB managers.
+     *
+     * @return The number of managers
+     */
+    public int getManagerCount() {
+        return managers.size();
+    }
+
     /**
      * Finds a user by their username.
-     * 
+     *
      * @param username The username to search for
      * @return The user with the specified username, or null if not found
      */
     public User findByUsername(String username) {
-        return users.stream()
+        return stream()
                 .filter(u -> u.getName().equals(username))
                 .findFirst()
                 .orElse(null);
@@ -1,13 +1,17 @@
 package sc2002.bto.ui;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Scanner;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 import sc2002.bto.entity.Applicant;
 import sc2002.bto.entity.Project;
 import sc2002.bto.entity.User;
 import sc2002.bto.enums.FlatType;
 import sc2002.bto.enums.MaritalStatus;
+import sc2002.bto.interfaces.Page;
 import sc2002.bto.repository.ApplicationRepository;
 import sc2002.bto.repository.EnquiryRepository;
 import sc2002.bto.repository.ProjectRepository;
@@ -19,6 +23,9 @@ import sc2002.bto.util.ProjectFilter;
  * Contains common functionality shared by all user types
  */
 public abstract class BaseUserUI {
+    /** Number of entries shown per page in list screens */
+    protected static final int PAGE_SIZE = 10;
+
     protected Scanner scanner;
     protected User currentUser;
     protected UserRepository userRepo;
@@ -44,6 +51,61 @@ public abstract class BaseUserUI {
         this.enquiryRepo = enquiryRepo;
     }
     
+    /**
+     * Shows a list one page at a time and lets the user pick an entry from
+     * the page on screen. Only the page being shown is fetched.
+     * 
+     * @param fetch Fetches the page that follows a cursor (null for the first page)
+     * @param header The heading printed above each page
+     * @param emptyMessage The message printed if there are no entries at all
+     * @param printer Prints one entry given its number on the page
+     * @param prompt The selection prompt
+     * @return The selected entry, or null if the user returned or the selection was invalid
+     */
+    protected <T> T selectFromPages(Function<String, Page<T>> fetch, String header, String emptyMessage,
+                                    BiConsumer<Integer, T> printer, String prompt) {
+        Page<T> page = fetch.apply(null);
+        if (page.isEmpty()) {
+            System.out.println(emptyMessage);
+            return null;
+        }
+
+        while (true) {
+            System.out.println(header);
+            for (int i = 0; i < page.size(); i++) {
+                printer.accept(i + 1, page.getItems().get(i));
+            }
+
+            System.out.print(prompt + (page.hasNext() ? " (N for next page, 0 to return): " : " (or 0 to return): "));
+            String input = scanner.nextLine().trim();
+            if (page.hasNext() && input.equalsIgnoreCase("N")) {
+                Page<T> next = fetch.apply(page.getNextCursor());
+                if (next.isEmpty()) {
+                    System.out.println("No more entries.");
+                } else {
+                    page = next;
+                }
+                continue;
+            }
+
+            int choice;
+            try {
+                choice = Integer.parseInt(input);
+            } catch (NumberFormatException e) {
+                System.out.println("Invalid input. Please enter a number.");
+                return null;
+            }
+            if (choice == 0) {
+                return null;
+            }
+            if (choice < 1 || choice > page.size()) {
+                System.out.println("Invalid selection.");
+                return null;
+            }
+            return page.getItems().get(choice - 1);
+        }
+    }
+    
     /**
      * View user profile
      */
@@ -184,9 +246,9 @@ public abstract class BaseUserUI {
      * The neighborhood filter will persist between menu navigations as it's stored
      * in the projectFilter object.
      * 
-     * @param projects The list of projects to extract available neighborhoods from
+     * @param projects The projects to extract available neighborhoods from
      */
-    protected void filterByNeighborhood(List<Project> projects) {
+    protected void filterByNeighborhood(Collection<Project> projects) {
         // Collect all unique neighborhoods
         System.out.println("\n===== Neighborhoods =====");
         java.util.Set<String> neighborhoods = new java.util.HashSet<>();
@@ -24,14 +24,16 @@ import sc2002.bto.util.FileHandler;
 public class MainUI {
     /** Scanner for reading user input */
     private static Scanner scanner = new Scanner(System.in);
+    /** Whether the repositories are shared by concurrent sessions (-Dbto.concurrent=true) */
+    private static final boolean CONCURRENT = Boolean.getBoolean("bto.concurrent");
     /** Repository for user data */
-    private static UserRepository userRepo = new UserRepository();
+    private static UserRepository userRepo = FileHandler.newUserRepository(CONCURRENT);
     /** Repository for project data */
-    private static ProjectRepository projectRepo = new ProjectRepository();
+    private static ProjectRepository projectRepo = new ProjectRepository(CONCURRENT);
     /** Repository for application data */
-    private static ApplicationRepository applicationRepo = new ApplicationRepository();
+    private static ApplicationRepository applicationRepo = FileHandler.newApplicationRepository(CONCURRENT);
     /** Repository for enquiry data */
-    private static EnquiryRepository enquiryRepo = new EnquiryRepository();
+    private static EnquiryRepository enquiryRepo = FileHandler.newEnquiryRepository(CONCURRENT);
 
     /**
      * Private constructor to prevent instantiation.
@@ -93,8 +95,10 @@ public class MainUI {
             }
         }
 
-        // Final save before exit
-        saveData();
+        // Final save before exit, then a snapshot for a fast next startup if the save worked
+        if (saveData()) {
+            FileHandler.saveSnapshot(userRepo, projectRepo, applicationRepo, enquiryRepo);
+        }
 
         System.out.println("Thank you for using BTO Management System. Goodbye!");
         scanner.close();
@@ -112,7 +116,7 @@ public class MainUI {
                 System.out.println("Data loaded successfully from CSV files.");
             } else {
                 // Check if repositories have data (default data was created)
-                if (!userRepo.getAll().isEmpty() || !projectRepo.getAll().isEmpty()) {
+                if (userRepo.size() > 0 || projectRepo.size() > 0) {
                     System.out.println("Default data has been created and saved to CSV files.");
                 } else {
                     System.out.println("Some errors occurred while loading data.");
@@ -134,8 +138,10 @@ public class MainUI {
 
     /**
      * Save all data to CSV files
+     *
+     * @return true if all data was saved
      */
-    private static void saveData() {
+    private static boolean saveData() {
         try {
             System.out.println("Saving data to CSV files...");
             boolean success = FileHandler.saveAllData(userRepo, projectRepo, applicationRepo, enquiryRepo);
@@ -145,9 +151,11 @@ public class MainUI {
             } else {
                 System.out.println("Some errors occurred while saving data.");
             }
+            return success;
         } catch (Exception e) {
             System.out.println("Error saving data: " + e.getMessage());
             e.printStackTrace();
+            return false;
         }
     }
 
@@ -281,11 +289,9 @@ public class MainUI {
         try {
             // Find existing managers or create one if none exists
             HdbManager manager = null;
-            for (User user : userRepo.getAll()) {
-                if (user instanceof HdbManager) {
-                    manager = (HdbManager) user;
-                    break;
-                }
+            for (HdbManager m : userRepo.getManagers()) {
+                manager = m;
+                break;
             }
 
             if (manager == null) {
@@ -1,6 +1,7 @@
 package sc2002.bto.ui;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.stream.Collectors;
 import sc2002.bto.entity.Application;
@@ -11,10 +12,10 @@ import sc2002.bto.entity.Project;
 import sc2002.bto.entity.Report;
 import sc2002.bto.entity.User;
 import sc2002.bto.enums.ApplicationStatus;
-import sc2002.bto.enums.EnquiryStatus;
 import sc2002.bto.enums.FlatType;
 import sc2002.bto.enums.OfficerRegistrationStatus;
 import sc2002.bto.enums.ReportType;
+import sc2002.bto.interfaces.Query;
 import sc2002.bto.repository.ApplicationRepository;
 import sc2002.bto.repository.EnquiryRepository;
 import sc2002.bto.repository.ProjectRepository;
@@ -167,7 +168,7 @@ public class ManagerUI extends BaseUserUI {
  * settings, including projects created by other managers.
  */
 private void displayAllProjects() {
-    List<Project> allProjects = projectRepo.getAll();
+    Collection<Project> allProjects = projectRepo.viewAll();
 
     if (allProjects.isEmpty()) {
         System.out.println("No projects available.");
@@ -603,16 +604,9 @@ private void displayManagerProjects() {
      * Handles the process of approving or rejecting officer registrations.
      */
     private void approveOfficerRegistration() {
-        // Get all HDB Officers
-        List<User> allUsers = userRepo.getAll();
-        List<HdbOfficer> allOfficers = allUsers.stream()
-                .filter(u -> u instanceof HdbOfficer)
-                .map(u -> (HdbOfficer) u)
-                .collect(Collectors.toList());
-
         List<Project> managerProjects = manager.getProjectsCreated();
 
-        List<HdbOfficer> pendingOfficers = allOfficers.stream()
+        List<HdbOfficer> pendingOfficers = userRepo.getOfficers().stream()
                 .filter(o -> o.getPendingProject() != null)
                 .filter(o -> o.getRegistrationStatus() == OfficerRegistrationStatus.PENDING)
                 .filter(o -> managerProjects.stream()
@@ -654,9 +648,7 @@ private void displayManagerProjects() {
         if (approve.equalsIgnoreCase("Y")) {
             manager.approveOfficerRegistration(selectedOfficer);
         } else {
-            selectedOfficer.setRegistrationStatus(OfficerRegistrationStatus.REJECTED);
-            selectedOfficer.setPendingProject(null);
-            System.out.println("Officer registration rejected.");
+            manager.rejectOfficerRegistration(selectedOfficer);
         }
 
         userRepo.update(selectedOfficer);
@@ -668,43 +660,31 @@ private void displayManagerProjects() {
     private void handleWithdrawalRequests() {
         // Get applications with withdrawal requests for projects managed by this
         // manager
-        List<Application> withdrawalRequests = applicationRepo.getAll().stream()
-                .filter(a -> a.isWithdrawalRequested() &&
-                        a.getStatus() != ApplicationStatus.UNSUCCESSFUL &&
-                        a.getProject().getManagerInCharge().equals(manager.getManagerName()))
+        List<String> managedProjectIds = projectRepo.find(new Query<Project>()
+                .eq(ProjectRepository.MANAGER_IN_CHARGE, manager.getManagerName()))
+                .stream()
+                .map(Project::getProjectID)
                 .collect(Collectors.toList());
-
-        if (withdrawalRequests.isEmpty()) {
-            System.out.println("No withdrawal requests found.");
-            return;
-        }
-
-        System.out.println("\n===== Withdrawal Requests =====");
-        for (int i = 0; i < withdrawalRequests.size(); i++) {
-            Application a = withdrawalRequests.get(i);
-            System.out.println((i + 1) + ". Application ID: " + a.getApplicationId());
-            System.out.println("   Applicant: " + a.getApplicant().getName());
-            System.out.println("   Project: " + a.getProject().getProjectName());
-            System.out.println("   Flat Type: " + a.getSelectedFlatType());
-            System.out.println("   Current Status: " + a.getStatus());
-        }
-
-        System.out.print("Select a withdrawal request to process: ");
-        int requestChoice;
-        try {
-            requestChoice = Integer.parseInt(scanner.nextLine()) - 1;
-        } catch (NumberFormatException e) {
-            System.out.println("Invalid input. Please enter a number.");
-            return;
-        }
-
-        if (requestChoice < 0 || requestChoice >= withdrawalRequests.size()) {
-            System.out.println("Invalid request selection.");
+        Query<Application> withdrawals = new Query<Application>()
+                .in(ApplicationRepository.PROJECT_ID, managedProjectIds)
+                .eq(ApplicationRepository.WITHDRAWAL_REQUESTED, true)
+                .where(a -> a.getStatus() != ApplicationStatus.UNSUCCESSFUL);
+        Application selectedApplication = selectFromPages(
+                cursor -> applicationRepo.findPage(withdrawals, cursor, PAGE_SIZE),
+                "\n===== Withdrawal Requests =====",
+                "No withdrawal requests found.",
+                (number, a) -> {
+                    System.out.println(number + ". Application ID: " + a.getApplicationId());
+                    System.out.println("   Applicant: " + a.getApplicant().getName());
+                    System.out.println("   Project: " + a.getProject().getProjectName());
+                    System.out.println("   Flat Type: " + a.getSelectedFlatType());
+                    System.out.println("   Current Status: " + a.getStatus());
+                },
+                "Select a withdrawal request to process");
+        if (selectedApplication == null) {
             return;
         }
 
-        Application selectedApplication = withdrawalRequests.get(requestChoice);
-
         System.out.print("Approve this withdrawal request? (Y/N): ");
         String approve = scanner.nextLine();
 
@@ -758,11 +738,7 @@ private void displayManagerProjects() {
      */
     private void respondToEnquiry() {
         // Get pending enquiries for projects managed by this manager
-        List<Enquiry> pendingEnquiries = enquiryRepo.getAll().stream()
-                .filter(e -> e.getStatus() == EnquiryStatus.PENDING &&
-                        manager.getProjectsCreated().stream()
-                                .anyMatch(p -> p.getProjectID().equals(e.getProject().getProjectID())))
-                .collect(Collectors.toList());
+        List<Enquiry> pendingEnquiries = manager.getMyProjectsPendingEnquiries(enquiryRepo);
 
         if (pendingEnquiries.isEmpty()) {
             System.out.println("No pending enquiries found for your projects.");
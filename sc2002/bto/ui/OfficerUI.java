@@ -1,5 +1,6 @@
 package sc2002.bto.ui;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.stream.Collectors;
 import sc2002.bto.entity.Application;
@@ -9,7 +10,7 @@ import sc2002.bto.entity.Project;
 import sc2002.bto.entity.Receipt;
 import sc2002.bto.entity.User;
 import sc2002.bto.enums.ApplicationStatus;
-import sc2002.bto.enums.EnquiryStatus;
+import sc2002.bto.interfaces.Query;
 import sc2002.bto.repository.ApplicationRepository;
 import sc2002.bto.repository.EnquiryRepository;
 import sc2002.bto.repository.ProjectRepository;
@@ -139,7 +140,7 @@ public class OfficerUI extends BaseUserUI {
      * Displays all projects with filtering capabilities for the HDB Officer.
      */
     private void displayAllProjects() {
-        List<Project> allProjects = projectRepo.getAll();
+        Collection<Project> allProjects = projectRepo.viewAll();
 
         if (allProjects.isEmpty()) {
             System.out.println("No projects available.");
@@ -213,7 +214,7 @@ public class OfficerUI extends BaseUserUI {
      */
     private void displayProjectDetails() {
         // Get all projects
-        List<Project> allProjects = projectRepo.getAll();
+        Collection<Project> allProjects = projectRepo.viewAll();
 
         if (allProjects.isEmpty()) {
             System.out.println("No projects available.");
@@ -309,7 +310,7 @@ public class OfficerUI extends BaseUserUI {
      */
     private void registerForProject() {
         // First filter for projects with available officer slots
-        List<Project> availableProjects = projectRepo.getAll().stream()
+        List<Project> availableProjects = projectRepo.stream()
                 .filter(p -> p.getAvailableOfficerSlots() > 0)
                 .collect(Collectors.toList());
 
@@ -432,47 +433,25 @@ public class OfficerUI extends BaseUserUI {
             return;
         }
 
-        // Get only SUCCESSFUL applications for the officer's handling project
-        List<Application> successfulApplications = applicationRepo.getAll().stream()
-                .filter(a -> a.getProject() != null &&
-                        a.getProject().equals(officer.getHandlingProject()) &&
-                        a.getStatus() == ApplicationStatus.SUCCESSFUL)
-                .collect(Collectors.toList());
-
-        if (successfulApplications.isEmpty()) {
-            System.out.println("No successful applications found for your handling project.");
-            return;
-        }
-
-        System.out.println(
-                "\n===== Successful Applications for " + officer.getHandlingProject().getProjectName() + " =====");
-        for (int i = 0; i < successfulApplications.size(); i++) {
-            Application a = successfulApplications.get(i);
-            System.out.println((i + 1) + ". Application ID: " + a.getApplicationId());
-            System.out.println("   Applicant: " + a.getApplicant().getName());
-            System.out.println("   Flat Type: " + a.getSelectedFlatType());
-            System.out.println("   Status: " + a.getStatus());
-        }
-
-        System.out.print("Select an application to process (or 0 to return): ");
-        int appChoice;
-        try {
-            appChoice = Integer.parseInt(scanner.nextLine());
-            if (appChoice == 0) {
-                return;
-            }
-            appChoice--; // Convert to 0-based index
-        } catch (NumberFormatException e) {
-            System.out.println("Invalid input. Please enter a number.");
+        // Page through only SUCCESSFUL applications for the officer's handling project
+        Project handlingProject = officer.getHandlingProject();
+        Application selectedApplication = selectFromPages(
+                cursor -> applicationRepo.findPage(new Query<Application>()
+                        .eq(ApplicationRepository.PROJECT_ID, handlingProject.getProjectID())
+                        .eq(ApplicationRepository.STATUS, ApplicationStatus.SUCCESSFUL), cursor, PAGE_SIZE),
+                "\n===== Successful Applications for " + handlingProject.getProjectName() + " =====",
+                "No successful applications found for your handling project.",
+                (number, a) -> {
+                    System.out.println(number + ". Application ID: " + a.getApplicationId());
+                    System.out.println("   Applicant: " + a.getApplicant().getName());
+                    System.out.println("   Flat Type: " + a.getSelectedFlatType());
+                    System.out.println("   Status: " + a.getStatus());
+                },
+                "Select an application to process");
+        if (selectedApplication == null) {
             return;
         }
 
-        if (appChoice < 0 || appChoice >= successfulApplications.size()) {
-            System.out.println("Invalid application selection.");
-            return;
-        }
-
-        Application selectedApplication = successfulApplications.get(appChoice);
         System.out.println("Selected Application: " + selectedApplication.getApplicationId() +
                 " for applicant " + selectedApplication.getApplicant().getName());
 
@@ -490,11 +469,9 @@ public class OfficerUI extends BaseUserUI {
         }
 
         // Get only BOOKED applications for the officer's handling project
-        List<Application> bookedApplications = applicationRepo.getAll().stream()
-                .filter(a -> a.getProject() != null &&
-                        a.getProject().equals(officer.getHandlingProject()) &&
-                        a.getStatus() == ApplicationStatus.BOOKED)
-                .collect(Collectors.toList());
+        List<Application> bookedApplications = applicationRepo.find(new Query<Application>()
+                .eq(ApplicationRepository.PROJECT_ID, officer.getHandlingProject().getProjectID())
+                .eq(ApplicationRepository.STATUS, ApplicationStatus.BOOKED));
 
         if (bookedApplications.isEmpty()) {
             System.out.println("No booked applications found for receipt generation.");
@@ -549,9 +526,7 @@ public class OfficerUI extends BaseUserUI {
         }
 
         // Get pending enquiries for the officer's handling project
-        List<Enquiry> pendingEnquiries = enquiryRepo.findByProject(officer.getHandlingProject()).stream()
-                .filter(e -> e.getStatus() == EnquiryStatus.PENDING)
-                .collect(Collectors.toList());
+        List<Enquiry> pendingEnquiries = officer.getPendingEnquiries();
 
         if (pendingEnquiries.isEmpty()) {
             System.out.println("No pending enquiries found for your handling project.");
@@ -0,0 +1,387 @@
+package sc2002.bto.util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import sc2002.bto.entity.Applicant;
+import sc2002.bto.entity.Application;
+import sc2002.bto.entity.Enquiry;
+import sc2002.bto.entity.HdbManager;
+import sc2002.bto.entity.HdbOfficer;
+import sc2002.bto.entity.Project;
+import sc2002.bto.entity.User;
+import sc2002.bto.enums.ApplicationStatus;
+import sc2002.bto.enums.EnquiryStatus;
+import sc2002.bto.enums.FlatType;
+import sc2002.bto.enums.MaritalStatus;
+import sc2002.bto.enums.OfficerRegistrationStatus;
+import sc2002.bto.repository.ApplicationRepository;
+import sc2002.bto.repository.EnquiryRepository;
+import sc2002.bto.repository.ProjectRepository;
+import sc2002.bto.repository.UserRepository;
+
+/**
+ * Binary snapshot of all users, projects, applications and enquiries, for
+ * fast startup.
+ * <p>
+ * The snapshot starts with a magic number and a format version, followed by
+ * one section per entity type in dependency order: projects, users,
+ * applications, enquiries. References between entities are stored as the
+ * index of the referenced entity within its section, and enums as their
+ * ordinal, so loading needs no lookups by ID and no text parsing. Strings
+ * are stored as a length followed by UTF-8 bytes, with a length of -1 for
+ * null. A CRC32 of everything before it ends the file.
+ * <p>
+ * The whole file is read into memory and decoded with {@link ByteBuffer}
+ * reads. Nothing is added to the repositories until the checksum has been
+ * verified and every entity has been decoded, so a damaged or outdated
+ * snapshot leaves the repositories untouched.
+ *
+ */
+public class BinarySnapshot {
+    /** Marks a file as a snapshot ("BTOS") */
+    private static final int MAGIC = 0x42544F53;
+    /** Version of the format written by this class */
+    private static final int VERSION = 1;
+
+    /** User kind for an applicant */
+    private static final byte APPLICANT = 0;
+    /** User kind for a manager */
+    private static final byte MANAGER = 1;
+    /** User kind for an officer */
+    private static final byte OFFICER = 2;
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private BinarySnapshot() {
+        // Prevents instantiation
+    }
+
+    /**
+     * Writes a snapshot of the repositories. The snapshot is written to a
+     * temporary file that then replaces the previous snapshot.
+     *
+     * @param file The snapshot file
+     * @param userRepo The user repository
+     * @param projectRepo The project repository
+     * @param appRepo The application repository
+     * @param enquiryRepo The enquiry repository
+     * @throws IOException If the snapshot cannot be written
+     */
+    public static void write(File file, UserRepository userRepo, ProjectRepository projectRepo,
+            ApplicationRepository appRepo, EnquiryRepository enquiryRepo) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (FileOutputStream stream = new FileOutputStream(temp)) {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new CheckedOutputStream(stream, crc)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            // Projects
+            Map<Project, Integer> projectIndex = new IdentityHashMap<>();
+            List<Project> projects = new ArrayList<>(projectRepo.viewAll());
+            out.writeInt(projects.size());
+            for (Project project : projects) {
+                projectIndex.put(project, projectIndex.size());
+                writeString(out, project.getProjectID());
+                writeString(out, project.getProjectName());
+                writeString(out, project.getNeighborhood());
+                FlatType[] flatTypes = project.getFlatType();
+                out.writeByte(flatTypes.length);
+                for (FlatType flatType : flatTypes) {
+                    out.writeByte(flatType.ordinal());
+                }
+                out.writeDouble(project.getFloorCount());
+                out.writeDouble(project.getPricePerFlat());
+                out.writeDouble(project.getThresholdPrice());
+                writeString(out, project.getApplicationOpenDate());
+                writeString(out, project.getApplicationCloseDate());
+                out.writeBoolean(project.isVisible());
+                out.writeInt(project.getUnfilledOfficerSlots());
+                out.writeInt(project.getTwoRoomUnitsAvailable());
+                out.writeInt(project.getThreeRoomUnitsAvailable());
+                writeString(out, project.getManagerInCharge());
+            }
+
+            // Users, in the order of the CSV files
+            Map<User, Integer> userIndex = new IdentityHashMap<>();
+            List<User> users = new ArrayList<>(userRepo.getApplicants());
+            users.addAll(userRepo.getManagers());
+            users.addAll(userRepo.getOfficers());
+            out.writeInt(users.size());
+            for (User user : users) {
+                userIndex.put(user, userIndex.size());
+                byte kind = user instanceof HdbManager ? MANAGER : user instanceof HdbOfficer ? OFFICER : APPLICANT;
+                out.writeByte(kind);
+                writeString(out, user.getId());
+                writeString(out, user.getName());
+                writeString(out, user.getPassword());
+                out.writeInt(user.getAge());
+                out.writeByte(ordinal(user.getMaritalStatus()));
+                if (kind == OFFICER) {
+                    HdbOfficer officer = (HdbOfficer) user;
+                    out.writeInt(indexOf(projectIndex, officer.getHandlingProject()));
+                    out.writeByte(ordinal(officer.getRegistrationStatus()));
+                } else {
+                    Double income = ((Applicant) user).getIncomeRange();
+                    out.writeDouble(income == null ? Double.NaN : income);
+                }
+            }
+
+            // Applications
+            List<Application> applications = new ArrayList<>(appRepo.viewAll());
+            out.writeInt(applications.size());
+            for (Application application : applications) {
+                writeString(out, application.getApplicationId());
+                out.writeInt(indexOf(userIndex, application.getApplicant()));
+                out.writeInt(indexOf(projectIndex, application.getProject()));
+                writeString(out, application.getApplicationDate());
+                out.writeByte(ordinal(application.getStatus()));
+                out.writeByte(ordinal(application.getSelectedFlatType()));
+                out.writeBoolean(application.isWithdrawalRequested());
+            }
+
+            // Enquiries
+            List<Enquiry> enquiries = new ArrayList<>(enquiryRepo.viewAll());
+            out.writeInt(enquiries.size());
+            for (Enquiry enquiry : enquiries) {
+                writeString(out, enquiry.getEnquiryId());
+                out.writeInt(indexOf(projectIndex, enquiry.getProject()));
+                out.writeInt(indexOf(userIndex, enquiry.getApplicant()));
+                writeString(out, enquiry.getMessage());
+                writeString(out, enquiry.getResponse());
+                out.writeByte(ordinal(enquiry.getStatus()));
+            }
+
+            out.flush();
+            new DataOutputStream(stream).writeInt((int) crc.getValue());
+        }
+        FileHandler.replaceFile(temp, file);
+    }
+
+    /**
+     * Loads a snapshot into empty repositories. Managers are not yet linked
+     * to the projects they are in charge of; the caller does that in the same
+     * way as when loading from CSV files.
+     *
+     * @param file The snapshot file
+     * @param userRepo The user repository to populate
+     * @param projectRepo The project repository to populate
+     * @param appRepo The application repository to populate
+     * @param enquiryRepo The enquiry repository to populate
+     * @return true if the snapshot was loaded, false if it is damaged or of
+     *         another version, in which case the repositories are untouched
+     * @throws IOException If the file cannot be read
+     */
+    public static boolean read(File file, UserRepository userRepo, ProjectRepository projectRepo,
+            ApplicationRepository appRepo, EnquiryRepository enquiryRepo) throws IOException {
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        if (bytes.length < 12) {
+            return false;
+        }
+        int bodyLength = bytes.length - 4;
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bodyLength);
+        ByteBuffer in = ByteBuffer.wrap(bytes, 0, bodyLength);
+        if ((int) crc.getValue() != ByteBuffer.wrap(bytes).getInt(bodyLength)) {
+            System.out.println("Snapshot checksum does not match; ignoring " + file);
+            return false;
+        }
+        if (in.getInt() != MAGIC) {
+            return false;
+        }
+        int version = in.getInt();
+        if (version != VERSION) {
+            System.out.println("Snapshot version " + version + " is not supported; ignoring " + file);
+            return false;
+        }
+
+        try {
+            FlatType[] flatTypes = FlatType.values();
+            MaritalStatus[] maritalStatuses = MaritalStatus.values();
+            OfficerRegistrationStatus[] registrationStatuses = OfficerRegistrationStatus.values();
+            ApplicationStatus[] applicationStatuses = ApplicationStatus.values();
+
+            // Projects
+            Project[] projects = new Project[in.getInt()];
+            for (int i = 0; i < projects.length; i++) {
+                String projectID = readString(in);
+                String projectName = readString(in);
+                String neighborhood = readString(in);
+                FlatType[] types = new FlatType[in.get()];
+                for (int t = 0; t < types.length; t++) {
+                    types[t] = flatTypes[in.get()];
+                }
+                double floorCount = in.getDouble();
+                double pricePerFlat = in.getDouble();
+                double thresholdPrice = in.getDouble();
+                String openDate = readString(in);
+                String closeDate = readString(in);
+                boolean visible = in.get() != 0;
+                int officerSlots = in.getInt();
+                int twoRoomUnits = in.getInt();
+                int threeRoomUnits = in.getInt();
+                String managerInCharge = readString(in);
+
+                Project project = new Project(projectID, neighborhood, types, floorCount,
+                        pricePerFlat, thresholdPrice, openDate, closeDate,
+                        visible, officerSlots, twoRoomUnits, threeRoomUnits);
+                project.setProjectName(projectName);
+                project.setManagerInCharge(managerInCharge);
+                projects[i] = project;
+            }
+
+            // Users
+            User[] users = new User[in.getInt()];
+            for (int i = 0; i < users.length; i++) {
+                byte kind = in.get();
+                String id = readString(in);
+                String name = readString(in);
+                String password = readString(in);
+                int age = in.getInt();
+                MaritalStatus maritalStatus = valueAt(maritalStatuses, in.get());
+                if (kind == OFFICER) {
+                    Project handlingProject = valueAt(projects, in.getInt());
+                    OfficerRegistrationStatus regStatus = valueAt(registrationStatuses, in.get());
+                    users[i] = new HdbOfficer(id, name, password, age, maritalStatus, name,
+                            null, handlingProject, regStatus, null, appRepo, enquiryRepo);
+                } else {
+                    double income = in.getDouble();
+                    Double incomeRange = Double.isNaN(income) ? null : income;
+                    users[i] = kind == MANAGER
+                            ? new HdbManager(id, name, password, age, maritalStatus, name, incomeRange)
+                            : new Applicant(id, name, password, age, maritalStatus, name, incomeRange);
+                }
+            }
+
+            // Applications
+            List<Application> applications = new ArrayList<>();
+            int applicationCount = in.getInt();
+            for (int i = 0; i < applicationCount; i++) {
+                String applicationID = readString(in);
+                User applicant = valueAt(users, in.getInt());
+                Project project = valueAt(projects, in.getInt());
+                String applicationDate = readString(in);
+                ApplicationStatus status = valueAt(applicationStatuses, in.get());
+                FlatType flatType = valueAt(flatTypes, in.get());
+                boolean withdrawalRequested = in.get() != 0;
+                if (!(applicant instanceof Applicant) || project == null) {
+                    continue;
+                }
+
+                Application application = new Application(applicationID, (Applicant) applicant, project,
+                        applicationDate, flatType);
+                if (status == ApplicationStatus.BOOKED) {
+                    ((Applicant) applicant).setBookedFlat(flatType);
+                    ((Applicant) applicant).setBookedProject(project);
+                }
+                application.updateStatus(status);
+                if (withdrawalRequested) {
+                    application.requestWithdrawal();
+                }
+                applications.add(application);
+            }
+
+            // Enquiries
+            List<Enquiry> enquiries = new ArrayList<>();
+            int enquiryCount = in.getInt();
+            for (int i = 0; i < enquiryCount; i++) {
+                String enquiryID = readString(in);
+                Project project = valueAt(projects, in.getInt());
+                User applicant = valueAt(users, in.getInt());
+                String message = readString(in);
+                String response = readString(in);
+                byte status = in.get();
+                if (!(applicant instanceof Applicant) || project == null) {
+                    continue;
+                }
+
+                Enquiry enquiry = new Enquiry(enquiryID, project, (Applicant) applicant, message);
+                if (status == EnquiryStatus.REPLIED.ordinal() && response != null) {
+                    enquiry.reply(response);
+                }
+                enquiries.add(enquiry);
+            }
+
+            List<User> userList = new ArrayList<>();
+            for (User user : users) {
+                userList.add(user);
+            }
+            List<Project> projectList = new ArrayList<>();
+            for (Project project : projects) {
+                projectList.add(project);
+            }
+            userRepo.addAll(userList);
+            projectRepo.addAll(projectList);
+            appRepo.addAll(applications);
+            enquiryRepo.addAll(enquiries);
+            return true;
+        } catch (BufferUnderflowException | ArrayIndexOutOfBoundsException | NegativeArraySizeException e) {
+            System.out.println("Snapshot is malformed; ignoring " + file);
+            return false;
+        }
+    }
+
+    /**
+     * Writes a string as its UTF-8 length and bytes, or -1 for null.
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a string written by {@link #writeString}, decoding it straight
+     * from the buffer's backing array.
+     */
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    /**
+     * Gets the ordinal of an enum constant, or -1 for null.
+     */
+    private static int ordinal(Enum<?> value) {
+        return value == null ? -1 : value.ordinal();
+    }
+
+    /**
+     * Gets the index of an entity in its section, or -1 if it is not in it.
+     */
+    private static <T> int indexOf(Map<T, Integer> index, T item) {
+        Integer position = item == null ? null : index.get(item);
+        return position == null ? -1 : position;
+    }
+
+    /**
+     * Gets the value at an index, or null for -1.
+     */
+    private static <T> T valueAt(T[] values, int index) {
+        return index < 0 ? null : values[index];
+    }
+}
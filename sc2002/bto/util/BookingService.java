@@ -0,0 +1,87 @@
+package sc2002.bto.util;
+
+import java.util.function.Supplier;
+import sc2002.bto.entity.Project;
+
+/**
+ * Serializes the booking transitions of each project.
+ * <p>
+ * Booking a flat changes the project's inventory, the application's status
+ * and the applicant's booked flat together, and issuing a receipt or
+ * approving a withdrawal changes the same state. Each of these transitions
+ * runs while holding the lock of its project, so the transitions of one
+ * project happen one at a time and each sees the state the previous one
+ * left. Locks are striped by the hash of the project ID: the number of
+ * locks stays fixed however many projects there are, and projects on
+ * different stripes book fully in parallel.
+ * <p>
+ * A transition that is a unit of work begins, commits or rolls back that
+ * unit inside the lock, so its writes are recorded in the order the
+ * transitions ran and a rollback never undoes state a later transition
+ * built on. The commit itself therefore also runs under the lock, and other
+ * bookings on the same stripe wait for it: in log mode it appends the unit's
+ * writes and waits for them to reach the disk, in SQL mode it stores them
+ * in one transaction, and in CSV mode it rewrites every changed data file. Issuing a receipt likewise
+ * appends it to the receipt ledger and flushes it before the lock is
+ * released, so a reprint for the same booking always finds the receipt
+ * instead of issuing a second one. Anything else a transition does should
+ * only change state in memory.
+ */
+public final class BookingService {
+    /** Number of lock stripes shared by all projects */
+    private static final int LOCK_STRIPES = 64;
+    /** The locks, one per stripe */
+    private static final Object[] LOCKS = new Object[LOCK_STRIPES];
+
+    static {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            LOCKS[i] = new Object();
+        }
+    }
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private BookingService() {
+    }
+
+    /**
+     * Runs a transition of a project's booking state while holding the
+     * project's lock.
+     *
+     * @param <T> The result type
+     * @param project The project whose state changes
+     * @param transition The transition
+     * @return The result of the transition
+     */
+    public static <T> T inProject(Project project, Supplier<T> transition) {
+        synchronized (lockFor(project)) {
+            return transition.get();
+        }
+    }
+
+    /**
+     * Runs a transition of a project's booking state that has no result
+     * while holding the project's lock.
+     *
+     * @param project The project whose state changes
+     * @param transition The transition
+     */
+    public static void runInProject(Project project, Runnable transition) {
+        synchronized (lockFor(project)) {
+            transition.run();
+        }
+    }
+
+    /**
+     * Gets the lock of the stripe a project belongs to.
+     *
+     * @param project The project
+     * @return The lock
+     */
+    private static Object lockFor(Project project) {
+        String projectID = project == null ? null : project.getProjectID();
+        int hash = projectID == null ? 0 : projectID.hashCode();
+        return LOCKS[(hash & 0x7fffffff) % LOCK_STRIPES];
+    }
+}
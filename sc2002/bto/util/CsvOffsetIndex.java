@@ -0,0 +1,370 @@
+package sc2002.bto.util;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Sparse index from the ID in the first column of one or more CSV files to
+ * the byte offset of its row, so that single rows can be read on demand
+ * without keeping the files in memory.
+ * <p>
+ * Each file is scanned once, byte by byte, following the same quoting rules
+ * as {@link CsvReader}; only the IDs and their offsets are kept. The header
+ * row and blank rows are skipped. If an ID appears in more than one file,
+ * the file given last wins, as when the files are loaded in order into one
+ * repository.
+ * <p>
+ * A file that has changed since it was scanned, for example because it was
+ * saved again, is scanned afresh before it is read. A row that turns out not
+ * to hold the ID it was indexed under also causes a fresh scan, so an index
+ * never hands out the wrong row.
+ *
+ */
+public class CsvOffsetIndex {
+    /** Size of the read buffer used while scanning */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Offsets of the rows of one file, with the size and modification time
+     * the file had when it was scanned.
+     */
+    private static final class FileOffsets {
+        /** Row offsets keyed by ID, in file order */
+        private final Map<String, Long> offsets;
+        /** Length of the file when it was scanned */
+        private final long length;
+        /** Modification time of the file when it was scanned */
+        private final long modified;
+
+        private FileOffsets(Map<String, Long> offsets, long length, long modified) {
+            this.offsets = offsets;
+            this.length = length;
+            this.modified = modified;
+        }
+    }
+
+    /** The indexed files, in the order they were given */
+    private final List<File> files;
+    /** Row offsets of each file */
+    private final Map<File, FileOffsets> offsets = new HashMap<>();
+    /** Number of IDs of each file that no later file has, counted when first asked for */
+    private final Map<File, Integer> ownedCounts = new HashMap<>();
+
+    /**
+     * Builds the index by scanning every file. Files that do not exist are
+     * indexed as empty.
+     *
+     * @param files The files to index; later files win for duplicate IDs
+     * @throws IOException If a file cannot be read
+     */
+    public CsvOffsetIndex(File... files) throws IOException {
+        List<File> list = new ArrayList<>();
+        for (File file : files) {
+            list.add(file);
+            offsets.put(file, scan(file));
+        }
+        this.files = Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Finds the file holding the row of an ID.
+     *
+     * @param id The ID to look up
+     * @return The file, or null if no file has a row for the ID
+     * @throws IOException If a changed file cannot be scanned again
+     */
+    public synchronized File locate(String id) throws IOException {
+        for (int i = files.size() - 1; i >= 0; i--) {
+            File file = files.get(i);
+            if (current(file).offsets.containsKey(id)) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads the row of an ID from a file.
+     *
+     * @param file The indexed file
+     * @param id The ID of the row
+     * @return The row, or null if the file has no row for the ID
+     * @throws IOException If the file cannot be read
+     * @throws IllegalArgumentException If the file is not indexed
+     */
+    public synchronized CsvRecord read(File file, String id) throws IOException {
+        Long offset = current(file).offsets.get(id);
+        if (offset == null) {
+            return null;
+        }
+        CsvRecord row = readAt(file, offset);
+        if (row != null && id.equals(row.getString(0))) {
+            return row;
+        }
+
+        // The file changed without its size or time showing it; the offsets cannot be trusted
+        rescan(file);
+        offset = offsets.get(file).offsets.get(id);
+        return offset == null ? null : readAt(file, offset);
+    }
+
+    /**
+     * Gets the IDs that have a row in a file.
+     *
+     * @param file The indexed file
+     * @return The IDs, in file order
+     * @throws IOException If a changed file cannot be scanned again
+     * @throws IllegalArgumentException If the file is not indexed
+     */
+    public synchronized Set<String> getIds(File file) throws IOException {
+        return new LinkedHashSet<>(current(file).offsets.keySet());
+    }
+
+    /**
+     * Checks whether a file has a row for an ID.
+     *
+     * @param file The indexed file
+     * @param id The ID to look up
+     * @return true if the file has a row for the ID
+     * @throws IOException If a changed file cannot be scanned again
+     * @throws IllegalArgumentException If the file is not indexed
+     */
+    public synchronized boolean contains(File file, String id) throws IOException {
+        return current(file).offsets.containsKey(id);
+    }
+
+    /**
+     * Gets the number of rows indexed in a file.
+     *
+     * @param file The indexed file
+     * @return The number of rows
+     * @throws IOException If a changed file cannot be scanned again
+     * @throws IllegalArgumentException If the file is not indexed
+     */
+    public synchronized int size(File file) throws IOException {
+        return current(file).offsets.size();
+    }
+
+    /**
+     * Gets the number of IDs in a file that no later file has a row for,
+     * which are the IDs {@link #locate(String)} finds in this file. The
+     * count is kept until one of the files is scanned again.
+     *
+     * @param file The indexed file
+     * @return The number of IDs the file holds the winning row for
+     * @throws IOException If a changed file cannot be scanned again
+     * @throws IllegalArgumentException If the file is not indexed
+     */
+    public synchronized int countOwned(File file) throws IOException {
+        FileOffsets own = current(file);
+        List<FileOffsets> later = new ArrayList<>();
+        for (int i = files.indexOf(file) + 1; i < files.size(); i++) {
+            later.add(current(files.get(i)));
+        }
+        Integer count = ownedCounts.get(file);
+        if (count == null) {
+            count = 0;
+            for (String id : own.offsets.keySet()) {
+                boolean overridden = false;
+                for (FileOffsets next : later) {
+                    if (next.offsets.containsKey(id)) {
+                        overridden = true;
+                        break;
+                    }
+                }
+                if (!overridden) {
+                    count++;
+                }
+            }
+            ownedCounts.put(file, count);
+        }
+        return count;
+    }
+
+    /**
+     * Gets the indexed files.
+     *
+     * @return The files, in the order they were given
+     */
+    public List<File> getFiles() {
+        return files;
+    }
+
+    /**
+     * Gets the offsets of a file, scanning it again if it has changed.
+     */
+    private FileOffsets current(File file) throws IOException {
+        FileOffsets known = offsets.get(file);
+        if (known == null) {
+            throw new IllegalArgumentException("File is not indexed: " + file);
+        }
+        if (known.length != file.length() || known.modified != file.lastModified()) {
+            known = rescan(file);
+        }
+        return known;
+    }
+
+    /**
+     * Scans a file again, dropping the owned counts that may have changed.
+     */
+    private FileOffsets rescan(File file) throws IOException {
+        FileOffsets scanned = scan(file);
+        offsets.put(file, scanned);
+        ownedCounts.clear();
+        return scanned;
+    }
+
+    /**
+     * Reads the row starting at an offset.
+     */
+    private static CsvRecord readAt(File file, long offset) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            if (offset >= raf.length()) {
+                return null;
+            }
+            raf.seek(offset);
+            CsvReader reader = new CsvReader(
+                    new InputStreamReader(Channels.newInputStream(raf.getChannel()), StandardCharsets.UTF_8));
+            return reader.nextRow() ? reader.copyRow() : null;
+        }
+    }
+
+    /**
+     * Scans a file for the ID and offset of every row after the header.
+     */
+    private static FileOffsets scan(File file) throws IOException {
+        // Read the size and time first, so a change made during the scan shows up as a change later
+        long length = file.length();
+        long modified = file.lastModified();
+        Map<String, Long> found = new LinkedHashMap<>();
+        if (!file.exists()) {
+            return new FileOffsets(found, length, modified);
+        }
+        try (RowScanner scanner = new RowScanner(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE))) {
+            ByteArrayOutputStream id = new ByteArrayOutputStream();
+            // Skip header
+            if (scanner.nextRow(id) >= 0) {
+                long start;
+                while ((start = scanner.nextRow(id)) >= 0) {
+                    String key = new String(id.toByteArray(), StandardCharsets.UTF_8).trim();
+                    if (!key.isEmpty()) {
+                        found.put(key, start);
+                    }
+                }
+            }
+        }
+        return new FileOffsets(found, length, modified);
+    }
+
+    /**
+     * Splits a byte stream into CSV rows the way {@link CsvReader} does,
+     * keeping only the first field of each row and the offset it starts at.
+     */
+    private static final class RowScanner implements AutoCloseable {
+        /** Marker for an empty pushback slot */
+        private static final int NONE = -2;
+
+        /** Source of the bytes */
+        private final InputStream in;
+        /** Offset of the next byte to be read */
+        private long position;
+        /** A byte read ahead and put back, or NONE */
+        private int pushback = NONE;
+
+        private RowScanner(InputStream in) {
+            this.in = in;
+        }
+
+        /**
+         * Advances to the next row, collecting its first field.
+         *
+         * @param firstField Receives the bytes of the first field
+         * @return The offset of the row, or -1 at the end of the input
+         */
+        private long nextRow(ByteArrayOutputStream firstField) throws IOException {
+            firstField.reset();
+            long start = position;
+            int c = read();
+            if (c == -1) {
+                return -1;
+            }
+
+            int field = 0;
+            while (true) {
+                if (c == '"') {
+                    // Quoted field: runs until a quote that is not doubled
+                    while (true) {
+                        c = read();
+                        if (c == -1) {
+                            break;
+                        }
+                        if (c == '"') {
+                            c = read();
+                            if (c != '"') {
+                                break;
+                            }
+                        }
+                        if (field == 0) {
+                            firstField.write(c);
+                        }
+                    }
+                }
+                while (c != ',' && c != '\n' && c != '\r' && c != -1) {
+                    if (field == 0) {
+                        firstField.write(c);
+                    }
+                    c = read();
+                }
+
+                if (c == ',') {
+                    field++;
+                    c = read();
+                    continue;
+                }
+                if (c == '\r') {
+                    c = read();
+                    if (c != '\n' && c != -1) {
+                        pushback = c;
+                        position--;
+                    }
+                }
+                return start;
+            }
+        }
+
+        private int read() throws IOException {
+            int c;
+            if (pushback != NONE) {
+                c = pushback;
+                pushback = NONE;
+            } else {
+                c = in.read();
+            }
+            if (c != -1) {
+                position++;
+            }
+            return c;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package sc2002.bto.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Streaming reader for RFC 4180 CSV files.
+ * Characters are read in blocks into a reusable buffer and each row is
+ * assembled into a reusable {@link CsvRecord}, so reading a row allocates
+ * nothing once the buffers have grown to fit the longest row.
+ * <p>
+ * Fields may be enclosed in double quotes, in which case they can contain
+ * commas, line breaks and doubled {@code ""} quotes. Rows may end in LF or
+ * CRLF. Text after the closing quote of a field is kept as part of the field
+ * rather than rejected.
+ * <p>
+ * A reader can also {@link #retainRawText() keep the text} of each row
+ * exactly as it appeared in the file, so that rows can be copied to another
+ * file without being parsed and formatted again.
+ *
+ */
+public class CsvReader implements Closeable {
+    /** Size of the block read from the underlying reader at a time */
+    private static final int BLOCK_SIZE = 8192;
+    /** Marker for an empty pushback slot */
+    private static final int NONE = -2;
+
+    /** Source of the CSV text */
+    private final Reader in;
+    /** Reusable block of characters read from the source */
+    private final char[] block = new char[BLOCK_SIZE];
+    /** Number of valid characters in the block */
+    private int blockLength;
+    /** Position of the next character in the block */
+    private int position;
+    /** A character read ahead and put back, or NONE */
+    private int pushback = NONE;
+    /** Reusable holder for the current row */
+    private final CsvRecord row = new CsvRecord();
+    /** Number of rows read so far */
+    private long rowCount;
+    /** Text of the current row as read, or null when raw text is not kept */
+    private char[] raw;
+    /** Number of characters of raw text in the current row */
+    private int rawLength;
+
+    /**
+     * Creates a reader over CSV text.
+     *
+     * @param in The source of the CSV text
+     */
+    public CsvReader(Reader in) {
+        this.in = in;
+    }
+
+    /**
+     * Advances to the next row.
+     *
+     * @return true if a row was read, false at the end of the input
+     * @throws IOException If the source cannot be read
+     */
+    public boolean nextRow() throws IOException {
+        row.clear();
+        rawLength = 0;
+        int c = read();
+        if (c == -1) {
+            return false;
+        }
+
+        while (true) {
+            int start = row.length;
+            if (c == '"') {
+                // Quoted field: runs until a quote that is not doubled
+                while (true) {
+                    c = read();
+                    if (c == -1) {
+                        break;
+                    }
+                    if (c == '"') {
+                        c = read();
+                        if (c != '"') {
+                            break;
+                        }
+                    }
+                    row.append((char) c);
+                }
+            }
+            while (c != ',' && c != '\n' && c != '\r' && c != -1) {
+                row.append((char) c);
+                c = read();
+            }
+            row.endField(start);
+
+            if (c == ',') {
+                c = read();
+                continue;
+            }
+            if (c == '\r') {
+                c = read();
+                if (c != '\n') {
+                    pushback = c;
+                    if (raw != null && c != -1) {
+                        rawLength--;
+                    }
+                }
+            }
+            rowCount++;
+            return true;
+        }
+    }
+
+    /**
+     * Gets the current row. The returned record is reused for the next row,
+     * so callers that keep rows must take a {@link #copyRow() copy}.
+     *
+     * @return The current row
+     */
+    public CsvRecord getRow() {
+        return row;
+    }
+
+    /**
+     * Copies the current row into a record that is not reused.
+     *
+     * @return A copy of the current row
+     */
+    public CsvRecord copyRow() {
+        return row.copy();
+    }
+
+    /**
+     * Starts keeping the text of each row exactly as read, including its
+     * line break, for {@link #writeRawText(Writer)}.
+     */
+    public void retainRawText() {
+        if (raw == null) {
+            raw = new char[256];
+        }
+    }
+
+    /**
+     * Writes the text of the current row exactly as it was read. A line
+     * break is added if the row had none, which can only happen for the
+     * last row of the input.
+     *
+     * @param out The writer to copy the row to
+     * @throws IOException If writing fails
+     * @throws IllegalStateException If raw text is not being kept
+     */
+    public void writeRawText(Writer out) throws IOException {
+        if (raw == null) {
+            throw new IllegalStateException("Raw text is not being kept");
+        }
+        out.write(raw, 0, rawLength);
+        if (rawLength == 0 || raw[rawLength - 1] != '\n') {
+            out.write('\n');
+        }
+    }
+
+    /**
+     * Gets the text of the current row exactly as it was read, ending in a
+     * line break as described for {@link #writeRawText(Writer)}.
+     *
+     * @return The raw text of the row
+     * @throws IllegalStateException If raw text is not being kept
+     */
+    public String getRawText() {
+        if (raw == null) {
+            throw new IllegalStateException("Raw text is not being kept");
+        }
+        if (rawLength > 0 && raw[rawLength - 1] == '\n') {
+            return new String(raw, 0, rawLength);
+        }
+        return new String(raw, 0, rawLength) + "\n";
+    }
+
+    /**
+     * Gets the number of rows read so far, including any header.
+     *
+     * @return The number of rows read
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Closes the underlying reader.
+     *
+     * @throws IOException If closing fails
+     */
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Reads the next character, refilling the block when it runs out.
+     *
+     * @return The character, or -1 at the end of the input
+     * @throws IOException If the source cannot be read
+     */
+    private int read() throws IOException {
+        if (pushback != NONE) {
+            int c = pushback;
+            pushback = NONE;
+            if (c != -1) {
+                keepRaw((char) c);
+            }
+            return c;
+        }
+        if (position == blockLength) {
+            blockLength = in.read(block, 0, BLOCK_SIZE);
+            position = 0;
+            if (blockLength <= 0) {
+                blockLength = 0;
+                return -1;
+            }
+        }
+        char c = block[position++];
+        keepRaw(c);
+        return c;
+    }
+
+    /**
+     * Appends a character to the raw text of the current row, if raw text
+     * is being kept.
+     *
+     * @param c The character
+     */
+    private void keepRaw(char c) {
+        if (raw == null) {
+            return;
+        }
+        if (rawLength == raw.length) {
+            raw = Arrays.copyOf(raw, raw.length * 2);
+        }
+        raw[rawLength++] = c;
+    }
+}
@@ -0,0 +1,280 @@
+package sc2002.bto.util;
+
+import java.util.Arrays;
+
+/**
+ * One row of a CSV file, stored as a single character array with the start
+ * and end offset of each field. Strings are only created for the fields a
+ * caller asks for as text; numbers and booleans are parsed straight from the
+ * characters.
+ * <p>
+ * All accessors ignore leading and trailing whitespace in a field.
+ *
+ */
+public class CsvRecord {
+    /** Powers of ten that are exactly representable as doubles */
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /** Characters of all fields, back to back */
+    char[] chars;
+    /** Number of characters in use */
+    int length;
+    /** Start offset of each field in {@link #chars} */
+    int[] starts;
+    /** End offset (exclusive) of each field in {@link #chars} */
+    int[] ends;
+    /** Number of fields */
+    int size;
+
+    /**
+     * Creates an empty record with room for a typical row.
+     */
+    CsvRecord() {
+        this(new char[256], new int[16], new int[16]);
+    }
+
+    private CsvRecord(char[] chars, int[] starts, int[] ends) {
+        this.chars = chars;
+        this.starts = starts;
+        this.ends = ends;
+    }
+
+    /**
+     * Empties the record so its buffers can be reused for the next row.
+     */
+    void clear() {
+        length = 0;
+        size = 0;
+    }
+
+    /**
+     * Appends a character to the field being read.
+     *
+     * @param c The character
+     */
+    void append(char c) {
+        if (length == chars.length) {
+            chars = Arrays.copyOf(chars, chars.length * 2);
+        }
+        chars[length++] = c;
+    }
+
+    /**
+     * Ends the field being read.
+     *
+     * @param start The offset where the field started
+     */
+    void endField(int start) {
+        if (size == starts.length) {
+            starts = Arrays.copyOf(starts, size * 2);
+            ends = Arrays.copyOf(ends, size * 2);
+        }
+        starts[size] = start;
+        ends[size] = length;
+        size++;
+    }
+
+    /**
+     * Copies this record into a new, exactly sized record that does not
+     * share any buffers with it.
+     *
+     * @return The copy
+     */
+    CsvRecord copy() {
+        CsvRecord copy = new CsvRecord(Arrays.copyOf(chars, length),
+                Arrays.copyOf(starts, size), Arrays.copyOf(ends, size));
+        copy.length = length;
+        copy.size = size;
+        return copy;
+    }
+
+    /**
+     * Gets the number of fields in this row.
+     *
+     * @return The number of fields
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets a field as text.
+     *
+     * @param index The field index
+     * @return The field value with surrounding whitespace removed
+     */
+    public String getString(int index) {
+        int start = trimStart(index);
+        return new String(chars, start, trimEnd(index, start) - start);
+    }
+
+    /**
+     * Checks whether a field equals a value, ignoring case.
+     *
+     * @param index The field index
+     * @param value The value to compare with
+     * @return true if the field matches the value
+     */
+    public boolean equalsIgnoreCase(int index, String value) {
+        int start = trimStart(index);
+        int end = trimEnd(index, start);
+        if (end - start != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char a = chars[start + i];
+            char b = value.charAt(i);
+            if (a != b && Character.toUpperCase(a) != Character.toUpperCase(b)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses a field as a boolean, with the same rules as
+     * {@link Boolean#parseBoolean(String)}.
+     *
+     * @param index The field index
+     * @return true if the field is "true", ignoring case
+     */
+    public boolean getBoolean(int index) {
+        return equalsIgnoreCase(index, "true");
+    }
+
+    /**
+     * Parses a field as a decimal integer.
+     *
+     * @param index The field index
+     * @return The integer value
+     * @throws NumberFormatException If the field is not a valid integer
+     */
+    public int getInt(int index) {
+        int start = trimStart(index);
+        int end = trimEnd(index, start);
+        int i = start;
+        boolean negative = false;
+        if (i < end && (chars[i] == '-' || chars[i] == '+')) {
+            negative = chars[i] == '-';
+            i++;
+        }
+        if (i == end) {
+            throw invalid(index, start, end);
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = chars[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw invalid(index, start, end);
+            }
+            value = value * 10 + digit;
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                throw invalid(index, start, end);
+            }
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            throw invalid(index, start, end);
+        }
+        return (int) value;
+    }
+
+    /**
+     * Parses a field as a decimal number. Plain decimals such as
+     * {@code 350000.0} are parsed from the characters directly; anything
+     * else, such as exponents or very long mantissas, falls back to
+     * {@link Double#parseDouble(String)} so that results are always
+     * correctly rounded.
+     *
+     * @param index The field index
+     * @return The numeric value
+     * @throws NumberFormatException If the field is not a valid number
+     */
+    public double getDouble(int index) {
+        int start = trimStart(index);
+        int end = trimEnd(index, start);
+        int i = start;
+        boolean negative = false;
+        if (i < end && (chars[i] == '-' || chars[i] == '+')) {
+            negative = chars[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int significantDigits = 0;
+        int fractionDigits = 0;
+        boolean anyDigit = false;
+        boolean seenPoint = false;
+        for (; i < end; i++) {
+            char c = chars[i];
+            if (c == '.' && !seenPoint) {
+                seenPoint = true;
+            } else if (c >= '0' && c <= '9') {
+                anyDigit = true;
+                mantissa = mantissa * 10 + (c - '0');
+                if (mantissa != 0) {
+                    significantDigits++;
+                }
+                if (seenPoint) {
+                    fractionDigits++;
+                }
+                if (significantDigits > 15) {
+                    break;
+                }
+            } else {
+                break;
+            }
+        }
+        // Both the mantissa and the power of ten are exact doubles in this
+        // range, so a single division gives the correctly rounded result
+        if (i == end && anyDigit && fractionDigits < POWERS_OF_TEN.length) {
+            double value = mantissa / POWERS_OF_TEN[fractionDigits];
+            return negative ? -value : value;
+        }
+        return Double.parseDouble(new String(chars, start, end - start));
+    }
+
+    private int trimStart(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Field " + index + " of " + size);
+        }
+        int start = starts[index];
+        int end = ends[index];
+        while (start < end && chars[start] <= ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    private int trimEnd(int index, int start) {
+        int end = ends[index];
+        while (end > start && chars[end - 1] <= ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    private NumberFormatException invalid(int index, int start, int end) {
+        return new NumberFormatException("For input string: \"" + new String(chars, start, end - start)
+                + "\" in field " + index);
+    }
+
+    /**
+     * Gets the fields of this row as text, for diagnostics.
+     *
+     * @return The fields joined with commas
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(chars, starts[i], ends[i] - starts[i]);
+        }
+        return sb.toString();
+    }
+}
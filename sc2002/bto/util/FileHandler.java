@@ -1,15 +1,37 @@
 package sc2002.bto.util;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import sc2002.bto.entity.Applicant;
 import sc2002.bto.entity.Application;
 import sc2002.bto.entity.Enquiry;
@@ -21,9 +43,15 @@ import sc2002.bto.enums.ApplicationStatus;
 import sc2002.bto.enums.FlatType;
 import sc2002.bto.enums.MaritalStatus;
 import sc2002.bto.enums.OfficerRegistrationStatus;
+import sc2002.bto.interfaces.IRepositoryListener;
 import sc2002.bto.repository.ApplicationRepository;
+import sc2002.bto.repository.ChangeSet;
 import sc2002.bto.repository.EnquiryRepository;
+import sc2002.bto.repository.LazyUserRepository;
 import sc2002.bto.repository.ProjectRepository;
+import sc2002.bto.repository.SqlApplicationRepository;
+import sc2002.bto.repository.SqlEnquiryRepository;
+import sc2002.bto.repository.UnitOfWork;
 import sc2002.bto.repository.UserRepository;
 
 /**
@@ -41,10 +69,111 @@ public class FileHandler {
     private static final String APPLICATION_FILE = DATA_DIR + "ApplicationList.csv";
     private static final String ENQUIRY_FILE = DATA_DIR + "EnquiryList.csv";
     private static final String RECEIPT_FILE = DATA_DIR + "ReceiptList.csv";
+    // Binary snapshot loaded instead of the CSV files while it is up to date
+    private static final String SNAPSHOT_FILE = DATA_DIR + "snapshot.bin";
+
+    // How the large data files are read: "mmap", "stream" or "auto" (the default)
+    private static final String INGEST_MODE = System.getProperty("bto.ingest", "auto");
+    // Size above which the application and enquiry files are memory-mapped in auto mode
+    private static final long MAPPED_INGEST_THRESHOLD = 16L << 20;
+
+    // How changes are persisted: "csv" rewrites changed files on save, "wal" logs every write
+    private static final String PERSISTENCE_MODE = System.getProperty("bto.persistence", "csv");
+    // How often, in seconds, the write-ahead log is checked for compaction
+    private static final long WAL_COMPACT_INTERVAL = Long.getLong("bto.wal.compactSeconds", 30);
+    // Size in bytes at which the write-ahead log is merged into the CSV files
+    private static final long WAL_COMPACT_THRESHOLD = Long.getLong("bto.wal.compactBytes", 1L << 20);
+    // Longest time, in milliseconds, a logged write waits before its group is committed
+    private static final long WAL_FLUSH_INTERVAL = Long.getLong("bto.wal.flushMillis", 50);
+    // Number of queued writes that are committed as a group without waiting
+    private static final int WAL_BATCH_SIZE = Integer.getInteger("bto.wal.batchSize", 256);
+    // Where applications are kept: "csv" with the other data, or "lsm" in their own log-structured store
+    private static final String APPLICATION_STORE = System.getProperty("bto.applicationStore", "csv");
+    // Size in bytes at which the application store writes its memtable to a segment
+    private static final long LSM_MEMTABLE_BYTES = Long.getLong("bto.lsm.memtableBytes", 4L << 20);
+    // Number of application store segments at which they are merged in the background
+    private static final int LSM_COMPACT_SEGMENTS = Integer.getInteger("bto.lsm.compactSegments", 4);
+    // JDBC URL of the embedded database used in "sql" mode; the driver must be on the class path
+    private static final String SQL_URL = System.getProperty("bto.sql.url", "jdbc:h2:./data/bto");
+    // Longest time, in milliseconds, a durability barrier waits for the disk
+    private static final long DURABILITY_TIMEOUT = Long.getLong("bto.wal.barrierMillis", 5000);
+    // How users are loaded: "eager" reads every user on load, "lazy" reads applicants on demand in CSV mode
+    private static final String USER_LOADING = System.getProperty("bto.users", "eager");
+    // Largest number of users read on demand that are kept in memory in lazy mode
+    private static final int USER_CACHE_SIZE = Integer.getInteger("bto.users.cacheSize", 1024);
+
+    // Write-ahead log receiving every repository write, or null in CSV mode
+    private static WriteAheadLog writeAheadLog;
+    // Background writer committing logged writes in groups, or null in CSV mode
+    private static GroupCommitWriter logWriter;
+    // Embedded database receiving every repository write in "sql" mode, or null
+    private static SqlStore sqlStore;
+    // Log-structured store receiving every application write, or null when applications are in CSV
+    private static LsmStore applicationStore;
+    // Log entries of the unit of work being committed on each thread, queued together
+    private static final ThreadLocal<List<WriteAheadLog.Entry>> LOG_BATCH = new ThreadLocal<>();
+    // Database writes of the unit of work being committed on each thread, stored in one transaction
+    private static final ThreadLocal<List<SqlStore.Row>> STORE_BATCH = new ThreadLocal<>();
+    // Held while the CSV files are saved, so concurrent saves do not overwrite each other
+    private static final Object SAVE_LOCK = new Object();
+    // Saves the loaded repositories, for durability barriers in CSV mode
+    private static BooleanSupplier saveLoadedData;
+    // Ledger of issued receipts, opened on load or on first use
+    private static ReceiptLedger receiptLedger;
 
     // Date formatter for consistent date format handling
     private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd");
 
+    /**
+     * Creates the user repository to load data into. If the system property
+     * {@code bto.users} is "lazy", the repository only indexes the user files
+     * on load and reads each applicant when it is first asked for. This is
+     * only done in CSV mode, where the user files are up to date after every
+     * save; in the other modes every user is loaded.
+     * 
+     * @param concurrent true to make the repository safe for concurrent use
+     * @return A new empty user repository
+     */
+    public static UserRepository newUserRepository(boolean concurrent) {
+        if ("lazy".equalsIgnoreCase(USER_LOADING)) {
+            if ("csv".equalsIgnoreCase(PERSISTENCE_MODE)) {
+                return new LazyUserRepository(concurrent, USER_CACHE_SIZE);
+            }
+            System.out.println("Users are loaded in full in " + PERSISTENCE_MODE + " mode");
+        }
+        return new UserRepository(concurrent);
+    }
+
+    /**
+     * Creates the application repository to load data into. In SQL mode it
+     * is a {@link SqlApplicationRepository}, which answers queries on the
+     * applicant, project and status through the database's indexes.
+     * 
+     * @param concurrent true to make the repository safe for concurrent use
+     * @return A new empty application repository
+     */
+    public static ApplicationRepository newApplicationRepository(boolean concurrent) {
+        if ("sql".equalsIgnoreCase(PERSISTENCE_MODE)) {
+            return new SqlApplicationRepository(concurrent);
+        }
+        return new ApplicationRepository(concurrent);
+    }
+
+    /**
+     * Creates the enquiry repository to load data into. In SQL mode it is a
+     * {@link SqlEnquiryRepository}, which answers queries on the applicant,
+     * project and status through the database's indexes.
+     * 
+     * @param concurrent true to make the repository safe for concurrent use
+     * @return A new empty enquiry repository
+     */
+    public static EnquiryRepository newEnquiryRepository(boolean concurrent) {
+        if ("sql".equalsIgnoreCase(PERSISTENCE_MODE)) {
+            return new SqlEnquiryRepository(concurrent);
+        }
+        return new EnquiryRepository(concurrent);
+    }
+
     /**
      * Loads all data from files into the system repositories.
      * 
@@ -62,29 +191,102 @@ public class FileHandler {
 
             // Then ensure all files exist, create them if they don't
             ensureAllFilesExist();
+            saveLoadedData = () -> saveAllData(userRepo, projectRepo, applicationRepo, enquiryRepo);
+            UnitOfWork.setCommitter(FileHandler::commitBatch);
+
+            // Load issued receipts so that numbering continues where it left off
+            openReceiptLedger();
+
+            // In SQL mode the database holds the data, and the CSV files are only imported into a new database
+            SqlStore store = "sql".equalsIgnoreCase(PERSISTENCE_MODE) ? openSqlStore() : null;
+            boolean importing = store != null && store.isEmpty();
+
+            // Otherwise applications may be kept in their own log-structured store
+            LsmStore applications = store == null && "lsm".equalsIgnoreCase(APPLICATION_STORE)
+                    ? openApplicationStore() : null;
+            boolean applicationsInCsv = applications == null || applications.isEmpty();
+
+            // Users may be read from their files on demand, which only works while the files are up to date
+            LazyUserRepository lazyUsers = userRepo instanceof LazyUserRepository
+                    && "csv".equalsIgnoreCase(PERSISTENCE_MODE) ? (LazyUserRepository) userRepo : null;
+
+            // Otherwise prefer the binary snapshot when nothing has been written since it was taken
+            if (store == null && applications == null && lazyUsers == null && isSnapshotCurrent()
+                    && loadSnapshot(userRepo, projectRepo, applicationRepo, enquiryRepo)) {
+                return true;
+            }
+
+            // Read and split every file in parallel, or read the database; nothing is linked yet
+            long start = System.nanoTime();
+            Map<String, RowBuffer> buffers = store != null && !importing
+                    ? readStore(store, APPLICANT_FILE, MANAGER_FILE, OFFICER_FILE,
+                            PROJECT_FILE, APPLICATION_FILE, ENQUIRY_FILE)
+                    : readFiles(csvFilesToRead(lazyUsers == null, applicationsInCsv));
+            long readNanos = System.nanoTime() - start;
+
+            // In log mode, bring the rows up to date with the writes logged since the last compaction
+            WriteAheadLog log = null;
+            if ("wal".equalsIgnoreCase(PERSISTENCE_MODE)) {
+                log = openWriteAheadLog();
+                replayLog(buffers, log.readAll());
+            }
+
+            // Application rows come from their own store once it holds them; older logged writes do not apply
+            if (!applicationsInCsv) {
+                buffers.put(APPLICATION_FILE, readApplicationStore(applications));
+            }
+
+            // Build entities and link them on this thread, in dependency order
+            start = System.nanoTime();
 
-            // Load users (applicants, managers, officers)
-            int userCount = loadUsers(userRepo, applicationRepo, enquiryRepo);
+            // Load users (applicants, managers, officers), keeping each
+            // officer's handling project ID until projects are loaded
+            Map<String, String> officerProjectIds = new LinkedHashMap<>();
+            int userCount = lazyUsers != null
+                    ? indexUsers(lazyUsers, applicationRepo, enquiryRepo, officerProjectIds)
+                    : loadUsers(userRepo, applicationRepo, enquiryRepo, buffers, officerProjectIds);
 
             // Load projects
-            int projectCount = loadProjects(projectRepo, userRepo);
+            int projectCount = loadProjects(projectRepo, buffers.get(PROJECT_FILE).rows);
+
+            // Build the lookup maps once, then resolve every reference against them
+            References refs = new References(userRepo, projectRepo);
+            linkManagerProjects(projectRepo, refs);
+            linkOfficerProjects(userRepo, officerProjectIds, refs);
 
             // Load applications
-            int applicationCount = loadApplications(applicationRepo, userRepo, projectRepo);
+            int applicationCount = loadApplications(applicationRepo, refs, buffers.get(APPLICATION_FILE).rows);
 
             // Load enquiries
-            int enquiryCount = loadEnquiries(enquiryRepo, userRepo, projectRepo);
+            int enquiryCount = loadEnquiries(enquiryRepo, refs, buffers.get(ENQUIRY_FILE).rows);
+
+            printLoadTimings(buffers, readNanos, System.nanoTime() - start);
+
+            // Everything loaded so far matches the files
+            markSaved(userRepo, projectRepo, applicationRepo, enquiryRepo);
 
             // If no data was loaded, create default data
+            boolean loaded = true;
             if (userCount == 0 && projectCount == 0) {
                 System.out.println("No data found in CSV files. Creating default data...");
                 createDefaultData(userRepo, projectRepo, applicationRepo, enquiryRepo);
                 // Save the default data to CSV files
                 saveAllData(userRepo, projectRepo, applicationRepo, enquiryRepo);
-                return false; // Return false to indicate default data was created
+                loaded = false; // Return false to indicate default data was created
             }
 
-            return true;
+            // From here on every write goes to the log or the database
+            if (applications != null) {
+                attachApplicationStore(applications, applicationsInCsv, applicationRepo);
+            }
+            if (log != null) {
+                attachWriteAheadLog(log, userRepo, projectRepo, applicationRepo, enquiryRepo);
+            }
+            if (store != null) {
+                attachSqlStore(store, importing, userRepo, projectRepo, applicationRepo, enquiryRepo);
+            }
+
+            return loaded;
         } catch (Exception e) {
             System.err.println("Error loading data: " + e.getMessage());
             e.printStackTrace();
@@ -95,6 +297,28 @@ public class FileHandler {
         }
     }
 
+    /**
+     * Lists the CSV files read on load.
+     * 
+     * @param users        Whether the user files are read
+     * @param applications Whether the application file is read
+     * @return The paths of the files
+     */
+    private static String[] csvFilesToRead(boolean users, boolean applications) {
+        List<String> paths = new ArrayList<>();
+        if (users) {
+            paths.add(APPLICANT_FILE);
+            paths.add(MANAGER_FILE);
+            paths.add(OFFICER_FILE);
+        }
+        paths.add(PROJECT_FILE);
+        if (applications) {
+            paths.add(APPLICATION_FILE);
+        }
+        paths.add(ENQUIRY_FILE);
+        return paths.toArray(new String[0]);
+    }
+
     /**
      * Ensures that the data directory exists for storing files.
      * Creates the directory if it doesn't already exist.
@@ -129,7 +353,7 @@ public class FileHandler {
                 f.createNewFile();
 
                 // Write headers to the new file
-                try (BufferedWriter writer = new BufferedWriter(new FileWriter(f))) {
+                try (BufferedWriter writer = openWriter(f)) {
                     switch (file) {
                         case APPLICANT_FILE:
                             writer.write("ID,Name,Password,Age,MaritalStatus,Income\n");
@@ -156,7 +380,8 @@ public class FileHandler {
                             break;
                         case RECEIPT_FILE:
                             writer.write(
-                                    "ReceiptID,Name,NRIC,Age,MaritalStatus,ProjectID,Neighborhood,Price,FlatType,BookingDate\n");
+                                    "ReceiptID,Name,NRIC,Age,MaritalStatus,ProjectID,Neighborhood,Price,FlatType,BookingDate,"
+                                    + "ApplicationID\n");
                             break;
                     }
                 }
@@ -174,17 +399,45 @@ public class FileHandler {
      */
     public static int loadUsers(UserRepository userRepo, ApplicationRepository applicationRepo,
             EnquiryRepository enquiryRepo) {
+        Map<String, RowBuffer> buffers;
+        try {
+            buffers = readFiles(APPLICANT_FILE, MANAGER_FILE, OFFICER_FILE);
+        } catch (IOException e) {
+            System.err.println("Error loading users: " + e.getMessage());
+            e.printStackTrace();
+
+            // If loading fails, create default users
+            return createDefaultUsers(userRepo, applicationRepo, enquiryRepo);
+        }
+        return loadUsers(userRepo, applicationRepo, enquiryRepo, buffers, new HashMap<>());
+    }
+
+    /**
+     * Loads users from files into the user repository, recording the
+     * handling project ID of each officer so it can be linked once projects
+     * have been loaded.
+     * 
+     * @param userRepo          The user repository to populate
+     * @param applicationRepo   The application repository (for officers)
+     * @param enquiryRepo       The enquiry repository (for officers)
+     * @param buffers           The rows read from the user files
+     * @param officerProjectIds Receives the handling project ID of each officer, keyed by NRIC
+     * @return The number of users loaded
+     */
+    private static int loadUsers(UserRepository userRepo, ApplicationRepository applicationRepo,
+            EnquiryRepository enquiryRepo, Map<String, RowBuffer> buffers, Map<String, String> officerProjectIds) {
         int count = 0;
 
         try {
             // Load Applicants
-            count += loadApplicants(userRepo);
+            count += loadApplicants(userRepo, buffers.get(APPLICANT_FILE).rows);
 
             // Load Managers
-            count += loadManagers(userRepo);
+            count += loadManagers(userRepo, buffers.get(MANAGER_FILE).rows);
 
             // Load Officers
-            count += loadOfficers(userRepo, applicationRepo, enquiryRepo);
+            count += loadOfficers(userRepo, applicationRepo, enquiryRepo, officerProjectIds,
+                    buffers.get(OFFICER_FILE).rows);
 
             return count;
         } catch (Exception e) {
@@ -198,372 +451,596 @@ public class FileHandler {
     }
 
     /**
-     * Load applicants from CSV file
+     * The data rows of one CSV file, read ahead of building any entities so
+     * that the files can be read in parallel.
      */
-    private static int loadApplicants(UserRepository userRepo) throws IOException {
-        int count = 0;
-        File file = new File(APPLICANT_FILE);
-
-        if (!file.exists() || file.length() == 0) {
-            return 0;
-        }
-
-        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
-            // Skip header
-            String header = br.readLine();
-            if (header == null)
-                return 0;
-
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] data = line.split(",");
-                if (data.length < 6)
-                    continue;
-
-                String id = data[0].trim();
-                String name = data[1].trim();
-                String password = data[2].trim();
-                int age = Integer.parseInt(data[3].trim());
-                MaritalStatus status = data[4].trim().equalsIgnoreCase("MARRIED") ? MaritalStatus.MARRIED
-                        : MaritalStatus.SINGLE;
-                double income = Double.parseDouble(data[5].trim());
-
-                Applicant applicant = new Applicant(id, name, password, age, status, name, income);
-                userRepo.add(applicant);
-                count++;
+    private static class RowBuffer {
+        /** Data rows, header excluded */
+        private final List<CsvRecord> rows;
+        /** Time taken to read and split the file */
+        private final long elapsedNanos;
+
+        private RowBuffer(List<CsvRecord> rows, long elapsedNanos) {
+            this.rows = rows;
+            this.elapsedNanos = elapsedNanos;
+        }
+    }
+
+    /**
+     * Reads the data rows of a CSV file, skipping the header.
+     * A missing or empty file gives no rows.
+     * 
+     * @param path The file to read
+     * @return The rows of the file
+     * @throws IOException If the file cannot be read
+     */
+    private static RowBuffer readRows(String path) throws IOException {
+        long start = System.nanoTime();
+        List<CsvRecord> rows = new ArrayList<>();
+        File file = new File(path);
+
+        if (file.exists() && file.length() > 0 && useMappedIngest(path, file.length())) {
+            rows = MappedCsvReader.readAll(file, true, Runtime.getRuntime().availableProcessors());
+        } else if (file.exists() && file.length() > 0) {
+            try (CsvReader reader = new CsvReader(openReader(file))) {
+                // Skip header
+                if (reader.nextRow()) {
+                    while (reader.nextRow()) {
+                        rows.add(reader.copyRow());
+                    }
+                }
+            }
+        }
+
+        return new RowBuffer(rows, System.nanoTime() - start);
+    }
+
+    /**
+     * Decides whether a file is read through {@link MappedCsvReader}. Only the
+     * application and enquiry files, which grow with use, are mapped, and in
+     * auto mode only once they are large enough for chunked parsing to pay off.
+     * 
+     * @param path The file to read
+     * @param length The size of the file in bytes
+     * @return true to memory-map the file
+     */
+    private static boolean useMappedIngest(String path, long length) {
+        if (!path.equals(APPLICATION_FILE) && !path.equals(ENQUIRY_FILE)) {
+            return false;
+        }
+        if ("mmap".equalsIgnoreCase(INGEST_MODE)) {
+            return true;
+        }
+        if ("stream".equalsIgnoreCase(INGEST_MODE)) {
+            return false;
+        }
+        return length >= MAPPED_INGEST_THRESHOLD;
+    }
+
+    /**
+     * Reads several CSV files concurrently, one task per file.
+     * 
+     * @param paths The files to read
+     * @return The rows of each file, keyed by path
+     * @throws IOException If any file cannot be read
+     */
+    private static Map<String, RowBuffer> readFiles(String... paths) throws IOException {
+        int threads = Math.max(1, Math.min(paths.length, Runtime.getRuntime().availableProcessors()));
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            Map<String, Future<RowBuffer>> pending = new LinkedHashMap<>();
+            for (String path : paths) {
+                pending.put(path, pool.submit(() -> readRows(path)));
+            }
+
+            Map<String, RowBuffer> buffers = new LinkedHashMap<>();
+            for (Map.Entry<String, Future<RowBuffer>> entry : pending.entrySet()) {
+                try {
+                    buffers.put(entry.getKey(), entry.getValue().get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while reading " + entry.getKey(), e);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    throw new IOException("Failed to read " + entry.getKey(), e.getCause());
+                }
+            }
+            return buffers;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Prints how long each file took to read and how long linking took.
+     * 
+     * @param buffers   The rows read from each file
+     * @param readNanos Wall-clock time of the parallel read phase
+     * @param linkNanos Time of the single-threaded link phase
+     */
+    private static void printLoadTimings(Map<String, RowBuffer> buffers, long readNanos, long linkNanos) {
+        System.out.printf("Loaded data in %d ms (parallel read %d ms, link %d ms)%n",
+                (readNanos + linkNanos) / 1_000_000, readNanos / 1_000_000, linkNanos / 1_000_000);
+        for (Map.Entry<String, RowBuffer> entry : buffers.entrySet()) {
+            RowBuffer buffer = entry.getValue();
+            long rowsPerSecond = buffer.elapsedNanos == 0 ? 0
+                    : buffer.rows.size() * 1_000_000_000L / buffer.elapsedNanos;
+            System.out.printf("  %-22s %6d rows in %d ms (%d rows/s)%n", entry.getKey().substring(DATA_DIR.length()),
+                    buffer.rows.size(), buffer.elapsedNanos / 1_000_000, rowsPerSecond);
+        }
+    }
+
+    /**
+     * Indexes the user files of a lazy user repository instead of loading
+     * every user. Managers and officers are read right away, since projects
+     * and officer registrations refer to all of them. Applicants are read
+     * when they log in or when an application or enquiry refers to them, and
+     * from then on the ones referred to stay in memory.
+     * 
+     * @return The number of users in the files
+     * @throws IOException If a user file cannot be read
+     */
+    private static int indexUsers(LazyUserRepository userRepo, ApplicationRepository appRepo,
+            EnquiryRepository enqRepo, Map<String, String> officerProjectIds) throws IOException {
+        File applicants = new File(APPLICANT_FILE);
+        File managers = new File(MANAGER_FILE);
+        File officers = new File(OFFICER_FILE);
+        userRepo.open(applicants, managers, officers, (file, row) -> {
+            if (file.equals(managers)) {
+                return parseManager(row);
+            }
+            if (file.equals(officers)) {
+                return parseOfficer(row, appRepo, enqRepo, officerProjectIds);
+            }
+            return parseApplicant(row);
+        });
+
+        for (File file : new File[] { managers, officers }) {
+            for (String id : userRepo.getIndexedIds(file)) {
+                User user = userRepo.getById(id);
+                if (user != null) {
+                    userRepo.retain(user);
+                }
+            }
+        }
+
+        appRepo.addListener(retainApplicant(userRepo, Application::getApplicant));
+        enqRepo.addListener(retainApplicant(userRepo, Enquiry::getApplicant));
+        return userRepo.size();
+    }
+
+    /**
+     * Creates a listener that keeps in memory the applicant each stored
+     * application or enquiry refers to.
+     */
+    private static <T> IRepositoryListener<T> retainApplicant(LazyUserRepository userRepo,
+            Function<T, Applicant> applicantOf) {
+        return new IRepositoryListener<T>() {
+            @Override
+            public void onPut(String id, T item) {
+                Applicant applicant = applicantOf.apply(item);
+                if (applicant != null) {
+                    userRepo.retain(applicant);
+                }
+            }
+
+            @Override
+            public void onDelete(String id, T item) {
+                // The applicant may still be referred to elsewhere, so it stays
             }
+        };
+    }
+
+    /**
+     * Load applicants from the rows of their CSV file
+     */
+    private static int loadApplicants(UserRepository userRepo, List<CsvRecord> rows) {
+        int count = 0;
+        List<Applicant> batch = new ArrayList<>();
+        for (CsvRecord data : rows) {
+            Applicant applicant = parseApplicant(data);
+            if (applicant == null)
+                continue;
+
+            batch.add(applicant);
+            count++;
         }
+        userRepo.addAll(batch);
 
         return count;
     }
 
     /**
-     * Load managers from CSV file
+     * Builds an applicant from a row of the applicant file.
+     * 
+     * @return The applicant, or null if the row is too short
+     */
+    private static Applicant parseApplicant(CsvRecord data) {
+        if (data.size() < 6)
+            return null;
+
+        String id = data.getString(0);
+        String name = data.getString(1);
+        String password = data.getString(2);
+        int age = data.getInt(3);
+        MaritalStatus status = data.equalsIgnoreCase(4, "MARRIED") ? MaritalStatus.MARRIED
+                : MaritalStatus.SINGLE;
+        double income = data.getDouble(5);
+
+        return new Applicant(id, name, password, age, status, name, income);
+    }
+
+    /**
+     * Load managers from the rows of their CSV file
      */
-    private static int loadManagers(UserRepository userRepo) throws IOException {
+    private static int loadManagers(UserRepository userRepo, List<CsvRecord> rows) {
         int count = 0;
-        File file = new File(MANAGER_FILE);
-
-        if (!file.exists() || file.length() == 0) {
-            return 0;
-        }
-
-        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
-            // Skip header
-            String header = br.readLine();
-            if (header == null)
-                return 0;
-
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] data = line.split(",");
-                if (data.length < 6)
-                    continue;
-
-                String id = data[0].trim();
-                String name = data[1].trim();
-                String password = data[2].trim();
-                int age = Integer.parseInt(data[3].trim());
-                MaritalStatus status = data[4].trim().equalsIgnoreCase("MARRIED") ? MaritalStatus.MARRIED
-                        : MaritalStatus.SINGLE;
-                double income = Double.parseDouble(data[5].trim());
-
-                HdbManager manager = new HdbManager(id, name, password, age, status, name, income);
-                userRepo.add(manager);
-                count++;
-            }
+        List<HdbManager> batch = new ArrayList<>();
+        for (CsvRecord data : rows) {
+            HdbManager manager = parseManager(data);
+            if (manager == null)
+                continue;
+
+            batch.add(manager);
+            count++;
         }
+        userRepo.addAll(batch);
 
         return count;
     }
 
     /**
-     * Load officers from CSV file
+     * Builds a manager from a row of the manager file.
+     * 
+     * @return The manager, or null if the row is too short
+     */
+    private static HdbManager parseManager(CsvRecord data) {
+        if (data.size() < 6)
+            return null;
+
+        String id = data.getString(0);
+        String name = data.getString(1);
+        String password = data.getString(2);
+        int age = data.getInt(3);
+        MaritalStatus status = data.equalsIgnoreCase(4, "MARRIED") ? MaritalStatus.MARRIED
+                : MaritalStatus.SINGLE;
+        double income = data.getDouble(5);
+
+        return new HdbManager(id, name, password, age, status, name, income);
+    }
+
+    /**
+     * Load officers from the rows of their CSV file
      */
     private static int loadOfficers(UserRepository userRepo,
             ApplicationRepository appRepo,
-            EnquiryRepository enqRepo) throws IOException {
+            EnquiryRepository enqRepo,
+            Map<String, String> officerProjectIds,
+            List<CsvRecord> rows) {
         int count = 0;
-        File file = new File(OFFICER_FILE);
-
-        if (!file.exists() || file.length() == 0) {
-            return 0;
-        }
-
-        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
-            // Skip header
-            String header = br.readLine();
-            if (header == null)
-                return 0;
-
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] data = line.split(",");
-                if (data.length < 6)
-                    continue; // Need at least 6 fields now
-
-                String id = data[0].trim();
-                String name = data[1].trim();
-                String password = data[2].trim();
-                int age = Integer.parseInt(data[3].trim());
-                MaritalStatus status = data[4].trim().equalsIgnoreCase("MARRIED") ? MaritalStatus.MARRIED
-                        : MaritalStatus.SINGLE;
-
-                // Project ID (might be empty)
-                String handlingProjectID = "";
-                if (data.length > 5) {
-                    handlingProjectID = data[5].trim();
-                }
+        List<HdbOfficer> batch = new ArrayList<>();
+        for (CsvRecord data : rows) {
+            HdbOfficer officer = parseOfficer(data, appRepo, enqRepo, officerProjectIds);
+            if (officer == null)
+                continue;
 
-                // Registration status
-                OfficerRegistrationStatus regStatus = OfficerRegistrationStatus.PENDING;
-                if (data.length > 6) {
-                    String statusStr = data[6].trim();
-                    if (statusStr.equalsIgnoreCase("APPROVED")) {
-                        regStatus = OfficerRegistrationStatus.APPROVED;
-                    } else if (statusStr.equalsIgnoreCase("REJECTED")) {
-                        regStatus = OfficerRegistrationStatus.REJECTED;
-                    }
-                }
+            batch.add(officer);
+            count++;
+        }
+        userRepo.addAll(batch);
+
+        return count;
+    }
+
+    /**
+     * Builds an officer from a row of the officer file, without its handling
+     * project, whose ID is put in the given map to be linked later.
+     * 
+     * @return The officer, or null if the row is too short
+     */
+    private static HdbOfficer parseOfficer(CsvRecord data, ApplicationRepository appRepo,
+            EnquiryRepository enqRepo, Map<String, String> officerProjectIds) {
+        if (data.size() < 6)
+            return null; // Need at least 6 fields now
+
+        String id = data.getString(0);
+        String name = data.getString(1);
+        String password = data.getString(2);
+        int age = data.getInt(3);
+        MaritalStatus status = data.equalsIgnoreCase(4, "MARRIED") ? MaritalStatus.MARRIED
+                : MaritalStatus.SINGLE;
+
+        // Project ID (might be empty)
+        String handlingProjectID = "";
+        if (data.size() > 5) {
+            handlingProjectID = data.getString(5);
+        }
 
-                // Create officer without project reference (will be set later)
-                HdbOfficer officer = new HdbOfficer(id, name, password, age, status, name,
-                        null, null, regStatus, null, appRepo, enqRepo);
-                userRepo.add(officer);
-                count++;
+        // Registration status
+        OfficerRegistrationStatus regStatus = OfficerRegistrationStatus.PENDING;
+        if (data.size() > 6) {
+            String statusStr = data.getString(6);
+            if (statusStr.equalsIgnoreCase("APPROVED")) {
+                regStatus = OfficerRegistrationStatus.APPROVED;
+            } else if (statusStr.equalsIgnoreCase("REJECTED")) {
+                regStatus = OfficerRegistrationStatus.REJECTED;
             }
         }
 
-        return count;
+        // Create officer without project reference (will be set later)
+        HdbOfficer officer = new HdbOfficer(id, name, password, age, status, name,
+                null, null, regStatus, null, appRepo, enqRepo);
+        if (!handlingProjectID.isEmpty()) {
+            officerProjectIds.put(id, handlingProjectID);
+        }
+        return officer;
     }
 
     /**
-     * Load projects from CSV file
+     * Load projects from the rows of their CSV file
      */
-    private static int loadProjects(ProjectRepository projectRepo, UserRepository userRepo) throws IOException {
+    private static int loadProjects(ProjectRepository projectRepo, List<CsvRecord> rows) {
         int count = 0;
-        File file = new File(PROJECT_FILE);
-
-        if (!file.exists() || file.length() == 0) {
-            return 0;
-        }
-
-        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
-            // Skip header
-            String header = br.readLine();
-            if (header == null)
-                return 0;
-
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] data = line.split(",");
-                if (data.length < 14)
-                    continue; // Must have all required fields
-
-                String projectID = data[0].trim();
-                String projectName = data[1].trim();
-                String neighborhood = data[2].trim();
-
-                // Parse flat types
-                String[] flatTypeStrs = data[3].trim().split("\\|");
-                List<FlatType> flatTypeList = new ArrayList<>();
-                for (String type : flatTypeStrs) {
-                    if (type.equalsIgnoreCase("TWO_ROOM")) {
-                        flatTypeList.add(FlatType.TWO_ROOM);
-                    } else if (type.equalsIgnoreCase("THREE_ROOM")) {
-                        flatTypeList.add(FlatType.THREE_ROOM);
-                    }
-                }
-                FlatType[] flatTypes = flatTypeList.toArray(new FlatType[0]);
-
-                double floorCount = Double.parseDouble(data[4].trim());
-                double pricePerFlat = Double.parseDouble(data[5].trim());
-                double thresholdPrice = Double.parseDouble(data[6].trim());
-                String openDate = data[7].trim();
-                String closeDate = data[8].trim();
-                boolean visible = Boolean.parseBoolean(data[9].trim());
-                int officerSlots = Integer.parseInt(data[10].trim());
-                int twoRoomUnits = Integer.parseInt(data[11].trim());
-                int threeRoomUnits = Integer.parseInt(data[12].trim());
-                String managerInCharge = data[13].trim();
-
-                // Create the project
-                Project project = new Project(projectID, neighborhood, flatTypes, floorCount,
-                        pricePerFlat, thresholdPrice, openDate, closeDate,
-                        visible, officerSlots, twoRoomUnits, threeRoomUnits);
-                project.setProjectName(projectName);
-                project.setManagerInCharge(managerInCharge);
-
-                projectRepo.add(project);
-                count++;
-
-                // Find the manager and add this project to their list
-                for (User user : userRepo.getAll()) {
-                    if (user instanceof HdbManager &&
-                            user.getName().equals(managerInCharge)) {
-                        HdbManager manager = (HdbManager) user;
-                        manager.getProjectsCreated().add(project);
-                    }
+        List<Project> batch = new ArrayList<>();
+        for (CsvRecord data : rows) {
+            if (data.size() < 14)
+                continue; // Must have all required fields
+
+            String projectID = data.getString(0);
+            String projectName = data.getString(1);
+            String neighborhood = data.getString(2);
+
+            // Parse flat types
+            String[] flatTypeStrs = data.getString(3).split("\\|");
+            List<FlatType> flatTypeList = new ArrayList<>();
+            for (String type : flatTypeStrs) {
+                if (type.equalsIgnoreCase("TWO_ROOM")) {
+                    flatTypeList.add(FlatType.TWO_ROOM);
+                } else if (type.equalsIgnoreCase("THREE_ROOM")) {
+                    flatTypeList.add(FlatType.THREE_ROOM);
                 }
             }
+            FlatType[] flatTypes = flatTypeList.toArray(new FlatType[0]);
+
+            double floorCount = data.getDouble(4);
+            double pricePerFlat = data.getDouble(5);
+            double thresholdPrice = data.getDouble(6);
+            String openDate = data.getString(7);
+            String closeDate = data.getString(8);
+            boolean visible = data.getBoolean(9);
+            int officerSlots = data.getInt(10);
+            int twoRoomUnits = data.getInt(11);
+            int threeRoomUnits = data.getInt(12);
+            String managerInCharge = data.getString(13);
+
+            // Create the project
+            Project project = new Project(projectID, neighborhood, flatTypes, floorCount,
+                    pricePerFlat, thresholdPrice, openDate, closeDate,
+                    visible, officerSlots, twoRoomUnits, threeRoomUnits);
+            project.setProjectName(projectName);
+            project.setManagerInCharge(managerInCharge);
+
+            batch.add(project);
+            count++;
         }
+        projectRepo.addAll(batch);
 
         return count;
     }
 
     /**
-     * Load applications from CSV file
+     * Lookup maps built once after users and projects have been loaded, so
+     * that references in the remaining files are resolved with a single hash
+     * lookup per row instead of a scan over every user.
      */
-    private static int loadApplications(ApplicationRepository appRepo,
-            UserRepository userRepo,
-            ProjectRepository projectRepo) throws IOException {
-        int count = 0;
-        File file = new File(APPLICATION_FILE);
-
-        if (!file.exists() || file.length() == 0) {
-            return 0;
-        }
-
-        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
-            // Skip header
-            String header = br.readLine();
-            if (header == null)
-                return 0;
-
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] data = line.split(",");
-                if (data.length < 7)
-                    continue;
-
-                String applicationID = data[0].trim();
-                String applicantID = data[1].trim();
-                String projectID = data[2].trim();
-                String applicationDate = data[3].trim();
-                String statusStr = data[4].trim();
-                String flatTypeStr = data[5].trim();
-                boolean withdrawalRequested = Boolean.parseBoolean(data[6].trim());
-
-                // Find the applicant
-                Applicant applicant = null;
-                for (User user : userRepo.getAll()) {
-                    if (user instanceof Applicant && user.getId().equals(applicantID)) {
-                        applicant = (Applicant) user;
-                        break;
+    private static class References {
+        /** Applicants, including managers, keyed by NRIC */
+        private final Map<String, Applicant> applicantsById = new HashMap<>();
+        /** The loaded user repository, for applicants not read yet */
+        private final UserRepository userRepo;
+        /** Managers keyed by name */
+        private final Map<String, List<HdbManager>> managersByName = new HashMap<>();
+        /** Projects keyed by project ID */
+        private final Map<String, Project> projectsById = new HashMap<>();
+
+        /**
+         * Builds the lookup maps from the loaded users and projects.
+         * 
+         * @param userRepo    The loaded user repository
+         * @param projectRepo The loaded project repository
+         */
+        private References(UserRepository userRepo, ProjectRepository projectRepo) {
+            this.userRepo = userRepo;
+            for (Applicant applicant : userRepo.getApplicants()) {
+                applicantsById.put(applicant.getId(), applicant);
+            }
+            for (HdbManager manager : userRepo.getManagers()) {
+                applicantsById.put(manager.getId(), manager);
+                managersByName.computeIfAbsent(manager.getName(), k -> new ArrayList<>()).add(manager);
+            }
+            for (Project project : projectRepo.viewAll()) {
+                projectsById.put(project.getProjectID(), project);
+            }
+        }
+
+        /**
+         * Finds an applicant or manager by NRIC, reading it from the user
+         * repository if it was not in memory when the maps were built.
+         * 
+         * @param id The NRIC
+         * @return The applicant or manager, or null if there is none
+         */
+        private Applicant applicant(String id) {
+            Applicant applicant = applicantsById.get(id);
+            if (applicant == null) {
+                User user = userRepo.getById(id);
+                if (user instanceof Applicant) {
+                    applicant = (Applicant) user;
+                    applicantsById.put(id, applicant);
+                    // Keep it in memory, as the entity about to refer to it cannot be read again
+                    if (userRepo instanceof LazyUserRepository) {
+                        ((LazyUserRepository) userRepo).retain(applicant);
                     }
                 }
+            }
+            return applicant;
+        }
+    }
 
-                // Find the project
-                Project project = projectRepo.getById(projectID);
+    /**
+     * Adds each loaded project to the list of the manager in charge of it.
+     * 
+     * @param projectRepo The loaded project repository
+     * @param refs        The lookup maps
+     */
+    private static void linkManagerProjects(ProjectRepository projectRepo, References refs) {
+        for (Project project : projectRepo.viewAll()) {
+            List<HdbManager> managers = refs.managersByName.get(project.getManagerInCharge());
+            if (managers == null) {
+                continue;
+            }
+            for (HdbManager manager : managers) {
+                manager.getProjectsCreated().add(project);
+            }
+        }
+    }
 
-                if (applicant == null || project == null) {
-                    System.out.println("Skipping application due to missing applicant or project");
-                    continue;
-                }
+    /**
+     * Re-links each officer to the project recorded in the HandlingProjectID column.
+     * 
+     * @param userRepo          The loaded user repository
+     * @param officerProjectIds The handling project ID of each officer, keyed by NRIC
+     * @param refs              The lookup maps
+     */
+    private static void linkOfficerProjects(UserRepository userRepo, Map<String, String> officerProjectIds,
+            References refs) {
+        for (Map.Entry<String, String> entry : officerProjectIds.entrySet()) {
+            User user = userRepo.getById(entry.getKey());
+            if (!(user instanceof HdbOfficer)) {
+                continue;
+            }
+            Project project = refs.projectsById.get(entry.getValue());
+            if (project == null) {
+                System.out.println("Officer " + entry.getKey() + " handles unknown project " + entry.getValue());
+                continue;
+            }
+            ((HdbOfficer) user).setHandlingProject(project);
+        }
+    }
 
-                // Parse flat type
-                FlatType flatType = flatTypeStr.equalsIgnoreCase("THREE_ROOM") ? FlatType.THREE_ROOM
-                        : FlatType.TWO_ROOM;
-
-                // Create the application
-                Application application = new Application(
-                        applicationID, applicant, project, applicationDate, flatType);
-
-                // Set status
-                ApplicationStatus status = ApplicationStatus.PENDING;
-                if (statusStr.equalsIgnoreCase("SUCCESSFUL")) {
-                    status = ApplicationStatus.SUCCESSFUL;
-                } else if (statusStr.equalsIgnoreCase("UNSUCCESSFUL")) {
-                    status = ApplicationStatus.UNSUCCESSFUL;
-                } else if (statusStr.equalsIgnoreCase("BOOKED")) {
-                    status = ApplicationStatus.BOOKED;
-                    // If booked, update applicant's profile
-                    applicant.setBookedFlat(flatType);
-                    applicant.setBookedProject(project);
-                }
-                application.updateStatus(status);
+    /**
+     * Load applications from the rows of their CSV file
+     */
+    private static int loadApplications(ApplicationRepository appRepo, References refs, List<CsvRecord> rows) {
+        int count = 0;
+        List<Application> batch = new ArrayList<>();
+        for (CsvRecord data : rows) {
+            if (data.size() < 7)
+                continue;
+
+            String applicationID = data.getString(0);
+            String applicantID = data.getString(1);
+            String projectID = data.getString(2);
+            String applicationDate = data.getString(3);
+            String statusStr = data.getString(4);
+            String flatTypeStr = data.getString(5);
+            boolean withdrawalRequested = data.getBoolean(6);
+
+            // Find the applicant and project
+            Applicant applicant = refs.applicant(applicantID);
+            Project project = refs.projectsById.get(projectID);
+
+            if (applicant == null || project == null) {
+                System.out.println("Skipping application due to missing applicant or project");
+                continue;
+            }
 
-                // Set withdrawal request if applicable
-                if (withdrawalRequested) {
-                    application.requestWithdrawal();
-                }
+            // Parse flat type
+            FlatType flatType = flatTypeStr.equalsIgnoreCase("THREE_ROOM") ? FlatType.THREE_ROOM
+                    : FlatType.TWO_ROOM;
+
+            // Create the application
+            Application application = new Application(
+                    applicationID, applicant, project, applicationDate, flatType);
+
+            // Set status
+            ApplicationStatus status = ApplicationStatus.PENDING;
+            if (statusStr.equalsIgnoreCase("SUCCESSFUL")) {
+                status = ApplicationStatus.SUCCESSFUL;
+            } else if (statusStr.equalsIgnoreCase("UNSUCCESSFUL")) {
+                status = ApplicationStatus.UNSUCCESSFUL;
+            } else if (statusStr.equalsIgnoreCase("BOOKED")) {
+                status = ApplicationStatus.BOOKED;
+                // If booked, update applicant's profile
+                applicant.setBookedFlat(flatType);
+                applicant.setBookedProject(project);
+            }
+            application.updateStatus(status);
 
-                appRepo.add(application);
-                count++;
+            // Set withdrawal request if applicable
+            if (withdrawalRequested) {
+                application.requestWithdrawal();
             }
+
+            batch.add(application);
+            count++;
         }
+        appRepo.addAll(batch);
 
         return count;
     }
 
     /**
-     * Load enquiries from CSV file
+     * Load enquiries from the rows of their CSV file
      */
-    private static int loadEnquiries(EnquiryRepository enquiryRepo,
-            UserRepository userRepo,
-            ProjectRepository projectRepo) throws IOException {
+    private static int loadEnquiries(EnquiryRepository enquiryRepo, References refs, List<CsvRecord> rows) {
         int count = 0;
-        File file = new File(ENQUIRY_FILE);
-
-        if (!file.exists() || file.length() == 0) {
-            return 0;
-        }
-
-        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
-            // Skip header
-            String header = br.readLine();
-            if (header == null)
-                return 0;
-
-            String line;
-            while ((line = br.readLine()) != null) {
-                // Handle commas within quoted message content
-                List<String> data = parseCSVLine(line);
-                if (data.size() < 6)
-                    continue;
-
-                String enquiryID = data.get(0).trim();
-                String projectID = data.get(1).trim();
-                String applicantID = data.get(2).trim();
-                String message = data.get(3).trim();
-                String response = data.get(4).trim();
-                String statusStr = data.get(5).trim();
-
-                // Find the applicant
-                Applicant applicant = null;
-                for (User user : userRepo.getAll()) {
-                    if (user instanceof Applicant && user.getId().equals(applicantID)) {
-                        applicant = (Applicant) user;
-                        break;
-                    }
-                }
-
-                // Find the project
-                Project project = projectRepo.getById(projectID);
-
-                if (applicant == null || project == null) {
-                    System.out.println("Skipping enquiry due to missing applicant or project");
-                    continue;
-                }
-
-                // Create the enquiry
-                Enquiry enquiry = new Enquiry(enquiryID, project, applicant, message);
+        List<Enquiry> batch = new ArrayList<>();
+        for (CsvRecord data : rows) {
+            if (data.size() < 6)
+                continue;
+
+            String enquiryID = data.getString(0);
+            String projectID = data.getString(1);
+            String applicantID = data.getString(2);
+            String message = data.getString(3);
+            String response = data.getString(4);
+            String statusStr = data.getString(5);
+
+            // Find the applicant and project
+            Applicant applicant = refs.applicant(applicantID);
+            Project project = refs.projectsById.get(projectID);
+
+            if (applicant == null || project == null) {
+                System.out.println("Skipping enquiry due to missing applicant or project");
+                continue;
+            }
 
-                // Set status and response if applicable
-                if (statusStr.equalsIgnoreCase("REPLIED") && !response.isEmpty() && !response.equals("null")) {
-                    enquiry.reply(response);
-                }
+            // Create the enquiry
+            Enquiry enquiry = new Enquiry(enquiryID, project, applicant, message);
 
-                enquiryRepo.add(enquiry);
-                count++;
+            // Set status and response if applicable
+            if (statusStr.equalsIgnoreCase("REPLIED") && !response.isEmpty() && !response.equals("null")) {
+                enquiry.reply(response);
             }
+
+            batch.add(enquiry);
+            count++;
         }
+        enquiryRepo.addAll(batch);
 
         return count;
     }
 
     /**
      * Saves all data from the system repositories to files.
+     * Only the files that hold an entity added, changed or deleted since the
+     * last save are written, and in those files the rows of unchanged
+     * entities are copied over as they are instead of being formatted again.
+     * If saving fails, the changes are kept so that the next save retries them.
+     * Saves from different sessions run one at a time.
      * 
      * @param userRepo    The user repository to save
      * @param projectRepo The project repository to save
@@ -573,216 +1050,982 @@ public class FileHandler {
      */
     public static boolean saveAllData(UserRepository userRepo, ProjectRepository projectRepo,
             ApplicationRepository appRepo, EnquiryRepository enquiryRepo) {
-        try {
-            // Save users (applicants, managers, officers)
-            saveApplicants(userRepo);
-            saveManagers(userRepo);
-            saveOfficers(userRepo);
-
-            // Save projects
-            saveProjects(projectRepo);
+        if (logWriter != null) {
+            // Every write is already queued for the log; only wait for it to reach the disk
+            markSaved(userRepo, projectRepo, appRepo, enquiryRepo);
+            return awaitLogWriter() && syncApplicationStore();
+        }
+        if (sqlStore != null) {
+            // Every write is already committed as it is made; only retry writes that failed
+            markSaved(userRepo, projectRepo, appRepo, enquiryRepo);
+            return commitSqlStore();
+        }
 
-            // Save applications
-            saveApplications(appRepo);
+        // One save at a time: each takes its own changes and rewrites the same files
+        synchronized (SAVE_LOCK) {
+            ChangeSet<User> userChanges = userRepo.takeChanges();
+            ChangeSet<Project> projectChanges = projectRepo.takeChanges();
+            ChangeSet<Application> applicationChanges = appRepo.takeChanges();
+            ChangeSet<Enquiry> enquiryChanges = enquiryRepo.takeChanges();
+            try {
+                // Save users (applicants, managers, officers)
+                saveApplicants(userRepo, userChanges);
+                saveManagers(userRepo, userChanges);
+                saveOfficers(userRepo, userChanges);
+
+                // Save projects
+                saveProjects(projectRepo, projectChanges);
+
+                // Save applications, unless they are kept in their own store
+                if (applicationStore == null) {
+                    saveApplications(appRepo, applicationChanges);
+                } else {
+                    applicationStore.sync();
+                }
 
-            // Save enquiries
-            saveEnquiries(enquiryRepo);
+                // Save enquiries
+                saveEnquiries(enquiryRepo, enquiryChanges);
+
+                return true;
+            } catch (IOException e) {
+                System.err.println("Error saving data: " + e.getMessage());
+                e.printStackTrace();
+                userRepo.restoreChanges(userChanges);
+                projectRepo.restoreChanges(projectChanges);
+                appRepo.restoreChanges(applicationChanges);
+                enquiryRepo.restoreChanges(enquiryChanges);
+                return false;
+            }
+        }
+    }
 
+    /**
+     * Writes a binary snapshot of all data, which the next startup loads
+     * instead of the CSV files as long as no file in the data directory has
+     * changed after it. The CSV files are not touched and remain the format
+     * for importing and exporting data. No snapshot is written while users
+     * are read on demand.
+     * 
+     * @param userRepo    The user repository to save
+     * @param projectRepo The project repository to save
+     * @param appRepo     The application repository to save
+     * @param enquiryRepo The enquiry repository to save
+     * @return true if the snapshot was written, false otherwise
+     */
+    public static boolean saveSnapshot(UserRepository userRepo, ProjectRepository projectRepo,
+            ApplicationRepository appRepo, EnquiryRepository enquiryRepo) {
+        if (userRepo instanceof LazyUserRepository) {
+            // Users not read yet would be missing from the snapshot
+            return false;
+        }
+        try {
+            BinarySnapshot.write(new File(SNAPSHOT_FILE), userRepo, projectRepo, appRepo, enquiryRepo);
             return true;
         } catch (IOException e) {
-            System.err.println("Error saving data: " + e.getMessage());
-            e.printStackTrace();
+            System.err.println("Error saving snapshot: " + e.getMessage());
             return false;
         }
     }
 
     /**
-     * Save applicants to CSV file
+     * Checks whether the snapshot exists and is newer than every other file
+     * in the data directory, including the CSV files and the write-ahead log.
+     * Receipts are not part of the snapshot, so the receipt file is ignored.
+     * 
+     * @return true if the snapshot holds the latest data
      */
-    private static void saveApplicants(UserRepository userRepo) throws IOException {
-        List<User> users = userRepo.getAll();
-        List<Applicant> applicants = new ArrayList<>();
-
-        // Filter to get only applicants
-        for (User user : users) {
-            if (user instanceof Applicant && !(user instanceof HdbManager) && !(user instanceof HdbOfficer)) {
-                applicants.add((Applicant) user);
+    private static boolean isSnapshotCurrent() {
+        File snapshot = new File(SNAPSHOT_FILE);
+        if (!snapshot.isFile()) {
+            return false;
+        }
+        long taken = snapshot.lastModified();
+        File[] files = new File(DATA_DIR).listFiles();
+        if (files == null) {
+            return false;
+        }
+        File receipts = new File(RECEIPT_FILE);
+        for (File file : files) {
+            if (!file.equals(snapshot) && !file.equals(receipts) && file.lastModified() >= taken) {
+                return false;
             }
         }
+        return true;
+    }
+
+    /**
+     * Loads all data from the binary snapshot, leaving the repositories
+     * untouched if the snapshot cannot be used.
+     * 
+     * @return true if the snapshot was loaded
+     * @throws IOException If the snapshot or the write-ahead log cannot be opened
+     */
+    private static boolean loadSnapshot(UserRepository userRepo, ProjectRepository projectRepo,
+            ApplicationRepository appRepo, EnquiryRepository enquiryRepo) throws IOException {
+        long start = System.nanoTime();
+        if (!BinarySnapshot.read(new File(SNAPSHOT_FILE), userRepo, projectRepo, appRepo, enquiryRepo)) {
+            return false;
+        }
+        linkManagerProjects(projectRepo, new References(userRepo, projectRepo));
+        markSaved(userRepo, projectRepo, appRepo, enquiryRepo);
+        System.out.printf("Loaded data from snapshot in %d ms%n", (System.nanoTime() - start) / 1_000_000);
+
+        // The snapshot already includes every logged write, so the log is opened without replaying it
+        if ("wal".equalsIgnoreCase(PERSISTENCE_MODE)) {
+            attachWriteAheadLog(openWriteAheadLog(), userRepo, projectRepo, appRepo, enquiryRepo);
+        }
+        return true;
+    }
+
+    /**
+     * Gets the ledger of issued receipts, opening it if data has not been
+     * loaded yet.
+     * 
+     * @return The receipt ledger
+     * @throws IOException If the receipt file cannot be read or opened
+     */
+    public static synchronized ReceiptLedger getReceiptLedger() throws IOException {
+        if (receiptLedger == null) {
+            ensureDataDirectoryExists();
+            receiptLedger = new ReceiptLedger(new File(RECEIPT_FILE));
+        }
+        return receiptLedger;
+    }
 
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(APPLICANT_FILE))) {
-            // Write header
-            writer.write("ID,Name,Password,Age,MaritalStatus,Income\n");
+    /**
+     * Opens the receipt ledger, closing the ledger of any earlier load.
+     * 
+     * @throws IOException If the receipt file cannot be read or opened
+     */
+    private static synchronized void openReceiptLedger() throws IOException {
+        if (receiptLedger != null) {
+            receiptLedger.close();
+            receiptLedger = null;
+        }
+        ReceiptLedger ledger = getReceiptLedger();
+        if (ledger.size() > 0) {
+            System.out.println("Loaded " + ledger.size() + " receipts");
+        }
+    }
 
-            // Write data
-            for (Applicant applicant : applicants) {
-                writer.write(
-                        applicant.getId() + "," +
-                                applicant.getName() + "," +
-                                applicant.getPassword() + "," +
-                                applicant.getAge() + "," +
-                                applicant.getMaritalStatus() + "," +
-                                applicant.getIncomeRange() + "\n");
+    /**
+     * Waits until every change made so far has been persisted. Operations
+     * that must not be confirmed to the user before they are safely stored,
+     * such as booking a flat, call this before reporting success.
+     * <p>
+     * In log mode this waits for the background writer to commit and force
+     * every queued write, without waiting for the flush interval. In SQL mode
+     * it retries any write the database has not stored yet, and fails while
+     * one cannot be stored. In CSV mode it saves the changed
+     * files of the repositories that were loaded.
+     * 
+     * @return true if the changes are persisted, false if they could not be
+     *         persisted in time
+     */
+    public static boolean awaitDurable() {
+        if (logWriter != null) {
+            return awaitLogWriter() && syncApplicationStore();
+        }
+        if (sqlStore != null) {
+            return commitSqlStore();
+        }
+        BooleanSupplier save = saveLoadedData;
+        return save == null || save.getAsBoolean();
+    }
+
+    /**
+     * Persists the writes of a committed unit of work as one batch.
+     * <p>
+     * In log mode the writes are queued together, so the background writer
+     * puts them in one frame of the log, and then forced to the disk. In SQL
+     * mode they are stored in one database transaction of their own. In CSV
+     * mode the changed files are saved once for the whole batch.
+     * 
+     * @param publish Records the writes and reports them to the repository listeners
+     * @return true if the writes are persisted, false if they could not be
+     *         persisted in time
+     */
+    public static boolean commitBatch(Runnable publish) {
+        SqlStore store = sqlStore;
+        if (store != null) {
+            List<SqlStore.Row> writes = new ArrayList<>();
+            STORE_BATCH.set(writes);
+            try {
+                publish.run();
+            } finally {
+                STORE_BATCH.remove();
             }
+            try {
+                store.write(writes);
+                return true;
+            } catch (SQLException e) {
+                System.err.println("Error saving data: " + e.getMessage());
+                return false;
+            }
+        }
+        GroupCommitWriter writer = logWriter;
+        if (writer == null) {
+            publish.run();
+            return awaitDurable();
         }
+        List<WriteAheadLog.Entry> batch = new ArrayList<>();
+        LOG_BATCH.set(batch);
+        try {
+            publish.run();
+        } finally {
+            LOG_BATCH.remove();
+        }
+        writer.submitAll(batch);
+        return awaitDurable();
     }
 
     /**
-     * Save managers to CSV file
+     * Waits for the background writer to force every queued write to the disk.
+     */
+    private static boolean awaitLogWriter() {
+        try {
+            if (logWriter.awaitDurable(DURABILITY_TIMEOUT)) {
+                return true;
+            }
+            System.err.println("Error saving data: timed out waiting for the log to reach the disk");
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Forgets the changes made while loading, so that the first save after
+     * startup only writes what was changed afterwards.
      */
-    private static void saveManagers(UserRepository userRepo) throws IOException {
-        List<User> users = userRepo.getAll();
-        List<HdbManager> managers = new ArrayList<>();
+    private static void markSaved(UserRepository userRepo, ProjectRepository projectRepo,
+            ApplicationRepository appRepo, EnquiryRepository enquiryRepo) {
+        userRepo.takeChanges();
+        projectRepo.takeChanges();
+        appRepo.takeChanges();
+        enquiryRepo.takeChanges();
+    }
 
-        // Filter to get only managers
-        for (User user : users) {
-            if (user instanceof HdbManager) {
-                managers.add((HdbManager) user);
+    /**
+     * Applies logged writes to the rows read from the CSV files, so that the
+     * loaders see the data as it was when the last write was logged. A put
+     * replaces the row with the same ID where it stands, or adds it at the
+     * end; a delete removes it.
+     * 
+     * @param buffers The rows of each file, keyed by path
+     * @param entries The logged writes, oldest first
+     * @throws IOException If a logged row cannot be parsed
+     */
+    private static void replayLog(Map<String, RowBuffer> buffers, List<WriteAheadLog.Entry> entries)
+            throws IOException {
+        Map<String, Map<String, CsvRecord>> tables = new LinkedHashMap<>();
+        for (WriteAheadLog.Entry entry : entries) {
+            RowBuffer buffer = buffers.get(DATA_DIR + entry.getFile());
+            if (buffer == null) {
+                continue;
+            }
+            Map<String, CsvRecord> rows = tables.computeIfAbsent(DATA_DIR + entry.getFile(), path -> {
+                Map<String, CsvRecord> byId = new LinkedHashMap<>();
+                for (CsvRecord row : buffer.rows) {
+                    byId.put(row.getString(0), row);
+                }
+                return byId;
+            });
+            if (entry.isDelete()) {
+                rows.remove(entry.getId());
+                continue;
+            }
+            try (CsvReader reader = new CsvReader(new StringReader(entry.getRow()))) {
+                if (reader.nextRow()) {
+                    rows.put(entry.getId(), reader.copyRow());
+                }
             }
         }
 
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(MANAGER_FILE))) {
-            // Write header
-            writer.write("ID,Name,Password,Age,MaritalStatus,Income\n");
+        for (Map.Entry<String, Map<String, CsvRecord>> table : tables.entrySet()) {
+            List<CsvRecord> rows = buffers.get(table.getKey()).rows;
+            rows.clear();
+            rows.addAll(table.getValue().values());
+        }
+        if (!entries.isEmpty()) {
+            System.out.println("Replayed " + entries.size() + " logged writes");
+        }
+    }
+
+    /**
+     * Starts logging every write to the repositories and compacting the log
+     * in the background.
+     */
+    private static void attachWriteAheadLog(WriteAheadLog log, UserRepository userRepo,
+            ProjectRepository projectRepo, ApplicationRepository appRepo, EnquiryRepository enquiryRepo) {
+        writeAheadLog = log;
+        GroupCommitWriter writer = new GroupCommitWriter(log, WAL_FLUSH_INTERVAL, WAL_BATCH_SIZE,
+                Boolean.getBoolean("bto.wal.fsync"));
+        logWriter = writer;
+        userRepo.addListener(logWrites(writer, FileHandler::userFile, FileHandler::formatUser));
+        projectRepo.addListener(logWrites(writer, project -> PROJECT_FILE, FileHandler::formatProject));
+        if (applicationStore == null) {
+            appRepo.addListener(logWrites(writer, app -> APPLICATION_FILE, FileHandler::formatApplication));
+        }
+        enquiryRepo.addListener(logWrites(writer, enquiry -> ENQUIRY_FILE, FileHandler::formatEnquiry));
+        log.startCompaction(WAL_COMPACT_INTERVAL, WAL_COMPACT_THRESHOLD);
+    }
 
-            // Write data
-            for (HdbManager manager : managers) {
-                writer.write(
-                        manager.getId() + "," +
-                                manager.getName() + "," +
-                                manager.getPassword() + "," +
-                                manager.getAge() + "," +
-                                manager.getMaritalStatus() + "," +
-                                manager.getIncomeRange() + "\n");
+    /**
+     * Opens the write-ahead log, first closing the log and writer of any
+     * earlier load so that their queued writes are committed.
+     * 
+     * @return The opened log
+     * @throws IOException If the log cannot be opened
+     */
+    private static WriteAheadLog openWriteAheadLog() throws IOException {
+        if (logWriter != null) {
+            logWriter.close();
+            logWriter = null;
+        }
+        if (writeAheadLog != null) {
+            writeAheadLog.close();
+            writeAheadLog = null;
+        }
+        // The background writer decides when to force the log to the disk
+        return new WriteAheadLog(new File(DATA_DIR), false);
+    }
+
+    /**
+     * Creates a repository listener that queues every write for the log.
+     * The row is formatted when the write is made, so the log records the
+     * entity as it was at that moment.
+     * 
+     * @param <T> The entity type of the repository
+     * @param writer The background writer to queue the writes on
+     * @param fileOf Gives the CSV file an entity is saved in, or null if it is not saved
+     * @param format Formats an entity as a CSV row
+     * @return The listener
+     */
+    private static <T> IRepositoryListener<T> logWrites(GroupCommitWriter writer, Function<? super T, String> fileOf,
+            Function<? super T, String> format) {
+        return new IRepositoryListener<T>() {
+            @Override
+            public void onPut(String id, T item) {
+                String path = fileOf.apply(item);
+                if (path != null) {
+                    submitToLog(writer, WriteAheadLog.Entry.put(new File(path).getName(), id, format.apply(item)));
+                }
+            }
+
+            @Override
+            public void onDelete(String id, T item) {
+                String path = fileOf.apply(item);
+                if (path != null) {
+                    submitToLog(writer, WriteAheadLog.Entry.delete(new File(path).getName(), id));
+                }
             }
+        };
+    }
+
+    /**
+     * Queues a log entry, or holds it back for the batch of the unit of work
+     * being committed on this thread.
+     */
+    private static void submitToLog(GroupCommitWriter writer, WriteAheadLog.Entry entry) {
+        List<WriteAheadLog.Entry> batch = LOG_BATCH.get();
+        if (batch != null) {
+            batch.add(entry);
+        } else {
+            writer.submit(entry);
         }
     }
 
     /**
-     * Save officers to CSV file
+     * Opens the log-structured application store, first closing the store
+     * of any earlier load. If the store cannot be opened, applications are
+     * kept in the CSV file instead.
+     * 
+     * @return The opened store, or null if it could not be opened
+     */
+    private static LsmStore openApplicationStore() {
+        try {
+            if (applicationStore != null) {
+                applicationStore.close();
+                applicationStore = null;
+            }
+            return new LsmStore(new File(DATA_DIR, "applications"), LSM_MEMTABLE_BYTES, LSM_COMPACT_SEGMENTS);
+        } catch (IOException e) {
+            System.err.println("Could not open application store (" + e.getMessage()
+                    + "); using " + APPLICATION_FILE + " instead");
+            return null;
+        }
+    }
+
+    /**
+     * Reads every application row from the application store, in order of
+     * application ID.
+     * 
+     * @param applications The application store
+     * @return The rows
+     * @throws IOException If the store cannot be read or a row cannot be parsed
      */
-    private static void saveOfficers(UserRepository userRepo) throws IOException {
-        List<User> users = userRepo.getAll();
-        List<HdbOfficer> officers = new ArrayList<>();
+    private static RowBuffer readApplicationStore(LsmStore applications) throws IOException {
+        long start = System.nanoTime();
+        List<CsvRecord> rows = new ArrayList<>();
+        for (String text : applications.readAll().values()) {
+            try (CsvReader reader = new CsvReader(new StringReader(text))) {
+                if (reader.nextRow()) {
+                    rows.add(reader.copyRow());
+                }
+            }
+        }
+        return new RowBuffer(rows, System.nanoTime() - start);
+    }
 
-        // Filter to get only officers
-        for (User user : users) {
-            if (user instanceof HdbOfficer) {
-                officers.add((HdbOfficer) user);
+    /**
+     * Starts writing every application write to the application store. A
+     * new store is first filled with the applications loaded from the CSV
+     * file. An update whose row matches the one the store already holds is
+     * not written again, so repeated saves of an unchanged application do
+     * not grow the store.
+     */
+    private static void attachApplicationStore(LsmStore applications, boolean importing, ApplicationRepository appRepo)
+            throws IOException {
+        if (importing) {
+            for (Application app : appRepo.viewAll()) {
+                applications.put(app.getApplicationId(), formatApplication(app));
             }
+            applications.sync();
+            System.out.println("Imported " + appRepo.size() + " applications into the application store");
         }
+        applicationStore = applications;
+        appRepo.addListener(new IRepositoryListener<Application>() {
+            @Override
+            public void onPut(String id, Application item) {
+                try {
+                    applications.putIfChanged(id, formatApplication(item));
+                } catch (IOException e) {
+                    // The store keeps the write and logs it again when synced
+                    System.err.println("Error writing to application store, will retry: " + e.getMessage());
+                }
+            }
 
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(OFFICER_FILE))) {
-            // Write header
-            writer.write("ID,Name,Password,Age,MaritalStatus,HandlingProjectID,RegistrationStatus\n");
-
-            // Write data
-            for (HdbOfficer officer : officers) {
-                String handlingProjectID = (officer.getHandlingProject() != null)
-                        ? officer.getHandlingProject().getProjectID()
-                        : "";
-
-                writer.write(
-                        officer.getId() + "," +
-                                officer.getName() + "," +
-                                officer.getPassword() + "," +
-                                officer.getAge() + "," +
-                                officer.getMaritalStatus() + "," +
-                                handlingProjectID + "," +
-                                officer.getRegistrationStatus() + "\n");
+            @Override
+            public void onDelete(String id, Application item) {
+                try {
+                    applications.delete(id);
+                } catch (IOException e) {
+                    // The store keeps the write and logs it again when synced
+                    System.err.println("Error writing to application store, will retry: " + e.getMessage());
+                }
             }
+        });
+    }
+
+    /**
+     * Forces the application store's recent writes to the disk, if
+     * applications are kept there, first logging again any write that
+     * failed.
+     *
+     * @return true if every application write is on the disk
+     */
+    private static boolean syncApplicationStore() {
+        if (applicationStore == null) {
+            return true;
+        }
+        try {
+            applicationStore.sync();
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error saving data: " + e.getMessage());
+            return false;
         }
     }
 
     /**
-     * Save projects to CSV file
+     * Opens the embedded database, first closing the database of any earlier
+     * load. If the database cannot be opened, for example because its JDBC
+     * driver is not on the class path, the CSV files are used instead.
+     * 
+     * @return The opened database, or null if it could not be opened
+     */
+    private static SqlStore openSqlStore() {
+        if (sqlStore != null) {
+            sqlStore.close();
+            sqlStore = null;
+        }
+        try {
+            return new SqlStore(SQL_URL, System.getProperty("bto.sql.user", ""),
+                    System.getProperty("bto.sql.password", ""));
+        } catch (SQLException e) {
+            System.err.println("Could not open database " + SQL_URL + " (" + e.getMessage()
+                    + "); using CSV files instead");
+            return null;
+        }
+    }
+
+    /**
+     * Reads the rows of each data file from the database.
+     * 
+     * @param store The database
+     * @param paths The data files to read
+     * @return The rows of each file, keyed by path
+     * @throws IOException If the database cannot be read or a row cannot be parsed
      */
-    private static void saveProjects(ProjectRepository projectRepo) throws IOException {
-        List<Project> projects = projectRepo.getAll();
-
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(PROJECT_FILE))) {
-            // Write header
-            writer.write("ProjectID,ProjectName,Neighborhood,FlatTypes,FloorCount,PricePerFlat,ThresholdPrice," +
-                    "OpenDate,CloseDate,Visible,OfficerSlots,TwoRoomUnits,ThreeRoomUnits,ManagerInCharge\n");
-
-            // Write data
-            for (Project project : projects) {
-                // Convert flat types to a pipe-separated string
-                StringBuilder flatTypesStr = new StringBuilder();
-                for (int i = 0; i < project.getFlatType().length; i++) {
-                    if (i > 0)
-                        flatTypesStr.append("|");
-                    flatTypesStr.append(project.getFlatType()[i].toString());
+    private static Map<String, RowBuffer> readStore(SqlStore store, String... paths) throws IOException {
+        Map<String, RowBuffer> buffers = new LinkedHashMap<>();
+        for (String path : paths) {
+            long start = System.nanoTime();
+            List<CsvRecord> rows = new ArrayList<>();
+            try {
+                for (String text : store.readRows(new File(path).getName())) {
+                    try (CsvReader reader = new CsvReader(new StringReader(text))) {
+                        if (reader.nextRow()) {
+                            rows.add(reader.copyRow());
+                        }
+                    }
                 }
+            } catch (SQLException e) {
+                throw new IOException("Failed to read " + path + " from the database", e);
+            }
+            buffers.put(path, new RowBuffer(rows, System.nanoTime() - start));
+        }
+        return buffers;
+    }
 
-                writer.write(
-                        project.getProjectID() + "," +
-                                project.getProjectName() + "," +
-                                project.getNeighborhood() + "," +
-                                flatTypesStr.toString() + "," +
-                                project.getFloorCount() + "," +
-                                project.getPricePerFlat() + "," +
-                                project.getThresholdPrice() + "," +
-                                project.getApplicationOpenDate() + "," +
-                                project.getApplicationCloseDate() + "," +
-                                project.isVisible() + "," +
-                                project.getAvailableOfficerSlots() + "," +
-                                project.getTwoRoomUnitsAvailable() + "," +
-                                project.getThreeRoomUnitsAvailable() + "," +
-                                project.getManagerInCharge() + "\n");
+    /**
+     * Starts writing every write to the repositories to the database, and
+     * lets SQL-backed repositories query it. A new database is first filled
+     * with everything that was loaded from the CSV files.
+     */
+    private static void attachSqlStore(SqlStore store, boolean importing, UserRepository userRepo,
+            ProjectRepository projectRepo, ApplicationRepository appRepo, EnquiryRepository enquiryRepo)
+            throws IOException {
+        if (importing) {
+            try {
+                List<SqlStore.Row> rows = new ArrayList<>();
+                for (User user : userRepo.viewAll()) {
+                    SqlStore.Row row = userRow(user);
+                    if (row != null) {
+                        rows.add(row);
+                    }
+                }
+                for (Project project : projectRepo.viewAll()) {
+                    rows.add(projectRow(project));
+                }
+                for (Application app : appRepo.viewAll()) {
+                    rows.add(applicationRow(app));
+                }
+                for (Enquiry enquiry : enquiryRepo.viewAll()) {
+                    rows.add(enquiryRow(enquiry));
+                }
+                store.write(rows);
+                System.out.println("Imported " + rows.size() + " rows from the CSV files into the database");
+            } catch (SQLException e) {
+                store.close();
+                throw new IOException("Failed to import data into the database", e);
             }
         }
+        sqlStore = store;
+        userRepo.addListener(storeWrites(store, FileHandler::userRow));
+        projectRepo.addListener(storeWrites(store, FileHandler::projectRow));
+        appRepo.addListener(storeWrites(store, FileHandler::applicationRow));
+        enquiryRepo.addListener(storeWrites(store, FileHandler::enquiryRow));
+        if (appRepo instanceof SqlApplicationRepository) {
+            ((SqlApplicationRepository) appRepo).attach(store);
+        }
+        if (enquiryRepo instanceof SqlEnquiryRepository) {
+            ((SqlEnquiryRepository) enquiryRepo).attach(store);
+        }
     }
 
     /**
-     * Save applications to CSV file
+     * Creates a repository listener that writes every write to the database.
+     * A write made outside a unit of work is committed on its own; the
+     * writes of a unit of work being committed are held back and stored
+     * together. A write that cannot be stored is kept by the store and
+     * retried, and durability barriers fail until it has been stored; one
+     * the database rejects is reported and dropped instead.
+     * 
+     * @param <T> The entity type of the repository
+     * @param store The database
+     * @param rowOf Gives the database row of an entity, or null if it is not saved
+     * @return The listener
      */
-    private static void saveApplications(ApplicationRepository appRepo) throws IOException {
-        List<Application> applications = appRepo.getAll();
-
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(APPLICATION_FILE))) {
-            // Write header
-            writer.write("ApplicationID,ApplicantID,ProjectID,ApplicationDate,Status,FlatType,WithdrawalRequested\n");
-
-            // Write data
-            for (Application app : applications) {
-                writer.write(
-                        app.getApplicationId() + "," +
-                                app.getApplicant().getId() + "," +
-                                app.getProject().getProjectID() + "," +
-                                app.getApplicationDate() + "," +
-                                app.getStatus() + "," +
-                                app.getSelectedFlatType() + "," +
-                                app.isWithdrawalRequested() + "\n");
+    private static <T> IRepositoryListener<T> storeWrites(SqlStore store, Function<? super T, SqlStore.Row> rowOf) {
+        return new IRepositoryListener<T>() {
+            @Override
+            public void onPut(String id, T item) {
+                SqlStore.Row row = rowOf.apply(item);
+                if (row != null) {
+                    submitToStore(store, row);
+                }
+            }
+
+            @Override
+            public void onDelete(String id, T item) {
+                SqlStore.Row row = rowOf.apply(item);
+                if (row != null) {
+                    submitToStore(store, SqlStore.Row.delete(row.getFile(), id));
+                }
             }
+        };
+    }
+
+    /**
+     * Stores a database write, or holds it back for the batch of the unit of
+     * work being committed on this thread.
+     */
+    private static void submitToStore(SqlStore store, SqlStore.Row row) {
+        List<SqlStore.Row> batch = STORE_BATCH.get();
+        if (batch != null) {
+            batch.add(row);
+            return;
+        }
+        try {
+            store.write(Collections.singletonList(row));
+        } catch (SQLException e) {
+            // The store keeps the write to retry, unless the database rejects it
+            System.err.println("Error writing to database: " + e.getMessage());
         }
     }
 
+    /**
+     * Stores any database writes that failed before, reporting a failure.
+     */
+    private static boolean commitSqlStore() {
+        try {
+            sqlStore.flush();
+            return true;
+        } catch (SQLException e) {
+            System.err.println("Error saving data: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Gets the database row of a user, or null if the user is not saved.
+     */
+    private static SqlStore.Row userRow(User user) {
+        String path = userFile(user);
+        return path == null ? null : new SqlStore.Row(new File(path).getName(), user.getId(), formatUser(user));
+    }
+
+    /**
+     * Gets the database row of a project.
+     */
+    private static SqlStore.Row projectRow(Project project) {
+        return new SqlStore.Row(new File(PROJECT_FILE).getName(), project.getProjectID(), formatProject(project));
+    }
+
+    /**
+     * Gets the database row of an application.
+     */
+    private static SqlStore.Row applicationRow(Application app) {
+        return new SqlStore.Row(new File(APPLICATION_FILE).getName(), app.getApplicationId(), formatApplication(app))
+                .withKeys(app.getApplicant().getId(), app.getProject().getProjectID(), String.valueOf(app.getStatus()));
+    }
+
+    /**
+     * Gets the database row of an enquiry.
+     */
+    private static SqlStore.Row enquiryRow(Enquiry enquiry) {
+        return new SqlStore.Row(new File(ENQUIRY_FILE).getName(), enquiry.getEnquiryId(), formatEnquiry(enquiry))
+                .withKeys(enquiry.getApplicant().getId(), enquiry.getProject().getProjectID(),
+                        String.valueOf(enquiry.getStatus()));
+    }
+
+    /**
+     * Gets the CSV file a user is saved in.
+     */
+    private static String userFile(User user) {
+        if (user instanceof HdbManager) {
+            return MANAGER_FILE;
+        } else if (user instanceof HdbOfficer) {
+            return OFFICER_FILE;
+        } else if (user instanceof Applicant) {
+            return APPLICANT_FILE;
+        }
+        return null;
+    }
+
+    /**
+     * Formats a user as a row of the file for their role.
+     */
+    private static String formatUser(User user) {
+        if (user instanceof HdbOfficer) {
+            return formatOfficer((HdbOfficer) user);
+        }
+        return formatApplicant((Applicant) user);
+    }
+
+    /**
+     * Save applicants to CSV file
+     */
+    private static void saveApplicants(UserRepository userRepo, ChangeSet<User> changes) throws IOException {
+        saveFile(APPLICANT_FILE, "ID,Name,Password,Age,MaritalStatus,Income\n",
+                userRepo.getApplicants(), changes,
+                user -> user instanceof Applicant && !(user instanceof HdbManager),
+                user -> formatApplicant((Applicant) user));
+    }
+
+    /**
+     * Save managers to CSV file
+     */
+    private static void saveManagers(UserRepository userRepo, ChangeSet<User> changes) throws IOException {
+        saveFile(MANAGER_FILE, "ID,Name,Password,Age,MaritalStatus,Income\n",
+                userRepo.getManagers(), changes,
+                user -> user instanceof HdbManager,
+                user -> formatApplicant((HdbManager) user));
+    }
+
+    /**
+     * Save officers to CSV file
+     */
+    private static void saveOfficers(UserRepository userRepo, ChangeSet<User> changes) throws IOException {
+        saveFile(OFFICER_FILE, "ID,Name,Password,Age,MaritalStatus,HandlingProjectID,RegistrationStatus\n",
+                userRepo.getOfficers(), changes,
+                user -> user instanceof HdbOfficer,
+                user -> formatOfficer((HdbOfficer) user));
+    }
+
+    /**
+     * Save projects to CSV file
+     */
+    private static void saveProjects(ProjectRepository projectRepo, ChangeSet<Project> changes) throws IOException {
+        saveFile(PROJECT_FILE,
+                "ProjectID,ProjectName,Neighborhood,FlatTypes,FloorCount,PricePerFlat,ThresholdPrice," +
+                        "OpenDate,CloseDate,Visible,OfficerSlots,TwoRoomUnits,ThreeRoomUnits,ManagerInCharge\n",
+                projectRepo.viewAll(), changes, project -> true, FileHandler::formatProject);
+    }
+
+    /**
+     * Save applications to CSV file
+     */
+    private static void saveApplications(ApplicationRepository appRepo, ChangeSet<Application> changes)
+            throws IOException {
+        saveFile(APPLICATION_FILE,
+                "ApplicationID,ApplicantID,ProjectID,ApplicationDate,Status,FlatType,WithdrawalRequested\n",
+                appRepo.viewAll(), changes, app -> true, FileHandler::formatApplication);
+    }
+
     /**
      * Save enquiries to CSV file
      */
-    private static void saveEnquiries(EnquiryRepository enquiryRepo) throws IOException {
-        List<Enquiry> enquiries = enquiryRepo.getAll();
-
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(ENQUIRY_FILE))) {
-            // Write header
-            writer.write("EnquiryID,ProjectID,ApplicantID,Message,Response,Status\n");
-
-            // Write data
-            for (Enquiry enquiry : enquiries) {
-                // Escape commas in message and response
-                String message = escapeCSV(enquiry.getMessage());
-                String response = enquiry.getResponse() != null ? escapeCSV(enquiry.getResponse()) : "";
-
-                writer.write(
-                        enquiry.getEnquiryId() + "," +
-                                enquiry.getProject().getProjectID() + "," +
-                                enquiry.getApplicant().getId() + "," +
-                                message + "," +
-                                response + "," +
-                                enquiry.getStatus() + "\n");
+    private static void saveEnquiries(EnquiryRepository enquiryRepo, ChangeSet<Enquiry> changes) throws IOException {
+        saveFile(ENQUIRY_FILE, "EnquiryID,ProjectID,ApplicantID,Message,Response,Status\n",
+                enquiryRepo.viewAll(), changes, enquiry -> true, FileHandler::formatEnquiry);
+    }
+
+    /**
+     * Writes one CSV file, doing as little work as the changes allow.
+     * <ul>
+     * <li>If the file exists and none of the changes belong to it, it is not
+     * touched at all.</li>
+     * <li>If the file does not exist, every entity is formatted and written.</li>
+     * <li>Otherwise the existing rows are streamed into a new file: rows of
+     * deleted entities are dropped, rows of changed entities are formatted
+     * again, all other rows are copied as they are, and added entities are
+     * written at the end. The new file then replaces the old one.</li>
+     * </ul>
+     * 
+     * @param <T> The entity type of the repository
+     * @param path The file to write
+     * @param header The header row, including its line break
+     * @param all Every entity that belongs in the file
+     * @param changes The changes since the last save
+     * @param belongs Whether an entity belongs in this file
+     * @param format Formats an entity as a CSV row, including its line break
+     * @throws IOException If the file cannot be read or written
+     */
+    private static <T> void saveFile(String path, String header, Collection<? extends T> all,
+            ChangeSet<T> changes, Predicate<? super T> belongs, Function<? super T, String> format)
+            throws IOException {
+        File file = new File(path);
+        if (file.exists() && !changes.touches(belongs)) {
+            return;
+        }
+
+        File temp = new File(path + ".tmp");
+        try (BufferedWriter writer = openWriter(temp)) {
+            writer.write(header);
+
+            if (!file.exists()) {
+                for (T item : all) {
+                    writer.write(format.apply(item));
+                }
+            } else {
+                Map<String, T> added = changes.getAdded();
+                Map<String, T> updated = changes.getUpdated();
+                Map<String, T> deleted = changes.getDeleted();
+
+                try (CsvReader reader = new CsvReader(openReader(file))) {
+                    reader.retainRawText();
+                    // Skip header
+                    if (reader.nextRow()) {
+                        while (reader.nextRow()) {
+                            String id = reader.getRow().getString(0);
+                            if (deleted.containsKey(id) || added.containsKey(id)) {
+                                continue;
+                            }
+                            T item = updated.get(id);
+                            if (item != null) {
+                                writer.write(format.apply(item));
+                            } else {
+                                reader.writeRawText(writer);
+                            }
+                        }
+                    }
+                }
+
+                for (T item : added.values()) {
+                    if (belongs.test(item)) {
+                        writer.write(format.apply(item));
+                    }
+                }
             }
         }
+
+        replaceFile(temp, file);
+    }
+
+    /**
+     * Opens a text file for reading. Every text file is read and written as
+     * UTF-8, whatever the platform's default encoding, as the memory-mapped
+     * reader and the receipt ledger decode them.
+     * 
+     * @param file The file to read
+     * @return A reader decoding the file as UTF-8
+     * @throws IOException If the file cannot be opened
+     */
+    static Reader openReader(File file) throws IOException {
+        return new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Creates or empties a text file and opens it for writing as UTF-8.
+     * 
+     * @param file The file to write
+     * @return A buffered writer encoding to UTF-8
+     * @throws IOException If the file cannot be opened
+     */
+    static BufferedWriter openWriter(File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Moves a newly written file over the file it replaces, atomically where
+     * the file system allows it, so that readers see either the old or the
+     * new contents and never a partly written file.
+     * 
+     * @param source The newly written file
+     * @param target The file to replace
+     * @throws IOException If the file cannot be moved
+     */
+    static void replaceFile(File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Forces a directory's entries to disk, so that files moved into it by
+     * {@link #replaceFile} survive a power loss. Platforms that cannot open a
+     * directory for syncing, such as Windows, are skipped.
+     * 
+     * @param dir The directory to sync
+     */
+    static void syncDirectory(File dir) {
+        try (FileChannel channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Directories cannot be synced on this platform
+        }
+    }
+
+    /**
+     * Formats an applicant or manager as a row of the applicant or manager file.
+     */
+    private static String formatApplicant(Applicant applicant) {
+        return formatRow(applicant.getId(),
+                applicant.getName(),
+                applicant.getPassword(),
+                applicant.getAge(),
+                applicant.getMaritalStatus(),
+                applicant.getIncomeRange());
+    }
+
+    /**
+     * Formats an officer as a row of the officer file.
+     */
+    private static String formatOfficer(HdbOfficer officer) {
+        String handlingProjectID = (officer.getHandlingProject() != null)
+                ? officer.getHandlingProject().getProjectID()
+                : "";
+
+        return formatRow(officer.getId(),
+                officer.getName(),
+                officer.getPassword(),
+                officer.getAge(),
+                officer.getMaritalStatus(),
+                handlingProjectID,
+                officer.getRegistrationStatus());
+    }
+
+    /**
+     * Formats a project as a row of the project file.
+     */
+    private static String formatProject(Project project) {
+        // Convert flat types to a pipe-separated string
+        StringBuilder flatTypesStr = new StringBuilder();
+        for (int i = 0; i < project.getFlatType().length; i++) {
+            if (i > 0)
+                flatTypesStr.append("|");
+            flatTypesStr.append(project.getFlatType()[i].toString());
+        }
+
+        return formatRow(project.getProjectID(),
+                project.getProjectName(),
+                project.getNeighborhood(),
+                flatTypesStr.toString(),
+                project.getFloorCount(),
+                project.getPricePerFlat(),
+                project.getThresholdPrice(),
+                project.getApplicationOpenDate(),
+                project.getApplicationCloseDate(),
+                project.isVisible(),
+                project.getUnfilledOfficerSlots(),
+                project.getTwoRoomUnitsAvailable(),
+                project.getThreeRoomUnitsAvailable(),
+                project.getManagerInCharge());
+    }
+
+    /**
+     * Formats an application as a row of the application file.
+     */
+    private static String formatApplication(Application app) {
+        return formatRow(app.getApplicationId(),
+                app.getApplicant().getId(),
+                app.getProject().getProjectID(),
+                app.getApplicationDate(),
+                app.getStatus(),
+                app.getSelectedFlatType(),
+                app.isWithdrawalRequested());
+    }
+
+    /**
+     * Formats an enquiry as a row of the enquiry file.
+     */
+    private static String formatEnquiry(Enquiry enquiry) {
+        String message = enquiry.getMessage() != null ? enquiry.getMessage() : "";
+        String response = enquiry.getResponse() != null ? enquiry.getResponse() : "";
+
+        return formatRow(enquiry.getEnquiryId(),
+                enquiry.getProject().getProjectID(),
+                enquiry.getApplicant().getId(),
+                message,
+                response,
+                enquiry.getStatus());
     }
 
     /**
@@ -958,15 +2201,13 @@ public class FileHandler {
             HdbManager manager2 = null;
             HdbManager manager3 = null;
 
-            for (User user : userRepo.getAll()) {
-                if (user instanceof HdbManager) {
-                    if (manager1 == null) {
-                        manager1 = (HdbManager) user;
-                    } else if (manager2 == null) {
-                        manager2 = (HdbManager) user;
-                    } else if (manager3 == null) {
-                        manager3 = (HdbManager) user;
-                    }
+            for (HdbManager manager : userRepo.getManagers()) {
+                if (manager1 == null) {
+                    manager1 = manager;
+                } else if (manager2 == null) {
+                    manager2 = manager;
+                } else if (manager3 == null) {
+                    manager3 = manager;
                 }
             }
 
@@ -1057,40 +2298,32 @@ public class FileHandler {
     }
 
     /**
-     * Parse a CSV line, handling quoted content with commas
+     * Formats fields as one CSV row ending in a newline, escaping each field
+     * so that the row reads back the same through {@link CsvReader}. A null
+     * field is written as "null", as the loaders expect.
+     *
+     * @param fields The fields of the row
+     * @return The row
      */
-    private static List<String> parseCSVLine(String line) {
-        List<String> result = new ArrayList<>();
-        boolean inQuotes = false;
-        StringBuilder field = new StringBuilder();
-
-        for (int i = 0; i < line.length(); i++) {
-            char c = line.charAt(i);
-
-            if (c == '"') {
-                inQuotes = !inQuotes;
-            } else if (c == ',' && !inQuotes) {
-                result.add(field.toString());
-                field = new StringBuilder();
-            } else {
-                field.append(c);
+    static String formatRow(Object... fields) {
+        StringBuilder row = new StringBuilder();
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                row.append(',');
             }
+            row.append(escapeCSV(String.valueOf(fields[i])));
         }
-
-        // Add the last field
-        result.add(field.toString());
-
-        return result;
+        return row.append('\n').toString();
     }
 
     /**
      * Escape CSV content (wrap in quotes if it contains commas)
      */
-    private static String escapeCSV(String input) {
+    static String escapeCSV(String input) {
         if (input == null)
             return "";
 
-        if (input.contains(",") || input.contains("\"") || input.contains("\n")) {
+        if (input.contains(",") || input.contains("\"") || input.contains("\n") || input.contains("\r")) {
             // Replace all quotes with double quotes
             String escaped = input.replace("\"", "\"\"");
             // Wrap in quotes
@@ -1107,27 +2340,12 @@ public class FileHandler {
      * @return A string summarizing the number of users by type
      */
     public static String getUserSummary(UserRepository userRepo) {
-        List<User> users = userRepo.getAll();
-        int managerCount = 0;
-        int officerCount = 0;
-        int applicantCount = 0;
-
-        for (User user : users) {
-            if (user instanceof HdbManager) {
-                managerCount++;
-            } else if (user instanceof HdbOfficer) {
-                officerCount++;
-            } else if (user instanceof Applicant) {
-                applicantCount++;
-            }
-        }
-
         StringBuilder sb = new StringBuilder();
         sb.append("User Summary:\n");
-        sb.append("Total Users: ").append(users.size()).append("\n");
-        sb.append("Managers: ").append(managerCount).append("\n");
-        sb.append("Officers: ").append(officerCount).append("\n");
-        sb.append("Applicants: ").append(applicantCount);
+        sb.append("Total Users: ").append(userRepo.size()).append("\n");
+        sb.append("Managers: ").append(userRepo.getManagerCount()).append("\n");
+        sb.append("Officers: ").append(userRepo.getOfficerCount()).append("\n");
+        sb.append("Applicants: ").append(userRepo.getApplicantCount());
 
         return sb.toString();
     }
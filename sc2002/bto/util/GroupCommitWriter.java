@@ -0,0 +1,267 @@
+package sc2002.bto.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Background writer that collects log entries from every session and
+ * appends them to a {@link WriteAheadLog} in group commits.
+ * <p>
+ * Submitting an entry only queues it, so repository writes never wait for
+ * the disk. A single writer thread appends everything queued as one frame
+ * once the oldest queued entry has waited for the flush interval, once the
+ * queue reaches the batch size, or as soon as a session asks for a
+ * {@link #awaitDurable(long) durability barrier}. Groups written for a
+ * barrier are always forced to the disk; other groups are forced only if
+ * the writer was created to force every group.
+ * <p>
+ * If a group cannot be written, its entries are put back at the front of the
+ * queue and retried with the next group, so nothing is dropped and entries
+ * stay in the order they were submitted.
+ *
+ */
+public class GroupCommitWriter implements Closeable {
+    /** Time to wait before retrying a group that could not be written */
+    private static final long RETRY_DELAY_MILLIS = 1000;
+
+    /** The log the groups are appended to */
+    private final WriteAheadLog log;
+    /** Longest time an entry waits in the queue before its group is written */
+    private final long flushIntervalMillis;
+    /** Number of queued entries that triggers a group commit right away */
+    private final int batchSize;
+    /** Whether every group is forced to the disk, not only barrier groups */
+    private final boolean forceEveryGroup;
+    /** Guards the queue and the sequence numbers */
+    private final Object lock = new Object();
+    /** Entries waiting to be written, in submission order */
+    private List<WriteAheadLog.Entry> pending = new ArrayList<>();
+    /** When the oldest pending entry was submitted */
+    private long oldestPendingMillis;
+    /** Number of entries submitted so far */
+    private long submitted;
+    /** Number of submitted entries that have been written */
+    private long written;
+    /** Number of submitted entries that have been forced to the disk */
+    private long durable;
+    /** Highest entry number a waiting barrier needs on disk */
+    private long barrierTarget;
+    /** Set once {@link #close()} has been called */
+    private boolean closed;
+    /** Thread writing the groups */
+    private final Thread writer;
+
+    /**
+     * Creates a writer and starts its background thread.
+     *
+     * @param log The log to append to
+     * @param flushIntervalMillis The longest time an entry waits before being written
+     * @param batchSize The number of queued entries that are written without waiting
+     * @param forceEveryGroup true to force every group to the disk, false to
+     *                        force only groups written for a barrier
+     * @throws IllegalArgumentException If the interval is negative or the batch size is not positive
+     */
+    public GroupCommitWriter(WriteAheadLog log, long flushIntervalMillis, int batchSize, boolean forceEveryGroup) {
+        if (flushIntervalMillis < 0 || batchSize <= 0) {
+            throw new IllegalArgumentException("Flush interval must not be negative and batch size must be positive");
+        }
+        this.log = log;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.batchSize = batchSize;
+        this.forceEveryGroup = forceEveryGroup;
+        this.writer = new Thread(this::run, "wal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queues an entry for the next group commit.
+     *
+     * @param entry The entry to write
+     * @throws IllegalStateException If the writer has been closed
+     */
+    public void submit(WriteAheadLog.Entry entry) {
+        synchronized (lock) {
+            if (closed) {
+                throw new IllegalStateException("Writer is closed");
+            }
+            if (pending.isEmpty()) {
+                oldestPendingMillis = System.currentTimeMillis();
+            }
+            pending.add(entry);
+            submitted++;
+            if (pending.size() == 1 || pending.size() >= batchSize) {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Queues several entries together. They are always written in the same
+     * group, and so in the same frame of the log, however large the batch.
+     *
+     * @param entries The entries to write
+     * @throws IllegalStateException If the writer has been closed
+     */
+    public void submitAll(List<WriteAheadLog.Entry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        synchronized (lock) {
+            if (closed) {
+                throw new IllegalStateException("Writer is closed");
+            }
+            if (pending.isEmpty()) {
+                oldestPendingMillis = System.currentTimeMillis();
+            }
+            pending.addAll(entries);
+            submitted += entries.size();
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Waits until every entry submitted so far, by any session, has been
+     * written and forced to the disk. The pending group is written right
+     * away rather than at the end of the flush interval.
+     *
+     * @param timeoutMillis The longest time to wait
+     * @return true if everything submitted before the call is on disk, false
+     *         if the timeout passed first
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    public boolean awaitDurable(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (lock) {
+            long target = submitted;
+            if (durable >= target) {
+                return true;
+            }
+            barrierTarget = Math.max(barrierTarget, target);
+            lock.notifyAll();
+            while (durable < target) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                lock.wait(remaining);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Gets the number of entries waiting to be written.
+     *
+     * @return The size of the queue
+     */
+    public int getPendingCount() {
+        synchronized (lock) {
+            return pending.size();
+        }
+    }
+
+    /**
+     * Writes everything still queued, forces it to the disk and stops the
+     * writer thread. The log itself is left open.
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes groups until the writer is closed and the queue is empty.
+     */
+    private void run() {
+        while (true) {
+            List<WriteAheadLog.Entry> group;
+            long groupEnd;
+            boolean force;
+            synchronized (lock) {
+                try {
+                    while (!isGroupReady()) {
+                        if (pending.isEmpty()) {
+                            lock.wait();
+                        } else {
+                            lock.wait(Math.max(1, oldestPendingMillis + flushIntervalMillis
+                                    - System.currentTimeMillis()));
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    closed = true;
+                }
+                if (closed && pending.isEmpty() && durable >= written) {
+                    return;
+                }
+                group = pending;
+                pending = new ArrayList<>();
+                groupEnd = submitted;
+                force = forceEveryGroup || closed || barrierTarget > durable;
+            }
+
+            try {
+                log.append(group);
+                if (force) {
+                    log.sync();
+                }
+                synchronized (lock) {
+                    written = groupEnd;
+                    if (force) {
+                        durable = groupEnd;
+                    }
+                    lock.notifyAll();
+                }
+            } catch (IOException e) {
+                System.err.println("Error writing to log: " + e.getMessage());
+                // The log has cut off any part of the group that reached it, so the retry starts a clean frame
+                synchronized (lock) {
+                    group.addAll(pending);
+                    pending = group;
+                    oldestPendingMillis = System.currentTimeMillis();
+                    if (closed) {
+                        // Nobody is left to retry; the entries are lost with the process
+                        lock.notifyAll();
+                        return;
+                    }
+                }
+                try {
+                    Thread.sleep(RETRY_DELAY_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    synchronized (lock) {
+                        closed = true;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks whether the next group should be written now. Called with the
+     * lock held.
+     *
+     * @return true if the writer has work to do
+     */
+    private boolean isGroupReady() {
+        if (closed || barrierTarget > durable) {
+            return true;
+        }
+        if (pending.isEmpty()) {
+            return false;
+        }
+        return pending.size() >= batchSize
+                || System.currentTimeMillis() - oldestPendingMillis >= flushIntervalMillis;
+    }
+}
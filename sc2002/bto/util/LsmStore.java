@@ -0,0 +1,886 @@
+package sc2002.bto.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+
+/**
+ * Log-structured merge store mapping string keys to string values.
+ * <p>
+ * Writes go to an in-memory memtable, sorted by key, and are appended to a
+ * memtable log so that they survive a restart. When the memtable grows past
+ * a size limit it is written out as an immutable segment file with its
+ * records sorted by key, and the log is emptied. A delete is stored as a
+ * tombstone that hides older values of the key until compaction drops it.
+ * <p>
+ * Each segment ends with a sparse index, holding the key and offset of every
+ * {@value #INDEX_INTERVAL}th record, and a Bloom filter over all of its keys.
+ * Both are kept in memory, so a point lookup checks the memtable, then each
+ * segment from newest to oldest, skipping segments whose Bloom filter rules
+ * the key out and reading a single block of the others.
+ * <p>
+ * Each record of the memtable log carries a CRC-32 of its bytes, so a record
+ * torn by a crash is dropped on replay rather than read as a write. A write
+ * that cannot be logged is still applied to the memtable, and is logged
+ * again by {@link #sync()}, which fails until it is.
+ * <p>
+ * Once there are enough segments, a background thread merges them into one,
+ * keeping only the newest value of each key and dropping tombstones. New
+ * writes and lookups continue while it runs.
+ *
+ */
+public class LsmStore implements Closeable {
+    /** Marks a segment file ("LSMS") */
+    private static final int MAGIC = 0x4C534D53;
+    /** Version of the segment format */
+    private static final int VERSION = 1;
+    /** Size of the segment header: magic, version and compaction flag */
+    private static final int HEADER_SIZE = 9;
+    /** Record type for a value */
+    private static final byte PUT = 1;
+    /** Record type for a tombstone */
+    private static final byte DELETE = 2;
+    /** Prefix of segment file names */
+    private static final String SEGMENT_PREFIX = "seg-";
+    /** Suffix of segment file names */
+    private static final String SEGMENT_SUFFIX = ".sst";
+    /** Number of records between sparse index entries */
+    private static final int INDEX_INTERVAL = 64;
+    /** Bloom filter bits per key, giving about a 1% false positive rate */
+    private static final int BLOOM_BITS_PER_KEY = 10;
+    /** Number of hash functions of the Bloom filters */
+    private static final int BLOOM_HASHES = 7;
+    /** Marks a memtable log whose records carry a checksum ("LSML") */
+    private static final int LOG_MAGIC = 0x4C534D4C;
+    /** Size of the length and checksum before each memtable log record */
+    private static final int LOG_RECORD_HEADER = 8;
+    /** Longest key or value accepted when replaying the memtable log */
+    private static final int MAX_LOGGED_STRING = 1 << 26;
+    /** Stands for a tombstone in the memtable, which cannot hold null */
+    private static final String TOMBSTONE = new String("\u0000deleted");
+
+    /**
+     * An immutable segment file with its sparse index and Bloom filter.
+     */
+    private static final class Segment {
+        /** Number of the segment; higher numbers hold newer records */
+        private final long number;
+        /** The segment file */
+        private final File file;
+        /** Open channel for positional reads */
+        private final FileChannel channel;
+        /** Keys of the indexed records */
+        private final String[] indexKeys;
+        /** Offsets of the indexed records */
+        private final long[] indexOffsets;
+        /** Offset just past the last record */
+        private final long recordsEnd;
+        /** Bloom filter over every key in the segment */
+        private final BloomFilter bloom;
+        /** Whether the segment was written by compaction and replaces every older segment */
+        private final boolean compacted;
+
+        private Segment(long number, File file, FileChannel channel, String[] indexKeys, long[] indexOffsets,
+                long recordsEnd, BloomFilter bloom, boolean compacted) {
+            this.number = number;
+            this.file = file;
+            this.channel = channel;
+            this.indexKeys = indexKeys;
+            this.indexOffsets = indexOffsets;
+            this.recordsEnd = recordsEnd;
+            this.bloom = bloom;
+            this.compacted = compacted;
+        }
+    }
+
+    /**
+     * Bloom filter over string keys, using double hashing of a 64-bit hash.
+     */
+    private static final class BloomFilter {
+        /** The filter bits */
+        private final long[] words;
+
+        private BloomFilter(int keyCount) {
+            this.words = new long[Math.max(1, (keyCount * BLOOM_BITS_PER_KEY + 63) / 64)];
+        }
+
+        private BloomFilter(long[] words) {
+            this.words = words;
+        }
+
+        private void add(String key) {
+            long hash = hash(key);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            long bits = words.length * 64L;
+            for (int i = 0; i < BLOOM_HASHES; i++) {
+                long bit = ((h1 + i * h2) & 0x7FFFFFFFL) % bits;
+                words[(int) (bit >>> 6)] |= 1L << bit;
+            }
+        }
+
+        private boolean mightContain(String key) {
+            long hash = hash(key);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            long bits = words.length * 64L;
+            for (int i = 0; i < BLOOM_HASHES; i++) {
+                long bit = ((h1 + i * h2) & 0x7FFFFFFFL) % bits;
+                if ((words[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** 64-bit FNV-1a hash of the key's characters */
+        private static long hash(String key) {
+            long hash = 0xcbf29ce484222325L;
+            for (int i = 0; i < key.length(); i++) {
+                hash ^= key.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+            return hash;
+        }
+    }
+
+    /** Directory holding the segments and the memtable log */
+    private final File dir;
+    /** Size of the memtable, in bytes of keys and values, that triggers a flush */
+    private final long memtableLimit;
+    /** Number of segments that triggers a compaction */
+    private final int compactionTrigger;
+    /** Guards writes, flushes and the segment list */
+    private final Object writeLock = new Object();
+    /** Recent writes, sorted by key */
+    private volatile ConcurrentSkipListMap<String, String> memtable = new ConcurrentSkipListMap<>();
+    /** Approximate size of the memtable in bytes */
+    private long memtableBytes;
+    /** Appender for the memtable log */
+    private DataOutputStream log;
+    /** Stream under {@link #log}, for forcing it to the disk */
+    private FileOutputStream logOut;
+    /** Length of the memtable log up to the end of its last complete record */
+    private long logLength;
+    /** Writes that could not be logged, by key, waiting to be logged again */
+    private final Map<String, String> unlogged = new LinkedHashMap<>();
+    /** Segments, oldest first; replaced rather than changed */
+    private volatile List<Segment> segments = Collections.emptyList();
+    /** Segments replaced by compaction, closed when the store is closed */
+    private final List<Segment> retired = new ArrayList<>();
+    /** Number for the next segment */
+    private long nextSegment = 1;
+    /** Thread running compactions */
+    private final ExecutorService compactor;
+    /** Whether a compaction is queued or running */
+    private boolean compacting;
+
+    /**
+     * Opens a store, loading the segments in the directory and replaying
+     * the memtable log.
+     *
+     * @param dir The directory to keep the store in; created if missing
+     * @param memtableLimit The memtable size in bytes at which it is written to a segment
+     * @param compactionTrigger The number of segments at which they are merged
+     * @throws IOException If the store cannot be opened
+     * @throws IllegalArgumentException If a limit is not positive
+     */
+    public LsmStore(File dir, long memtableLimit, int compactionTrigger) throws IOException {
+        if (memtableLimit <= 0 || compactionTrigger < 2) {
+            throw new IllegalArgumentException("Memtable limit must be positive and compaction trigger at least 2");
+        }
+        this.dir = dir;
+        this.memtableLimit = memtableLimit;
+        this.compactionTrigger = compactionTrigger;
+        Files.createDirectories(dir.toPath());
+
+        List<Segment> opened = new ArrayList<>();
+        File[] files = dir.listFiles((d, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (files != null) {
+            Arrays.sort(files);
+            for (File file : files) {
+                String number = file.getName().substring(SEGMENT_PREFIX.length(),
+                        file.getName().length() - SEGMENT_SUFFIX.length());
+                Segment segment = openSegment(Long.parseLong(number), file);
+                nextSegment = Math.max(nextSegment, segment.number + 1);
+                if (segment.compacted) {
+                    // A compaction finished writing but may not have deleted the segments it merged
+                    for (Segment merged : opened) {
+                        merged.channel.close();
+                        Files.deleteIfExists(merged.file.toPath());
+                    }
+                    opened.clear();
+                }
+                opened.add(segment);
+            }
+        }
+        segments = Collections.unmodifiableList(opened);
+
+        replayLog();
+        openLog(false);
+
+        compactor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "lsm-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Gets the value of a key.
+     *
+     * @param key The key
+     * @return The value, or null if the key has no value
+     * @throws IOException If a segment cannot be read
+     */
+    public String get(String key) throws IOException {
+        String value = memtable.get(key);
+        if (value != null) {
+            return value == TOMBSTONE ? null : value;
+        }
+        List<Segment> current = segments;
+        for (int i = current.size() - 1; i >= 0; i--) {
+            Segment segment = current.get(i);
+            if (!segment.bloom.mightContain(key)) {
+                continue;
+            }
+            Record record = find(segment, key);
+            if (record != null) {
+                return record.type == DELETE ? null : record.value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Sets the value of a key.
+     *
+     * @param key The key
+     * @param value The value
+     * @throws IOException If the write cannot be logged or the memtable cannot be flushed
+     */
+    public void put(String key, String value) throws IOException {
+        write(key, value);
+    }
+
+    /**
+     * Sets the value of a key unless it already has that value, which a
+     * point lookup finds without reading whole segments. If the current
+     * value cannot be read, the value is written anyway.
+     *
+     * @param key The key
+     * @param value The value
+     * @return true if the value was written
+     * @throws IOException If the write cannot be logged or the memtable cannot be flushed
+     */
+    public boolean putIfChanged(String key, String value) throws IOException {
+        String current;
+        try {
+            current = get(key);
+        } catch (IOException e) {
+            current = null;
+        }
+        if (value.equals(current)) {
+            return false;
+        }
+        write(key, value);
+        return true;
+    }
+
+    /**
+     * Removes the value of a key.
+     *
+     * @param key The key
+     * @throws IOException If the write cannot be logged or the memtable cannot be flushed
+     */
+    public void delete(String key) throws IOException {
+        write(key, TOMBSTONE);
+    }
+
+    /**
+     * Reads every key that has a value.
+     *
+     * @return The values keyed and sorted by key
+     * @throws IOException If a segment cannot be read
+     */
+    public NavigableMap<String, String> readAll() throws IOException {
+        NavigableMap<String, String> merged = new TreeMap<>();
+        ConcurrentSkipListMap<String, String> table;
+        List<Segment> current;
+        synchronized (writeLock) {
+            table = memtable;
+            current = segments;
+        }
+        for (Segment segment : current) {
+            readSegment(segment, (key, type, value) -> {
+                if (type == DELETE) {
+                    merged.remove(key);
+                } else {
+                    merged.put(key, value);
+                }
+            });
+        }
+        for (Map.Entry<String, String> entry : table.entrySet()) {
+            if (entry.getValue() == TOMBSTONE) {
+                merged.remove(entry.getKey());
+            } else {
+                merged.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Checks whether the store has never been written to.
+     *
+     * @return true if there are no segments and the memtable is empty
+     */
+    public boolean isEmpty() {
+        return segments.isEmpty() && memtable.isEmpty();
+    }
+
+    /**
+     * Gets the number of segment files.
+     *
+     * @return The number of segments
+     */
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Logs again the writes that could not be logged, then forces the
+     * memtable log to the disk.
+     *
+     * @throws IOException If a write still cannot be logged, or the log
+     *         cannot be written
+     */
+    public void sync() throws IOException {
+        synchronized (writeLock) {
+            for (Map.Entry<String, String> write : new ArrayList<>(unlogged.entrySet())) {
+                write(write.getKey(), write.getValue());
+            }
+            log.flush();
+            logOut.getChannel().force(false);
+        }
+    }
+
+    /**
+     * Writes the memtable to a new segment and empties the memtable log.
+     * Writes that could not be logged are in the segment, so they need not
+     * be logged again.
+     *
+     * @throws IOException If the segment cannot be written
+     */
+    public void flush() throws IOException {
+        synchronized (writeLock) {
+            if (memtable.isEmpty()) {
+                return;
+            }
+            writeMemtable();
+            unlogged.clear();
+            log.close();
+            openLog(true);
+
+            if (segments.size() >= compactionTrigger && !compacting) {
+                compacting = true;
+                compactor.execute(this::compactInBackground);
+            }
+        }
+    }
+
+    /**
+     * Merges every segment into one, keeping only the newest value of each
+     * key and dropping tombstones. Writes made while this runs go to the
+     * memtable and to segments flushed later, which are kept.
+     *
+     * @throws IOException If a segment cannot be read or written
+     */
+    public void compact() throws IOException {
+        List<Segment> merging;
+        long number;
+        synchronized (writeLock) {
+            merging = segments;
+            if (merging.size() < 2) {
+                return;
+            }
+            number = nextSegment++;
+        }
+
+        // The merged segments are the oldest ones, so no older value can be uncovered by dropping tombstones
+        NavigableMap<String, String> merged = new TreeMap<>();
+        for (Segment segment : merging) {
+            readSegment(segment, (key, type, value) -> {
+                if (type == DELETE) {
+                    merged.remove(key);
+                } else {
+                    merged.put(key, value);
+                }
+            });
+        }
+        File file = segmentFile(number);
+        writeSegment(file, merged, true);
+
+        synchronized (writeLock) {
+            List<Segment> updated = new ArrayList<>();
+            updated.add(openSegment(number, file));
+            updated.addAll(segments.subList(merging.size(), segments.size()));
+            segments = Collections.unmodifiableList(updated);
+            retired.addAll(merging);
+        }
+        for (Segment segment : merging) {
+            Files.deleteIfExists(segment.file.toPath());
+        }
+    }
+
+    /**
+     * Stops background compaction, logs the writes that could not be logged,
+     * flushes the memtable log and closes every segment.
+     *
+     * @throws IOException If the log cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        compactor.shutdown();
+        synchronized (writeLock) {
+            try {
+                sync();
+            } catch (IOException e) {
+                System.err.println("Error logging writes to " + dir + ": " + e.getMessage());
+            }
+            log.close();
+            for (Segment segment : segments) {
+                segment.channel.close();
+            }
+            for (Segment segment : retired) {
+                segment.channel.close();
+            }
+        }
+    }
+
+    /**
+     * Applies a write to the memtable, logs it and flushes the memtable if
+     * it is full. A write that cannot be logged is kept for {@link #sync()}
+     * to log again, and whatever part of it reached the log is cut off.
+     */
+    private void write(String key, String value) throws IOException {
+        synchronized (writeLock) {
+            byte[] record = encodeRecord(key, value);
+            memtable.put(key, value);
+            memtableBytes += 2L * key.length() + (value == TOMBSTONE ? 0 : 2L * value.length()) + 16;
+            try {
+                log.write(record);
+                log.flush();
+            } catch (IOException e) {
+                unlogged.put(key, value);
+                try {
+                    discardPartialRecord();
+                } catch (IOException cleanup) {
+                    e.addSuppressed(cleanup);
+                }
+                throw e;
+            }
+            logLength += record.length;
+            unlogged.remove(key);
+            if (memtableBytes >= memtableLimit) {
+                flush();
+            }
+        }
+    }
+
+    /**
+     * Encodes a write as a memtable log record: the length and CRC-32 of
+     * the record's body, then the body, holding the record type, the key
+     * and, unless the write is a delete, the value.
+     */
+    private static byte[] encodeRecord(String key, String value) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(body);
+        out.writeByte(value == TOMBSTONE ? DELETE : PUT);
+        writeString(out, key);
+        if (value != TOMBSTONE) {
+            writeString(out, value);
+        }
+        byte[] bytes = body.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        ByteBuffer record = ByteBuffer.allocate(LOG_RECORD_HEADER + bytes.length);
+        record.putInt(bytes.length).putInt((int) crc.getValue()).put(bytes);
+        return record.array();
+    }
+
+    /**
+     * Cuts the memtable log back to its last complete record after a failed
+     * write. If this fails the log stays closed, so nothing is appended
+     * after the partial record until a later write cuts it off.
+     */
+    private void discardPartialRecord() throws IOException {
+        try {
+            log.close();
+        } catch (IOException e) {
+            // Whatever the close wrote is cut off below
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(logFile(), "rw")) {
+            raf.setLength(logLength);
+        }
+        openLog(false);
+    }
+
+    /**
+     * Opens the memtable log for appending, starting it with its marker if
+     * it is new or emptied.
+     *
+     * @param truncate Whether to empty the log first
+     */
+    private void openLog(boolean truncate) throws IOException {
+        logOut = new FileOutputStream(logFile(), !truncate);
+        log = new DataOutputStream(new BufferedOutputStream(logOut));
+        if (truncate || logLength == 0) {
+            log.writeInt(LOG_MAGIC);
+            log.flush();
+            logLength = 4;
+        }
+    }
+
+    /**
+     * Writes the memtable to a new segment and starts an empty memtable.
+     */
+    private void writeMemtable() throws IOException {
+        long number = nextSegment++;
+        File file = segmentFile(number);
+        writeSegment(file, memtable, false);
+        List<Segment> updated = new ArrayList<>(segments);
+        updated.add(openSegment(number, file));
+        segments = Collections.unmodifiableList(updated);
+
+        memtable = new ConcurrentSkipListMap<>();
+        memtableBytes = 0;
+    }
+
+    /**
+     * Runs a compaction on the compactor thread, then checks whether more
+     * segments have been flushed meanwhile.
+     */
+    private void compactInBackground() {
+        try {
+            compact();
+        } catch (IOException e) {
+            System.err.println("Error compacting " + dir + ": " + e.getMessage());
+        } finally {
+            synchronized (writeLock) {
+                compacting = false;
+            }
+        }
+    }
+
+    /**
+     * Loads the writes in the memtable log into the memtable, stopping at
+     * the first record that is incomplete or fails its checksum, as a write
+     * cut short by a crash leaves, and cutting the log back to the records
+     * before it.
+     */
+    private void replayLog() throws IOException {
+        File file = logFile();
+        long length = file.length();
+        long valid = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != LOG_MAGIC) {
+                throw new IOException("Not a memtable log: " + file);
+            }
+            valid = 4;
+            while (valid < length) {
+                int size = in.readInt();
+                int checksum = in.readInt();
+                if (size <= 0 || size > length - valid - LOG_RECORD_HEADER) {
+                    break;
+                }
+                byte[] body = new byte[size];
+                in.readFully(body);
+                CRC32 crc = new CRC32();
+                crc.update(body, 0, size);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(body));
+                byte type = record.readByte();
+                String key = readString(record);
+                String value = type == DELETE ? TOMBSTONE : readString(record);
+                memtable.put(key, value);
+                memtableBytes += 2L * key.length() + (value == TOMBSTONE ? 0 : 2L * value.length()) + 16;
+                valid += LOG_RECORD_HEADER + size;
+            }
+        } catch (FileNotFoundException e) {
+            // No log yet
+        } catch (EOFException e) {
+            // Cut off below
+        }
+        if (valid < length) {
+            System.err.println("Dropping incomplete write at the end of " + file);
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(valid);
+            }
+        }
+        logLength = valid;
+    }
+
+    /**
+     * Writes sorted records to a segment file with its sparse index and
+     * Bloom filter. The file is written under a temporary name and renamed
+     * when complete.
+     */
+    private static void writeSegment(File file, NavigableMap<String, String> records, boolean compacted)
+            throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        List<String> indexKeys = new ArrayList<>();
+        List<Long> indexOffsets = new ArrayList<>();
+        BloomFilter bloom = new BloomFilter(records.size());
+        try (FileOutputStream stream = new FileOutputStream(temp)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeBoolean(compacted);
+            int count = 0;
+            for (Map.Entry<String, String> record : records.entrySet()) {
+                if (count++ % INDEX_INTERVAL == 0) {
+                    indexKeys.add(record.getKey());
+                    indexOffsets.add((long) out.size());
+                }
+                bloom.add(record.getKey());
+                boolean tombstone = record.getValue() == TOMBSTONE;
+                writeString(out, record.getKey());
+                out.writeByte(tombstone ? DELETE : PUT);
+                if (!tombstone) {
+                    writeString(out, record.getValue());
+                }
+            }
+            long recordsEnd = out.size();
+
+            out.writeInt(indexKeys.size());
+            for (int i = 0; i < indexKeys.size(); i++) {
+                writeString(out, indexKeys.get(i));
+                out.writeLong(indexOffsets.get(i));
+            }
+            out.writeInt(bloom.words.length);
+            for (long word : bloom.words) {
+                out.writeLong(word);
+            }
+            out.writeLong(recordsEnd);
+            out.writeInt(MAGIC);
+            out.flush();
+            stream.getChannel().force(false);
+        }
+        FileHandler.replaceFile(temp, file);
+    }
+
+    /**
+     * Opens a segment file and loads its sparse index and Bloom filter.
+     */
+    private static Segment openSegment(long number, File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            ByteBuffer header = readFully(channel, 0, HEADER_SIZE);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Not a segment file of a supported version: " + file);
+            }
+            boolean compacted = header.get() != 0;
+            ByteBuffer footer = readFully(channel, size - 12, 12);
+            long recordsEnd = footer.getLong();
+            if (footer.getInt() != MAGIC) {
+                throw new IOException("Not a segment file: " + file);
+            }
+            ByteBuffer meta = readFully(channel, recordsEnd, (int) (size - 12 - recordsEnd));
+            String[] indexKeys = new String[meta.getInt()];
+            long[] indexOffsets = new long[indexKeys.length];
+            for (int i = 0; i < indexKeys.length; i++) {
+                indexKeys[i] = readString(meta);
+                indexOffsets[i] = meta.getLong();
+            }
+            long[] words = new long[meta.getInt()];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = meta.getLong();
+            }
+            return new Segment(number, file, channel, indexKeys, indexOffsets, recordsEnd, new BloomFilter(words),
+                    compacted);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * A record read from a segment.
+     */
+    private static final class Record {
+        /** Record type, {@link #PUT} or {@link #DELETE} */
+        private final byte type;
+        /** The value, or null for a tombstone */
+        private final String value;
+
+        private Record(byte type, String value) {
+            this.type = type;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Looks a key up in a segment by reading the block of records between
+     * the sparse index entry at or before the key and the next one.
+     *
+     * @return The record, or null if the segment has no record for the key
+     */
+    private static Record find(Segment segment, String key) throws IOException {
+        int entry = Arrays.binarySearch(segment.indexKeys, key);
+        if (entry < 0) {
+            entry = -entry - 2;
+            if (entry < 0) {
+                return null;
+            }
+        }
+        long start = segment.indexOffsets[entry];
+        long end = entry + 1 < segment.indexOffsets.length ? segment.indexOffsets[entry + 1] : segment.recordsEnd;
+        ByteBuffer block = readFully(segment.channel, start, (int) (end - start));
+        while (block.hasRemaining()) {
+            String recordKey = readString(block);
+            byte type = block.get();
+            String value = type == DELETE ? null : readString(block);
+            int order = recordKey.compareTo(key);
+            if (order == 0) {
+                return new Record(type, value);
+            }
+            if (order > 0) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Receives the records of a segment in key order.
+     */
+    private interface RecordVisitor {
+        void visit(String key, byte type, String value);
+    }
+
+    /**
+     * Reads every record of a segment in key order.
+     */
+    private static void readSegment(Segment segment, RecordVisitor visitor) throws IOException {
+        // Records are read in blocks of up to 1MB rather than all at once
+        long position = HEADER_SIZE;
+        while (position < segment.recordsEnd) {
+            int length = (int) Math.min(1 << 20, segment.recordsEnd - position);
+            ByteBuffer block = readFully(segment.channel, position, length);
+            int consumed = 0;
+            while (block.hasRemaining()) {
+                try {
+                    String key = readString(block);
+                    byte type = block.get();
+                    String value = type == DELETE ? null : readString(block);
+                    visitor.visit(key, type, value);
+                    consumed = block.position();
+                } catch (BufferUnderflowException e) {
+                    // The record continues in the next block
+                    break;
+                }
+            }
+            if (consumed == 0) {
+                throw new IOException("Record too large in " + segment.file);
+            }
+            position += consumed;
+        }
+    }
+
+    /**
+     * Reads a region of a file into a buffer.
+     */
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of segment");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Writes a string as its UTF-8 length and bytes.
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a string written by {@link #writeString} from a stream.
+     */
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_LOGGED_STRING) {
+            // Only a write cut short by a crash leaves a length like this
+            throw new EOFException();
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a string written by {@link #writeString} from a buffer.
+     */
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    /**
+     * Gets the memtable log file.
+     */
+    private File logFile() {
+        return new File(dir, "memtable.log");
+    }
+
+    /**
+     * Gets the file for a segment number.
+     */
+    private File segmentFile(long number) {
+        return new File(dir, String.format("%s%06d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+}
@@ -0,0 +1,180 @@
+package sc2002.bto.util;
+
+import java.io.CharArrayReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Reads large CSV files by memory-mapping them and parsing chunks on
+ * several threads.
+ * <p>
+ * The file is first scanned once, byte by byte, to cut it into chunks that
+ * end on a row boundary. Quoted fields are tracked during the scan, by the
+ * same rule as {@link CsvReader}, so that line breaks inside them are never
+ * chosen as a boundary. Each
+ * chunk is then mapped, decoded from UTF-8 in one step and parsed with
+ * {@link CsvReader}, and the rows of all chunks are joined in file order,
+ * so the result is the same as reading the whole file with one
+ * {@link CsvReader}.
+ *
+ */
+public final class MappedCsvReader {
+    /** Smallest chunk worth handing to a separate thread */
+    private static final long MIN_CHUNK_SIZE = 1L << 20;
+    /** Largest preferred chunk, keeping each mapping and its decoded text well within array limits */
+    private static final long MAX_CHUNK_SIZE = 1L << 28;
+    /** Largest region mapped at once while looking for chunk boundaries */
+    private static final long SCAN_WINDOW = 1L << 30;
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private MappedCsvReader() {
+        // Prevents instantiation
+    }
+
+    /**
+     * Reads every row of a CSV file, optionally skipping the header.
+     *
+     * @param file The file to read
+     * @param skipHeader true to drop the first row
+     * @param threads The number of threads to parse chunks on
+     * @return The rows of the file in order
+     * @throws IOException If the file cannot be read
+     */
+    public static List<CsvRecord> readAll(File file, boolean skipHeader, int threads) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == 0) {
+                return new ArrayList<>();
+            }
+            long target = Math.min(MAX_CHUNK_SIZE, Math.max(MIN_CHUNK_SIZE, size / Math.max(1, threads * 4L)));
+            List<Long> bounds = findChunkBounds(channel, size, target);
+
+            ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, bounds.size() - 1)));
+            try {
+                List<Future<List<CsvRecord>>> chunks = new ArrayList<>();
+                for (int i = 0; i + 1 < bounds.size(); i++) {
+                    long start = bounds.get(i);
+                    long end = bounds.get(i + 1);
+                    chunks.add(pool.submit(() -> parseChunk(channel, start, end)));
+                }
+
+                List<CsvRecord> rows = new ArrayList<>();
+                for (Future<List<CsvRecord>> chunk : chunks) {
+                    rows.addAll(chunk.get());
+                }
+                if (skipHeader && !rows.isEmpty()) {
+                    rows.remove(0);
+                }
+                return rows;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while reading " + file, e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException("Failed to read " + file, e.getCause());
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Finds offsets that cut the file into chunks of about the target size,
+     * each ending just after a line break that is outside quotes. As in
+     * {@link CsvReader}, a quote opens a quoted field only as the first
+     * character of a field, a doubled quote inside it stands for a quote,
+     * and any other quote inside it closes it.
+     *
+     * @param channel The open file
+     * @param size The size of the file
+     * @param target The preferred chunk size
+     * @return The chunk offsets, starting with 0 and ending with the file size
+     * @throws IOException If the file cannot be read
+     */
+    private static List<Long> findChunkBounds(FileChannel channel, long size, long target) throws IOException {
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        boolean inQuotes = false;
+        boolean closing = false;
+        boolean fieldStart = true;
+        long next = target;
+        for (long windowStart = 0; windowStart < size && next < size; windowStart += SCAN_WINDOW) {
+            long windowSize = Math.min(SCAN_WINDOW, size - windowStart);
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowSize);
+            for (int i = 0; i < windowSize; i++) {
+                byte b = window.get(i);
+                if (inQuotes) {
+                    if (!closing) {
+                        closing = b == '"';
+                        continue;
+                    }
+                    closing = false;
+                    if (b == '"') {
+                        continue;
+                    }
+                    // The quote before this byte closed the field
+                    inQuotes = false;
+                }
+                if (b == '"' && fieldStart) {
+                    inQuotes = true;
+                    fieldStart = false;
+                    continue;
+                }
+                fieldStart = b == ',' || b == '\n' || b == '\r';
+                if (b == '\n' && windowStart + i + 1 >= next) {
+                    long bound = windowStart + i + 1;
+                    if (bound < size) {
+                        bounds.add(bound);
+                    }
+                    next = bound + target;
+                    if (next >= size) {
+                        break;
+                    }
+                }
+            }
+        }
+        bounds.add(size);
+        return bounds;
+    }
+
+    /**
+     * Maps and parses one chunk of the file.
+     *
+     * @param channel The open file
+     * @param start The offset of the first byte of the chunk
+     * @param end The offset just past the last byte of the chunk
+     * @return The rows in the chunk
+     * @throws IOException If the chunk cannot be read
+     */
+    private static List<CsvRecord> parseChunk(FileChannel channel, long start, long end) throws IOException {
+        if (end - start > Integer.MAX_VALUE) {
+            // Only a single row longer than 2GB leaves a chunk this large
+            throw new IOException("Row too large to read at offset " + start);
+        }
+        MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        CharBuffer chars = StandardCharsets.UTF_8.decode(bytes);
+        List<CsvRecord> rows = new ArrayList<>();
+        try (CsvReader reader = new CsvReader(new CharArrayReader(chars.array(),
+                chars.arrayOffset() + chars.position(), chars.remaining()))) {
+            while (reader.nextRow()) {
+                rows.add(reader.copyRow());
+            }
+        }
+        return rows;
+    }
+}
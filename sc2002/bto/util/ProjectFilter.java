@@ -1,6 +1,7 @@
 package sc2002.bto.util;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
@@ -54,10 +55,10 @@ public class ProjectFilter {
      * - By flat type if a flat type filter is set
      * Then it sorts the filtered list based on the sortBy field and sort order.
      * 
-     * @param projects List of projects to filter and sort
+     * @param projects Projects to filter and sort
      * @return A new list containing the filtered and sorted projects
      */
-    public List<Project> apply(List<Project> projects) {
+    public List<Project> apply(Collection<Project> projects) {
         List<Project> result = new ArrayList<>(projects);
         
         // Apply neighborhood filter
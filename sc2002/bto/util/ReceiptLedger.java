@@ -0,0 +1,264 @@
+package sc2002.bto.util;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import sc2002.bto.entity.Receipt;
+import sc2002.bto.enums.FlatType;
+
+/**
+ * Ledger of every receipt issued, kept in the receipt CSV file.
+ * <p>
+ * Existing receipts are read once when the ledger is opened and indexed by
+ * receipt ID, applicant NRIC and project ID, so reprints and audits are
+ * served from memory. Receipt numbering resumes after the highest number
+ * found in the file, so IDs stay unique across restarts. New receipts are
+ * appended through a single writer that stays open, and each receipt is
+ * flushed as it is recorded.
+ *
+ */
+public class ReceiptLedger implements Closeable {
+    /** Header row of the receipt file */
+    private static final String HEADER =
+            "ReceiptID,Name,NRIC,Age,MaritalStatus,ProjectID,Neighborhood,Price,FlatType,BookingDate,ApplicationID\n";
+    /** Prefix of generated receipt IDs */
+    private static final String ID_PREFIX = "RCPT-";
+
+    /** The receipt file */
+    private final File file;
+    /** Receipts keyed by receipt ID, in the order they were issued */
+    private final Map<String, Receipt> receiptsById = new LinkedHashMap<>();
+    /** Receipts keyed by applicant NRIC */
+    private final Map<String, List<Receipt>> receiptsByNric = new HashMap<>();
+    /** Receipts keyed by project ID */
+    private final Map<String, List<Receipt>> receiptsByProject = new HashMap<>();
+    /** Highest receipt number in the ledger */
+    private int highWaterMark;
+    /** Appender for new receipts */
+    private BufferedWriter out;
+
+    /**
+     * Opens the ledger, loading every receipt in the file. The file is
+     * created with a header if it does not exist.
+     *
+     * @param file The receipt file
+     * @throws IOException If the file cannot be read or opened for appending
+     */
+    public ReceiptLedger(File file) throws IOException {
+        this.file = file;
+        boolean hasContent = file.exists() && file.length() > 0;
+        if (hasContent && load()) {
+            upgradeHeader();
+        }
+        Receipt.resumeNumberingAfter(highWaterMark);
+
+        boolean endsWithLineBreak = !hasContent || endsWithLineBreak();
+        out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+        if (!hasContent) {
+            out.write(HEADER);
+            out.flush();
+        } else if (!endsWithLineBreak) {
+            out.write('\n');
+            out.flush();
+        }
+    }
+
+    /**
+     * Records a new receipt: appends it to the file and adds it to the
+     * indexes.
+     *
+     * @param receipt The receipt to record
+     * @throws IOException If the receipt cannot be written
+     */
+    public synchronized void record(Receipt receipt) throws IOException {
+        out.write(format(receipt));
+        out.flush();
+        index(receipt);
+    }
+
+    /**
+     * Gets a receipt by its ID.
+     *
+     * @param receiptID The receipt ID
+     * @return The receipt, or null if there is none with that ID
+     */
+    public synchronized Receipt getById(String receiptID) {
+        return receiptsById.get(receiptID);
+    }
+
+    /**
+     * Gets the receipts issued to an applicant.
+     *
+     * @param nric The applicant's NRIC
+     * @return The applicant's receipts, oldest first
+     */
+    public synchronized List<Receipt> getByNric(String nric) {
+        return copyOf(receiptsByNric.get(nric));
+    }
+
+    /**
+     * Gets the receipts issued for a project.
+     *
+     * @param projectID The project ID
+     * @return The project's receipts, oldest first
+     */
+    public synchronized List<Receipt> getByProject(String projectID) {
+        return copyOf(receiptsByProject.get(projectID));
+    }
+
+    /**
+     * Gets every receipt in the ledger.
+     *
+     * @return All receipts, oldest first
+     */
+    public synchronized List<Receipt> getAll() {
+        return new ArrayList<>(receiptsById.values());
+    }
+
+    /**
+     * Gets the number of receipts in the ledger.
+     *
+     * @return The number of receipts
+     */
+    public synchronized int size() {
+        return receiptsById.size();
+    }
+
+    /**
+     * Gets the highest receipt number issued so far.
+     *
+     * @return The highest receipt number, or 0 if there are no receipts
+     */
+    public synchronized int getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    /**
+     * Closes the appender.
+     *
+     * @throws IOException If the file cannot be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+
+    /**
+     * Reads every receipt in the file into the indexes.
+     *
+     * @return true if the header predates the application ID column
+     */
+    private boolean load() throws IOException {
+        try (CsvReader reader = new CsvReader(FileHandler.openReader(file))) {
+            boolean oldHeader = reader.nextRow() && reader.getRow().size() < 11;
+            while (reader.nextRow()) {
+                CsvRecord row = reader.getRow();
+                if (row.size() < 10) {
+                    continue;
+                }
+                try {
+                    FlatType flatType = row.equalsIgnoreCase(8, "THREE_ROOM") ? FlatType.THREE_ROOM
+                            : FlatType.TWO_ROOM;
+                    Receipt receipt = new Receipt(row.getString(0), row.getString(1), row.getString(2),
+                            row.getInt(3), row.getString(4), row.getString(5), row.getString(6), row.getDouble(7),
+                            flatType, row.getString(9));
+                    // Receipts written before the application ID was recorded have no such column
+                    if (row.size() > 10 && !row.getString(10).isEmpty()) {
+                        receipt.setApplicationID(row.getString(10));
+                    }
+                    index(receipt);
+                } catch (NumberFormatException e) {
+                    System.out.println("Skipping malformed receipt: " + e.getMessage());
+                }
+            }
+            return oldHeader;
+        }
+    }
+
+    /**
+     * Replaces a header without the application ID column with the current
+     * one, keeping every receipt row as it is.
+     */
+    private void upgradeHeader() throws IOException {
+        String text = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        int lineEnd = text.indexOf('\n');
+        String rows = lineEnd < 0 ? "" : text.substring(lineEnd + 1);
+        File temp = new File(file.getPath() + ".tmp");
+        Files.write(temp.toPath(), (HEADER + rows).getBytes(StandardCharsets.UTF_8));
+        FileHandler.replaceFile(temp, file);
+    }
+
+    /**
+     * Adds a receipt to the indexes and raises the high-water mark.
+     */
+    private void index(Receipt receipt) {
+        receiptsById.put(receipt.getReceiptID(), receipt);
+        receiptsByNric.computeIfAbsent(receipt.getNRIC(), k -> new ArrayList<>()).add(receipt);
+        receiptsByProject.computeIfAbsent(receipt.getProjectID(), k -> new ArrayList<>()).add(receipt);
+        highWaterMark = Math.max(highWaterMark, receiptNumber(receipt.getReceiptID()));
+    }
+
+    /**
+     * Checks whether the file ends with a line break, so that a receipt
+     * left half-written by a crash does not swallow the next one.
+     */
+    private boolean endsWithLineBreak() throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(raf.length() - 1);
+            return raf.read() == '\n';
+        }
+    }
+
+    /**
+     * Formats a receipt as a CSV row.
+     */
+    private static String format(Receipt receipt) {
+        return FileHandler.formatRow(receipt.getReceiptID(),
+                receipt.getName(),
+                receipt.getNRIC(),
+                receipt.getAge(),
+                receipt.getMaritalStatus(),
+                receipt.getProjectID(),
+                receipt.getNeighborhood(),
+                receipt.getPricePerFlat(),
+                receipt.getFlatType(),
+                receipt.getBookingDate(),
+                receipt.getApplicationID() == null ? "" : receipt.getApplicationID());
+    }
+
+    /**
+     * Gets the number in a generated receipt ID.
+     *
+     * @param receiptID The receipt ID
+     * @return The number, or 0 if the ID was not generated
+     */
+    private static int receiptNumber(String receiptID) {
+        if (receiptID == null || !receiptID.startsWith(ID_PREFIX)) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(receiptID.substring(ID_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Copies an index list, treating a missing list as empty.
+     */
+    private static List<Receipt> copyOf(List<Receipt> receipts) {
+        return receipts == null ? Collections.emptyList() : new ArrayList<>(receipts);
+    }
+}
@@ -0,0 +1,486 @@
+package sc2002.bto.util;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLDataException;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Embedded SQL database holding the rows of the CSV data files.
+ * <p>
+ * Each entity type has its own table. Every row keeps the entity's full CSV
+ * row text, so the data is loaded with the same code as the CSV files, plus
+ * the columns that are searched on: applications and enquiries have indexed
+ * applicant ID, project ID and status columns, and users the data file they
+ * belong to. A sequence number keeps rows in the order they were first
+ * written. {@link #findApplicationIds} and {@link #findEnquiryIds} search
+ * the indexed columns for the SQL-backed repositories.
+ * <p>
+ * Only standard SQL and JDBC are used, so any embedded file-based database
+ * works, such as H2 ({@code jdbc:h2:./data/bto}) or SQLite
+ * ({@code jdbc:sqlite:data/bto.db}). The JDBC driver is not bundled and
+ * must be on the class path at runtime.
+ * <p>
+ * Each call to {@link #write(List)} stores its writes in a transaction of
+ * its own, so a batch of writes is stored together or not at all, and no
+ * other caller's writes are committed halfway with it. A batch that cannot
+ * be committed is kept and retried, in order, before the next batch and by
+ * {@link #flush()}, which fails for as long as it cannot be stored. A batch
+ * whose rows the database rejects, for example because a value is too long
+ * for its column, can never be stored, so it is reported and dropped rather
+ * than holding back every later write.
+ *
+ */
+public class SqlStore implements Closeable {
+    /** Table of applicants, managers and officers */
+    private static final String USERS = "bto_users";
+    /** Table of projects */
+    private static final String PROJECTS = "bto_projects";
+    /** Table of applications */
+    private static final String APPLICATIONS = "bto_applications";
+    /** Table of enquiries */
+    private static final String ENQUIRIES = "bto_enquiries";
+
+    /** Statements creating the tables and indexes, each safe to run again */
+    private static final String[] SCHEMA = {
+        "CREATE TABLE IF NOT EXISTS " + USERS + " (id VARCHAR(255) PRIMARY KEY, seq BIGINT NOT NULL, "
+                + "file VARCHAR(64) NOT NULL, row_text CLOB NOT NULL)",
+        "CREATE INDEX IF NOT EXISTS idx_users_file ON " + USERS + " (file)",
+        "CREATE TABLE IF NOT EXISTS " + PROJECTS + " (id VARCHAR(255) PRIMARY KEY, seq BIGINT NOT NULL, "
+                + "row_text CLOB NOT NULL)",
+        "CREATE TABLE IF NOT EXISTS " + APPLICATIONS + " (id VARCHAR(255) PRIMARY KEY, seq BIGINT NOT NULL, "
+                + "applicant_id VARCHAR(255), project_id VARCHAR(255), status VARCHAR(32), row_text CLOB NOT NULL)",
+        "CREATE INDEX IF NOT EXISTS idx_applications_applicant ON " + APPLICATIONS + " (applicant_id)",
+        "CREATE INDEX IF NOT EXISTS idx_applications_project_status ON " + APPLICATIONS + " (project_id, status)",
+        "CREATE INDEX IF NOT EXISTS idx_applications_status ON " + APPLICATIONS + " (status)",
+        "CREATE TABLE IF NOT EXISTS " + ENQUIRIES + " (id VARCHAR(255) PRIMARY KEY, seq BIGINT NOT NULL, "
+                + "applicant_id VARCHAR(255), project_id VARCHAR(255), status VARCHAR(32), row_text CLOB NOT NULL)",
+        "CREATE INDEX IF NOT EXISTS idx_enquiries_applicant ON " + ENQUIRIES + " (applicant_id)",
+        "CREATE INDEX IF NOT EXISTS idx_enquiries_project_status ON " + ENQUIRIES + " (project_id, status)",
+        "CREATE INDEX IF NOT EXISTS idx_enquiries_status ON " + ENQUIRIES + " (status)",
+    };
+
+    /**
+     * One write to store: the CSV row text of an entity, the data file it
+     * belongs to and the values of the searched columns, or a delete.
+     */
+    public static final class Row {
+        /** Name of the CSV data file */
+        private final String file;
+        /** ID of the entity */
+        private final String id;
+        /** CSV row text, or null if the row is deleted */
+        private final String text;
+        /** Applicant ID, for applications and enquiries */
+        private String applicantId;
+        /** Project ID, for applications and enquiries */
+        private String projectId;
+        /** Status, for applications and enquiries */
+        private String status;
+
+        /**
+         * Creates a row.
+         *
+         * @param file The name of the CSV data file
+         * @param id The ID of the entity
+         * @param text The CSV row text
+         */
+        public Row(String file, String id, String text) {
+            this.file = file;
+            this.id = id;
+            this.text = text;
+        }
+
+        /**
+         * Creates a write that deletes a row.
+         *
+         * @param file The name of the CSV data file
+         * @param id The ID of the entity
+         * @return The write
+         */
+        public static Row delete(String file, String id) {
+            return new Row(file, id, null);
+        }
+
+        /**
+         * Sets the searched columns of an application or enquiry.
+         *
+         * @param applicantId The applicant ID
+         * @param projectId The project ID
+         * @param status The status
+         * @return This row
+         */
+        public Row withKeys(String applicantId, String projectId, String status) {
+            this.applicantId = applicantId;
+            this.projectId = projectId;
+            this.status = status;
+            return this;
+        }
+
+        /**
+         * Gets the name of the CSV data file the row belongs to.
+         *
+         * @return The file name
+         */
+        public String getFile() {
+            return file;
+        }
+    }
+
+    /** Connection to the database */
+    private final Connection connection;
+    /** Sequence number for the next new row */
+    private long nextSeq;
+    /** Batches of writes that could not be committed yet, in the order they were made */
+    private final List<List<Row>> unsaved = new ArrayList<>();
+
+    /**
+     * Opens the database, creating the tables and indexes if needed.
+     *
+     * @param url The JDBC URL of the database
+     * @param user The database user
+     * @param password The database password
+     * @throws SQLException If the database cannot be opened, for example
+     *                      because no driver for the URL is on the class path
+     */
+    public SqlStore(String url, String user, String password) throws SQLException {
+        connection = DriverManager.getConnection(url, user, password);
+        try {
+            connection.setAutoCommit(false);
+            try (Statement statement = connection.createStatement()) {
+                for (String sql : SCHEMA) {
+                    statement.execute(sql);
+                }
+                for (String table : new String[] { USERS, PROJECTS, APPLICATIONS, ENQUIRIES }) {
+                    try (ResultSet result = statement.executeQuery("SELECT MAX(seq) FROM " + table)) {
+                        if (result.next()) {
+                            nextSeq = Math.max(nextSeq, result.getLong(1) + 1);
+                        }
+                    }
+                }
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Checks whether the database holds no users and no projects, as when
+     * it has just been created.
+     *
+     * @return true if there is nothing to load
+     * @throws SQLException If the database cannot be read
+     */
+    public synchronized boolean isEmpty() throws SQLException {
+        return count(USERS) == 0 && count(PROJECTS) == 0;
+    }
+
+    /**
+     * Reads the row text of every row belonging to a CSV data file, in the
+     * order the rows were first written.
+     *
+     * @param file The name of the CSV data file
+     * @return The row texts
+     * @throws SQLException If the database cannot be read
+     */
+    public synchronized List<String> readRows(String file) throws SQLException {
+        String table = tableFor(file);
+        String sql = "SELECT row_text FROM " + table
+                + (USERS.equals(table) ? " WHERE file = ?" : "") + " ORDER BY seq";
+        List<String> rows = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            if (USERS.equals(table)) {
+                statement.setString(1, file);
+            }
+            try (ResultSet result = statement.executeQuery()) {
+                while (result.next()) {
+                    rows.add(result.getString(1));
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Finds the IDs of the applications matching the given applicant IDs,
+     * project IDs and statuses, using the indexes on those columns. Writes
+     * that could not be stored before are stored first, so the result
+     * reflects every write made so far.
+     *
+     * @param applicantIds The accepted applicant IDs, or null for any
+     * @param projectIds The accepted project IDs, or null for any
+     * @param statuses The accepted statuses, or null for any
+     * @return The matching application IDs, in ID order
+     * @throws SQLException If the database cannot be read, or earlier
+     *                      writes still cannot be stored
+     */
+    public synchronized List<String> findApplicationIds(Collection<?> applicantIds, Collection<?> projectIds,
+            Collection<?> statuses) throws SQLException {
+        return findIds(APPLICATIONS, applicantIds, projectIds, statuses);
+    }
+
+    /**
+     * Finds the IDs of the enquiries matching the given applicant IDs,
+     * project IDs and statuses, using the indexes on those columns. Writes
+     * that could not be stored before are stored first, so the result
+     * reflects every write made so far.
+     *
+     * @param applicantIds The accepted applicant IDs, or null for any
+     * @param projectIds The accepted project IDs, or null for any
+     * @param statuses The accepted statuses, or null for any
+     * @return The matching enquiry IDs, in ID order
+     * @throws SQLException If the database cannot be read, or earlier
+     *                      writes still cannot be stored
+     */
+    public synchronized List<String> findEnquiryIds(Collection<?> applicantIds, Collection<?> projectIds,
+            Collection<?> statuses) throws SQLException {
+        return findIds(ENQUIRIES, applicantIds, projectIds, statuses);
+    }
+
+    /**
+     * Stores a batch of writes in one transaction, after any earlier batches
+     * that could not be committed. If the transaction fails, it is rolled
+     * back and the writes are kept to be retried.
+     *
+     * @param writes The rows to add or replace and the deletes, in order
+     * @throws SQLException If the writes cannot be committed now, or a
+     *                      batch was dropped because the database rejects it
+     */
+    public synchronized void write(List<Row> writes) throws SQLException {
+        if (!writes.isEmpty()) {
+            unsaved.add(new ArrayList<>(writes));
+        }
+        flush();
+    }
+
+    /**
+     * Retries the batches that could not be committed so far, oldest first,
+     * each in a transaction of its own. A batch that fails in a way that may
+     * pass, such as a lost connection or a missing table, stops the retry
+     * and is kept. A batch whose rows the database rejects is reported and
+     * dropped, and the batches after it are still stored.
+     *
+     * @throws SQLException If a batch still cannot be committed, or one was dropped
+     */
+    public synchronized void flush() throws SQLException {
+        SQLException dropped = null;
+        while (!unsaved.isEmpty()) {
+            List<Row> batch = unsaved.get(0);
+            try {
+                store(batch);
+            } catch (SQLException e) {
+                if (!isRejected(e)) {
+                    if (dropped != null) {
+                        e.addSuppressed(dropped);
+                    }
+                    throw e;
+                }
+                System.err.println("Dropping " + batch.size() + " database writes that cannot be stored ("
+                        + e.getMessage() + "): " + describe(batch));
+                if (dropped == null) {
+                    dropped = new SQLException("Dropped database writes that cannot be stored", e);
+                } else {
+                    dropped.addSuppressed(e);
+                }
+            }
+            unsaved.remove(0);
+        }
+        if (dropped != null) {
+            throw dropped;
+        }
+    }
+
+    /**
+     * Stores a batch of writes in one transaction, rolling it back if any
+     * write fails.
+     */
+    private void store(List<Row> batch) throws SQLException {
+        try {
+            for (Row row : batch) {
+                if (row.text == null) {
+                    update("DELETE FROM " + tableFor(row.file) + " WHERE id = ?", row.id);
+                } else {
+                    put(row);
+                }
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            try {
+                connection.rollback();
+            } catch (SQLException rollback) {
+                e.addSuppressed(rollback);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Checks whether the database rejected the rows themselves, with a data
+     * exception such as a value too long for its column or a constraint
+     * violation, so that trying them again cannot succeed. Any other
+     * failure, such as a lost connection, a lock timeout or a full disk,
+     * may pass.
+     */
+    private static boolean isRejected(SQLException e) {
+        String state = e.getSQLState();
+        return e instanceof SQLDataException || e instanceof SQLIntegrityConstraintViolationException
+                || (state != null && (state.startsWith("22") || state.startsWith("23")));
+    }
+
+    /**
+     * Lists the files and IDs of the rows in a batch, for reporting.
+     */
+    private static String describe(List<Row> batch) {
+        List<String> rows = new ArrayList<>();
+        for (Row row : batch) {
+            rows.add(row.file + " " + row.id);
+        }
+        return String.join(", ", rows);
+    }
+
+    /**
+     * Adds a row, or replaces the row with the same ID in the same table
+     * while keeping its place in the order.
+     */
+    private void put(Row row) throws SQLException {
+        String table = tableFor(row.file);
+        if (USERS.equals(table)) {
+            if (update("UPDATE " + table + " SET file = ?, row_text = ? WHERE id = ?",
+                    row.file, row.text, row.id) == 0) {
+                update("INSERT INTO " + table + " (id, seq, file, row_text) VALUES (?, ?, ?, ?)",
+                        row.id, nextSeq++, row.file, row.text);
+            }
+        } else if (APPLICATIONS.equals(table) || ENQUIRIES.equals(table)) {
+            if (update("UPDATE " + table + " SET applicant_id = ?, project_id = ?, status = ?, row_text = ? "
+                    + "WHERE id = ?", row.applicantId, row.projectId, row.status, row.text, row.id) == 0) {
+                update("INSERT INTO " + table + " (id, seq, applicant_id, project_id, status, row_text) "
+                        + "VALUES (?, ?, ?, ?, ?, ?)",
+                        row.id, nextSeq++, row.applicantId, row.projectId, row.status, row.text);
+            }
+        } else {
+            if (update("UPDATE " + table + " SET row_text = ? WHERE id = ?", row.text, row.id) == 0) {
+                update("INSERT INTO " + table + " (id, seq, row_text) VALUES (?, ?, ?)",
+                        row.id, nextSeq++, row.text);
+            }
+        }
+    }
+
+    /**
+     * Retries any writes that could not be committed and closes the connection.
+     */
+    @Override
+    public synchronized void close() {
+        try {
+            flush();
+        } catch (SQLException e) {
+            int writes = 0;
+            for (List<Row> batch : unsaved) {
+                writes += batch.size();
+            }
+            System.err.println("Error saving data: " + writes + " writes could not be stored: " + e.getMessage());
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            System.err.println("Error closing database: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Gets the table holding the rows of a CSV data file.
+     *
+     * @throws IllegalArgumentException If the file is not a data file
+     */
+    private static String tableFor(String file) {
+        switch (file) {
+            case "ApplicantList.csv":
+            case "ManagerList.csv":
+            case "OfficerList.csv":
+                return USERS;
+            case "ProjectList.csv":
+                return PROJECTS;
+            case "ApplicationList.csv":
+                return APPLICATIONS;
+            case "EnquiryList.csv":
+                return ENQUIRIES;
+            default:
+                throw new IllegalArgumentException("Not a data file: " + file);
+        }
+    }
+
+    /**
+     * Finds the IDs of the rows of an application or enquiry table whose
+     * applicant ID, project ID and status are among the accepted values,
+     * after storing any writes that failed before.
+     */
+    private List<String> findIds(String table, Collection<?> applicantIds, Collection<?> projectIds,
+            Collection<?> statuses) throws SQLException {
+        flush();
+        StringBuilder sql = new StringBuilder("SELECT id FROM ").append(table);
+        List<Object> values = new ArrayList<>();
+        String[] columns = { "applicant_id", "project_id", "status" };
+        Collection<?>[] accepted = { applicantIds, projectIds, statuses };
+        for (int i = 0; i < columns.length; i++) {
+            if (accepted[i] == null) {
+                continue;
+            }
+            if (accepted[i].isEmpty()) {
+                return new ArrayList<>();
+            }
+            sql.append(values.isEmpty() ? " WHERE " : " AND ").append(columns[i]).append(" IN (");
+            int count = 0;
+            for (Object value : accepted[i]) {
+                sql.append(count++ == 0 ? "?" : ", ?");
+                values.add(String.valueOf(value));
+            }
+            sql.append(')');
+        }
+        sql.append(" ORDER BY id");
+        List<String> ids = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+            for (int i = 0; i < values.size(); i++) {
+                statement.setObject(i + 1, values.get(i));
+            }
+            try (ResultSet result = statement.executeQuery()) {
+                while (result.next()) {
+                    ids.add(result.getString(1));
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Counts the rows in a table.
+     */
+    private long count(String table) throws SQLException {
+        try (Statement statement = connection.createStatement();
+                ResultSet result = statement.executeQuery("SELECT COUNT(*) FROM " + table)) {
+            return result.next() ? result.getLong(1) : 0;
+        }
+    }
+
+    /**
+     * Runs an insert, update or delete statement.
+     *
+     * @return The number of rows changed
+     */
+    private int update(String sql, Object... values) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < values.length; i++) {
+                statement.setObject(i + 1, values[i]);
+            }
+            return statement.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,578 @@
+package sc2002.bto.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of the rows written to the CSV data files.
+ * <p>
+ * Each write is appended as an {@link Entry} that either puts the full text
+ * of a row or deletes a row by ID, so the CSV files together with the log
+ * describe the current data, and replaying an entry twice has the same
+ * effect as replaying it once. Entries are appended in frames of one or more
+ * entries; each frame carries its length and a CRC32 checksum, so a frame
+ * left half-written by a crash is detected and dropped on the next start.
+ * <p>
+ * The log is kept in numbered segment files ({@code wal-000001.log}, ...) in
+ * the data directory. Compaction closes the current segment, starts a new
+ * one, merges the closed segments into the CSV files and deletes them. It
+ * only reads and writes files, never the repositories, so it can run on a
+ * background thread while sessions keep appending.
+ *
+ */
+public class WriteAheadLog implements Closeable {
+    /** Prefix of segment file names */
+    private static final String SEGMENT_PREFIX = "wal-";
+    /** Suffix of segment file names */
+    private static final String SEGMENT_SUFFIX = ".log";
+    /** Entry type for a row that is added or replaced */
+    private static final byte PUT = 1;
+    /** Entry type for a row that is deleted */
+    private static final byte DELETE = 2;
+
+    /** Directory holding the segments and the CSV files */
+    private final File dir;
+    /** Whether every append is forced to the disk before returning */
+    private final boolean forceOnAppend;
+    /** Guards the current segment */
+    private final Object appendLock = new Object();
+    /** Prevents two compactions from running at once */
+    private final Object compactLock = new Object();
+    /** Number of the segment being appended to */
+    private long segment;
+    /** Size in bytes of the segment being appended to */
+    private long segmentLength;
+    /** Stream to the segment being appended to */
+    private FileOutputStream segmentOut;
+    /** Buffered writer over {@link #segmentOut} */
+    private DataOutputStream out;
+    /** Thread running background compaction, or null if not started */
+    private ScheduledExecutorService compactor;
+
+    /**
+     * One write to a CSV file: the full text of a row that was added or
+     * changed, or the ID of a row that was deleted.
+     */
+    public static final class Entry {
+        /** Name of the CSV file, relative to the data directory */
+        private final String file;
+        /** ID of the row, the value of its first field */
+        private final String id;
+        /** Text of the row including its line break, or null for a delete */
+        private final String row;
+
+        private Entry(String file, String id, String row) {
+            this.file = file;
+            this.id = id;
+            this.row = row;
+        }
+
+        /**
+         * Creates an entry that adds or replaces a row.
+         *
+         * @param file The name of the CSV file
+         * @param id The ID of the row
+         * @param row The text of the row including its line break
+         * @return The entry
+         */
+        public static Entry put(String file, String id, String row) {
+            return new Entry(file, id, row);
+        }
+
+        /**
+         * Creates an entry that deletes a row.
+         *
+         * @param file The name of the CSV file
+         * @param id The ID of the row
+         * @return The entry
+         */
+        public static Entry delete(String file, String id) {
+            return new Entry(file, id, null);
+        }
+
+        /**
+         * Gets the name of the CSV file this entry writes to.
+         *
+         * @return The file name, relative to the data directory
+         */
+        public String getFile() {
+            return file;
+        }
+
+        /**
+         * Gets the ID of the row.
+         *
+         * @return The row ID
+         */
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * Gets the text of the row.
+         *
+         * @return The row text including its line break, or null for a delete
+         */
+        public String getRow() {
+            return row;
+        }
+
+        /**
+         * Checks whether this entry deletes its row.
+         *
+         * @return true for a delete, false for a put
+         */
+        public boolean isDelete() {
+            return row == null;
+        }
+    }
+
+    /**
+     * Opens the log in a directory, dropping any half-written frame at the
+     * end of the newest segment and continuing to append to it.
+     *
+     * @param dir The data directory
+     * @param forceOnAppend true to force every append to the disk before it returns
+     * @throws IOException If the log cannot be opened
+     */
+    public WriteAheadLog(File dir, boolean forceOnAppend) throws IOException {
+        this.dir = dir;
+        this.forceOnAppend = forceOnAppend;
+        NavigableMap<Long, File> segments = listSegments();
+        if (segments.isEmpty()) {
+            segment = 1;
+            segmentLength = 0;
+        } else {
+            segment = segments.lastKey();
+            File last = segments.get(segment);
+            segmentLength = readSegment(last, new ArrayList<>());
+            if (segmentLength < last.length()) {
+                System.err.println("Dropping incomplete log entries at the end of " + last.getName());
+                try (RandomAccessFile file = new RandomAccessFile(last, "rw")) {
+                    file.setLength(segmentLength);
+                }
+            }
+        }
+        openSegment();
+    }
+
+    /**
+     * Reads every complete entry in the log, oldest first.
+     *
+     * @return The entries in the order they were appended
+     * @throws IOException If a segment cannot be read
+     */
+    public List<Entry> readAll() throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        synchronized (appendLock) {
+            out.flush();
+            for (File file : listSegments().values()) {
+                readSegment(file, entries);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Appends a single entry.
+     *
+     * @param entry The entry to append
+     * @throws IOException If the entry cannot be written
+     */
+    public void append(Entry entry) throws IOException {
+        append(Collections.singletonList(entry));
+    }
+
+    /**
+     * Appends several entries as one frame, so that after a crash either all
+     * of them are replayed or none are.
+     *
+     * @param entries The entries to append
+     * @throws IOException If the entries cannot be written
+     */
+    public void append(List<Entry> entries) throws IOException {
+        if (entries.isEmpty()) {
+            return;
+        }
+        byte[] frame = encode(entries);
+        CRC32 crc = new CRC32();
+        crc.update(frame, 0, frame.length);
+        synchronized (appendLock) {
+            try {
+                out.writeInt(frame.length);
+                out.writeInt((int) crc.getValue());
+                out.write(frame);
+                out.flush();
+                if (forceOnAppend) {
+                    segmentOut.getChannel().force(false);
+                }
+            } catch (IOException e) {
+                try {
+                    discardPartialFrame();
+                } catch (IOException cleanup) {
+                    e.addSuppressed(cleanup);
+                }
+                throw e;
+            }
+            segmentLength += 8 + frame.length;
+        }
+    }
+
+    /**
+     * Forces everything appended so far to the disk.
+     *
+     * @throws IOException If the log cannot be written
+     */
+    public void sync() throws IOException {
+        synchronized (appendLock) {
+            out.flush();
+            segmentOut.getChannel().force(false);
+        }
+    }
+
+    /**
+     * Gets the total size of all segments.
+     *
+     * @return The size of the log in bytes
+     */
+    public long size() {
+        long size = 0;
+        for (File file : listSegments().values()) {
+            size += file.length();
+        }
+        return size;
+    }
+
+    /**
+     * Merges the log into the CSV files and deletes the merged segments.
+     * Appends can continue while this runs; they go to a new segment that is
+     * merged by the next compaction. The segments are deleted only once every
+     * merged file and the directory holding them are on disk, since until
+     * then the log holds the only durable copy of the merged rows.
+     *
+     * @return true if anything was merged
+     * @throws IOException If a segment or CSV file cannot be read or written
+     */
+    public boolean compact() throws IOException {
+        synchronized (compactLock) {
+            long sealed;
+            synchronized (appendLock) {
+                if (segmentLength == 0 && listSegments().size() <= 1) {
+                    return false;
+                }
+                out.close();
+                segment++;
+                segmentLength = 0;
+                openSegment();
+                sealed = segment - 1;
+            }
+
+            List<File> merged = new ArrayList<>();
+            Map<String, List<Entry>> entriesByFile = new LinkedHashMap<>();
+            for (Map.Entry<Long, File> segmentFile : listSegments().entrySet()) {
+                if (segmentFile.getKey() > sealed) {
+                    break;
+                }
+                List<Entry> entries = new ArrayList<>();
+                readSegment(segmentFile.getValue(), entries);
+                for (Entry entry : entries) {
+                    entriesByFile.computeIfAbsent(entry.getFile(), k -> new ArrayList<>()).add(entry);
+                }
+                merged.add(segmentFile.getValue());
+            }
+
+            for (Map.Entry<String, List<Entry>> file : entriesByFile.entrySet()) {
+                mergeInto(new File(dir, file.getKey()), file.getValue());
+            }
+            FileHandler.syncDirectory(dir);
+            for (File file : merged) {
+                Files.deleteIfExists(file.toPath());
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Starts compacting the log on a background thread whenever it has grown
+     * past a size threshold.
+     *
+     * @param intervalSeconds How often to check the size of the log
+     * @param thresholdBytes The size at which the log is compacted
+     */
+    public void startCompaction(long intervalSeconds, long thresholdBytes) {
+        if (compactor != null) {
+            return;
+        }
+        compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "wal-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compactor.scheduleWithFixedDelay(() -> {
+            try {
+                if (size() >= thresholdBytes) {
+                    compact();
+                }
+            } catch (IOException e) {
+                System.err.println("Error compacting log: " + e.getMessage());
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops background compaction and closes the current segment.
+     *
+     * @throws IOException If the segment cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (compactor != null) {
+            compactor.shutdownNow();
+        }
+        synchronized (appendLock) {
+            out.close();
+        }
+    }
+
+    /**
+     * Opens the current segment for appending.
+     *
+     * @throws IOException If the segment cannot be opened
+     */
+    private void openSegment() throws IOException {
+        segmentOut = new FileOutputStream(segmentFile(segment), true);
+        out = new DataOutputStream(new BufferedOutputStream(segmentOut));
+    }
+
+    /**
+     * Cuts the bytes of a frame that failed to append off the end of the
+     * current segment, so that a retried frame directly follows the last
+     * complete one; otherwise reading would stop at the partial frame and
+     * drop everything after it. If the segment cannot be cut, it is left
+     * as it is and appending moves on to a new segment. Called with the
+     * append lock held.
+     *
+     * @throws IOException If the segment to append to cannot be reopened
+     */
+    private void discardPartialFrame() throws IOException {
+        try {
+            out.close();
+        } catch (IOException e) {
+            // The partial bytes are cut off below either way
+        }
+        try {
+            segmentOut.close();
+        } catch (IOException e) {
+            // Already closed with the buffered stream
+        }
+        try (RandomAccessFile file = new RandomAccessFile(segmentFile(segment), "rw")) {
+            file.setLength(segmentLength);
+        } catch (IOException e) {
+            System.err.println("Sealing log segment after a failed write: " + e.getMessage());
+            segment++;
+            segmentLength = 0;
+        }
+        openSegment();
+    }
+
+    /**
+     * Gets the file for a segment number.
+     *
+     * @param number The segment number
+     * @return The segment file
+     */
+    private File segmentFile(long number) {
+        return new File(dir, String.format("%s%06d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * Lists the segment files in the data directory.
+     *
+     * @return The segment files keyed and sorted by number
+     */
+    private NavigableMap<Long, File> listSegments() {
+        NavigableMap<Long, File> segments = new TreeMap<>();
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return segments;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                try {
+                    segments.put(Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                            name.length() - SEGMENT_SUFFIX.length())), file);
+                } catch (NumberFormatException e) {
+                    // Not a segment
+                }
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Reads the complete frames of a segment, stopping at the first frame
+     * that is cut short or fails its checksum.
+     *
+     * @param file The segment file
+     * @param entries The list to add the entries to
+     * @return The length of the segment up to the end of the last complete frame
+     * @throws IOException If the segment cannot be read
+     */
+    private static long readSegment(File file, List<Entry> entries) throws IOException {
+        long valid = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    return valid;
+                }
+                try {
+                    int checksum = in.readInt();
+                    if (length < 0 || length > file.length()) {
+                        return valid;
+                    }
+                    byte[] frame = new byte[length];
+                    in.readFully(frame);
+                    CRC32 crc = new CRC32();
+                    crc.update(frame, 0, frame.length);
+                    if ((int) crc.getValue() != checksum) {
+                        return valid;
+                    }
+                    entries.addAll(decode(frame));
+                    valid += 8 + length;
+                } catch (EOFException e) {
+                    return valid;
+                }
+            }
+        }
+    }
+
+    /**
+     * Encodes entries as the body of one frame.
+     *
+     * @param entries The entries
+     * @return The encoded frame
+     * @throws IOException Never, as the frame is written to memory
+     */
+    private static byte[] encode(List<Entry> entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream frame = new DataOutputStream(bytes);
+        frame.writeInt(entries.size());
+        for (Entry entry : entries) {
+            frame.writeByte(entry.isDelete() ? DELETE : PUT);
+            frame.writeUTF(entry.getFile());
+            frame.writeUTF(entry.getId());
+            if (!entry.isDelete()) {
+                byte[] row = entry.getRow().getBytes(StandardCharsets.UTF_8);
+                frame.writeInt(row.length);
+                frame.write(row);
+            }
+        }
+        frame.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes the body of one frame.
+     *
+     * @param frame The encoded frame
+     * @return The entries in the frame
+     * @throws IOException If the frame is malformed
+     */
+    private static List<Entry> decode(byte[] frame) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame));
+        int count = in.readInt();
+        List<Entry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte type = in.readByte();
+            String file = in.readUTF();
+            String id = in.readUTF();
+            if (type == DELETE) {
+                entries.add(Entry.delete(file, id));
+            } else {
+                byte[] row = new byte[in.readInt()];
+                in.readFully(row);
+                entries.add(Entry.put(file, id, new String(row, StandardCharsets.UTF_8)));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Applies entries to a CSV file, keeping its header and the rows the
+     * entries do not touch exactly as they were. The new contents are forced
+     * to disk before they replace the file.
+     *
+     * @param file The CSV file
+     * @param entries The entries for that file, oldest first
+     * @throws IOException If the file is missing or cannot be read or written
+     */
+    private static void mergeInto(File file, List<Entry> entries) throws IOException {
+        if (!file.exists()) {
+            throw new IOException("Cannot merge log into missing file " + file);
+        }
+        String header = null;
+        Map<String, String> rows = new LinkedHashMap<>();
+        try (CsvReader reader = new CsvReader(FileHandler.openReader(file))) {
+            reader.retainRawText();
+            if (reader.nextRow()) {
+                header = reader.getRawText();
+                while (reader.nextRow()) {
+                    rows.put(reader.getRow().getString(0), reader.getRawText());
+                }
+            }
+        }
+        if (header == null) {
+            throw new IOException("Cannot merge log into file without a header " + file);
+        }
+
+        for (Entry entry : entries) {
+            if (entry.isDelete()) {
+                rows.remove(entry.getId());
+            } else {
+                rows.put(entry.getId(), entry.getRow());
+            }
+        }
+
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temp);
+                BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8))) {
+            writer.write(header);
+            for (String row : rows.values()) {
+                writer.write(row);
+            }
+            writer.flush();
+            stream.getChannel().force(true);
+        }
+        FileHandler.replaceFile(temp, file);
+    }
+}